@@ -0,0 +1,69 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the overhead of passing events through stages of {@link ChangePipeline} into a
+ * discard sink, with stages running on the thread of the source or on their own threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ChangePipelineBenchmark {
+
+  private static final int EVENTS = 65_536;
+
+  @Param({"caller", "threaded"})
+  public String threading;
+
+  private ChangeEvent[] events;
+
+  @Setup
+  public void setup() {
+    Map<String, ValueType> row = new HashMap<>();
+    row.put("a", ValueType.newBuilder().setInt(1).build());
+    row.put("b", ValueType.newBuilder().setString("text").build());
+
+    events = new ChangeEvent[EVENTS];
+    for (int i = 0; i < EVENTS; i++) {
+      // Transactions of 15 rows
+      String operation = i % 16 == 0 ? ChangeEvent.COMMIT_TRANSACTION : ChangeEvent.INSERT;
+      events[i] = new ChangeEvent(operation, i % 8, String.valueOf(i), row);
+    }
+  }
+
+  @Benchmark
+  public long pipeline() throws Exception {
+    ChangePipeline.Threading policy = threading.equals("threaded")
+        ? ChangePipeline.Threading.threaded(1024) : ChangePipeline.Threading.CALLER;
+    ChangePipeline.DiscardSink sink = new ChangePipeline.DiscardSink();
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("rows", ChangePipeline.filter(ChangeEvent::isRowChange), policy)
+        .stage("identity", ChangePipeline.transform(e -> e.withRow(e.row())), policy)
+        .build(sink)) {
+      for (ChangeEvent event : events) {
+        pipeline.accept(event);
+      }
+      pipeline.finish();
+    }
+
+    return sink.rowChanges();
+  }
+}
@@ -0,0 +1,87 @@
+package com.singlestore.fivetran.source.connector;
+
+import com.google.common.collect.ImmutableMap;
+import fivetran_sdk.v2.Column;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares decoding of rows by the JDBC accessors with {@link RawRowDecoder}. Runs against the
+ * database used by the tests, see README.md.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RowDecoderBenchmark {
+
+  private static final String TABLE = "rowDecoderBenchmark";
+  private static final int ROWS = 16_384;
+
+  @Param({"jdbc", "raw"})
+  public String decoder;
+
+  private SingleStoreConnection conn;
+  private List<Column> columns;
+
+  @Setup
+  public void setup() throws Exception {
+    conn = new SingleStoreConnection(new SingleStoreConfiguration(ImmutableMap.of(
+        "host", "127.0.0.1", "port", "3306", "user", "root",
+        "password", System.getenv("ROOT_PASSWORD"), "database", "db", "table", TABLE)));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute(String.format("DROP TABLE IF EXISTS %s", TABLE));
+      stmt.execute(String.format("CREATE TABLE %s (a INT AUTO_INCREMENT, b BIGINT, c DOUBLE, "
+          + "d DECIMAL(20, 5), e DATETIME(6), f DATE, g VARCHAR(100), h TEXT, i BOOL, "
+          + "PRIMARY KEY(a))", TABLE));
+      stmt.execute(String.format("INSERT INTO %s (b, c, d, e, f, g, h, i) VALUES(1234567890123, "
+          + "3.14159, '12345.6789', '2024-02-03 04:05:06.654321', '2024-01-02', "
+          + "'short text', REPEAT('long text ', 20), true)", TABLE));
+      for (int rows = 1; rows < ROWS; rows *= 2) {
+        stmt.execute(String.format("INSERT INTO %1$s (b, c, d, e, f, g, h, i) "
+            + "SELECT b + a, c, d, e, f, g, h, i FROM %1$s", TABLE));
+      }
+    }
+    columns = conn.getColumns(null);
+  }
+
+  @TearDown
+  public void tearDown() throws Exception {
+    conn.close();
+  }
+
+  @Benchmark
+  public void decode(Blackhole blackhole) throws Exception {
+    try (Statement stmt = conn.getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(String.format("SELECT * FROM %s", TABLE))) {
+      int[] indexes = new int[columns.size()];
+      for (int i = 0; i < indexes.length; i++) {
+        indexes[i] = rs.findColumn(columns.get(i).getName());
+      }
+
+      RawRowDecoder rawDecoder = decoder.equals("raw")
+          ? new RawRowDecoder(rs.getMetaData(), columns, indexes, conn::getValue) : null;
+      while (rs.next()) {
+        blackhole.consume(rawDecoder != null
+            ? rawDecoder.decode(rs) : conn.getRow(rs, columns, indexes));
+      }
+    }
+  }
+}
@@ -0,0 +1,243 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Spreads connections of all syncs across aggregators of a cluster and tracks their health.
+ * Connections are opened to the healthy aggregator with the fewest open connections. An aggregator
+ * that fails to accept a connection, or whose connection is lost, is considered down for a period
+ * that grows with every consecutive failure, and is tried again only after the period ends or if
+ * no other aggregator is available. Health checks probe aggregators that are down in the
+ * background, so an aggregator that recovers is used again before its period ends.
+ */
+public class AggregatorBalancer {
+
+  private static final long HEALTH_CHECK_INTERVAL_MILLIS = 10_000;
+  private static final int HEALTH_CHECK_TIMEOUT_MILLIS = 2_000;
+
+  private static final AggregatorBalancer shared = new AggregatorBalancer(10_000, 5 * 60_000);
+
+  static {
+    shared.startHealthChecks(AggregatorBalancer::acceptsConnections,
+        HEALTH_CHECK_INTERVAL_MILLIS);
+  }
+
+  public static class Endpoint {
+
+    private final String host;
+    private final int port;
+
+    public Endpoint(String host, int port) {
+      this.host = host;
+      this.port = port;
+    }
+
+    public String host() {
+      return host;
+    }
+
+    public int port() {
+      return port;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Endpoint)) {
+        return false;
+      }
+      Endpoint endpoint = (Endpoint) o;
+      return port == endpoint.port && host.equals(endpoint.host);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(host, port);
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%s:%d", host, port);
+    }
+  }
+
+  @FunctionalInterface
+  public interface HealthCheck {
+
+    /**
+     * Returns true if the endpoint accepts connections.
+     */
+    boolean isHealthy(Endpoint endpoint);
+  }
+
+  private static class Health {
+
+    int openConnections;
+    int consecutiveFailures;
+    long downUntilNanos;
+    long lastChosen;
+  }
+
+  private final long minDownNanos;
+  private final long maxDownNanos;
+  private final Map<Endpoint, Health> health = new HashMap<>();
+  private long chosenCount;
+  private ScheduledExecutorService healthChecker;
+
+  /**
+   * @param minDownMillis period for which an aggregator is considered down after its first
+   *                      failure
+   * @param maxDownMillis maximum period for which an aggregator is considered down
+   */
+  public AggregatorBalancer(long minDownMillis, long maxDownMillis) {
+    this.minDownNanos = minDownMillis * 1_000_000;
+    this.maxDownNanos = maxDownMillis * 1_000_000;
+  }
+
+  /**
+   * Returns the balancer shared by all connections of the process.
+   */
+  public static AggregatorBalancer shared() {
+    return shared;
+  }
+
+  private Health getHealth(Endpoint endpoint) {
+    return health.computeIfAbsent(endpoint, e -> new Health());
+  }
+
+  private boolean isDown(Health h, long now) {
+    return h.consecutiveFailures > 0 && now - h.downUntilNanos < 0;
+  }
+
+  /**
+   * Returns endpoints in the order in which connections should be attempted. Healthy endpoints
+   * come first, ordered by the number of open connections and then by the time they were last
+   * chosen. Endpoints that are down come last, ordered by the time they are expected to recover.
+   */
+  public synchronized List<Endpoint> order(List<Endpoint> endpoints) {
+    long now = System.nanoTime();
+    List<Endpoint> res = new ArrayList<>(endpoints);
+    res.sort(Comparator
+        .comparing((Endpoint e) -> isDown(getHealth(e), now))
+        .thenComparingLong(e -> isDown(getHealth(e), now) ? getHealth(e).downUntilNanos - now : 0)
+        .thenComparingInt(e -> getHealth(e).openConnections)
+        .thenComparingLong(e -> getHealth(e).lastChosen));
+
+    return res;
+  }
+
+  /**
+   * Records that a connection to the endpoint is opened.
+   */
+  public synchronized void connected(Endpoint endpoint) {
+    if (endpoint == null) {
+      return;
+    }
+    Health h = getHealth(endpoint);
+    h.openConnections++;
+    h.consecutiveFailures = 0;
+    h.lastChosen = ++chosenCount;
+  }
+
+  /**
+   * Records that a connection to the endpoint is closed.
+   */
+  public synchronized void released(Endpoint endpoint) {
+    if (endpoint == null) {
+      return;
+    }
+    Health h = getHealth(endpoint);
+    h.openConnections = Math.max(0, h.openConnections - 1);
+  }
+
+  /**
+   * Records that the endpoint failed to accept a connection or lost one.
+   */
+  public synchronized void failed(Endpoint endpoint) {
+    if (endpoint == null) {
+      return;
+    }
+    Health h = getHealth(endpoint);
+    long downNanos = minDownNanos;
+    for (int i = 0; i < h.consecutiveFailures && downNanos < maxDownNanos; i++) {
+      downNanos *= 2;
+    }
+    h.consecutiveFailures++;
+    h.downUntilNanos = System.nanoTime() + Math.min(downNanos, maxDownNanos);
+  }
+
+  public synchronized boolean isDown(Endpoint endpoint) {
+    return isDown(getHealth(endpoint), System.nanoTime());
+  }
+
+  public synchronized int openConnections(Endpoint endpoint) {
+    return getHealth(endpoint).openConnections;
+  }
+
+  /**
+   * Probes every endpoint that is down and marks the ones that pass the check as healthy. The
+   * check runs without the lock, so slow probes don't delay connections.
+   */
+  public void checkDownEndpoints(HealthCheck check) {
+    List<Endpoint> down;
+    synchronized (this) {
+      long now = System.nanoTime();
+      down = health.entrySet()
+          .stream()
+          .filter(e -> isDown(e.getValue(), now))
+          .map(Map.Entry::getKey)
+          .collect(Collectors.toList());
+    }
+
+    for (Endpoint endpoint : down) {
+      if (check.isHealthy(endpoint)) {
+        synchronized (this) {
+          getHealth(endpoint).consecutiveFailures = 0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs {@link #checkDownEndpoints} periodically on a daemon thread.
+   */
+  public synchronized void startHealthChecks(HealthCheck check, long intervalMillis) {
+    if (healthChecker != null) {
+      return;
+    }
+    healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "aggregator-health-check");
+      thread.setDaemon(true);
+      return thread;
+    });
+    healthChecker.scheduleWithFixedDelay(() -> checkDownEndpoints(check), intervalMillis,
+        intervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns true if a TCP connection to the endpoint can be opened.
+   */
+  static boolean acceptsConnections(Endpoint endpoint) {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(endpoint.host(), endpoint.port()),
+          HEALTH_CHECK_TIMEOUT_MILLIS);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compacts change events by primary key within a checkpoint window. Only the last row image or
+ * delete of every key is kept. When the buffer exceeds its capacity, the oldest key is emitted to
+ * make room for the new one.
+ */
+public class ChangeCompactor {
+
+  @FunctionalInterface
+  public interface RecordEmitter {
+
+    void emit(RecordType type, Map<String, ValueType> row) throws Exception;
+  }
+
+  private static class Change {
+
+    RecordType type;
+    Map<String, ValueType> row;
+
+    Change(RecordType type, Map<String, ValueType> row) {
+      this.type = type;
+      this.row = row;
+    }
+  }
+
+  private final List<String> keyColumns;
+  private final int capacity;
+  private final RecordEmitter emitter;
+  private final LinkedHashMap<List<ValueType>, Change> buffer = new LinkedHashMap<>();
+  private long bytes;
+
+  /**
+   * @param keyColumns names of columns that identify a row
+   * @param capacity   maximum number of keys kept in the buffer
+   * @param emitter    callback that receives compacted records
+   */
+  public ChangeCompactor(List<String> keyColumns, int capacity, RecordEmitter emitter) {
+    this.keyColumns = keyColumns;
+    this.capacity = capacity;
+    this.emitter = emitter;
+  }
+
+  public void add(RecordType type, Map<String, ValueType> row) throws Exception {
+    List<ValueType> key = new ArrayList<>(keyColumns.size());
+    for (String column : keyColumns) {
+      key.add(row.get(column));
+    }
+
+    Change previous = buffer.remove(key);
+    if (previous != null) {
+      bytes -= estimateSize(previous.row);
+    }
+    if (previous != null && type == RecordType.UPDATE && previous.type != RecordType.UPDATE) {
+      // The row was inserted or deleted within this window, so the update can't be applied
+      // as a change of an existing row. It carries the full row image, so it is sent as an upsert.
+      type = RecordType.UPSERT;
+    }
+    buffer.put(key, new Change(type, row));
+    bytes += estimateSize(row);
+
+    if (buffer.size() > capacity) {
+      Iterator<Change> it = buffer.values().iterator();
+      Change eldest = it.next();
+      it.remove();
+      bytes -= estimateSize(eldest.row);
+      emitter.emit(eldest.type, eldest.row);
+    }
+  }
+
+  /**
+   * Emits all buffered records. Must be called before every checkpoint.
+   */
+  public void flush() throws Exception {
+    for (Change change : buffer.values()) {
+      emitter.emit(change.type, change.row);
+    }
+    buffer.clear();
+    bytes = 0;
+  }
+
+  public int size() {
+    return buffer.size();
+  }
+
+  /**
+   * Returns an estimated number of bytes held by buffered rows.
+   */
+  public long bytes() {
+    return bytes;
+  }
+
+  static long estimateSize(Map<String, ValueType> row) {
+    long res = 0;
+    for (Map.Entry<String, ValueType> entry : row.entrySet()) {
+      res += entry.getKey().length() + entry.getValue().getSerializedSize();
+    }
+
+    return res;
+  }
+}
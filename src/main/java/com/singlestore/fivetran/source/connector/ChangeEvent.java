@@ -0,0 +1,102 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.Map;
+
+/**
+ * Event of the change stream passed from OBSERVE to the sync, through spools and the stages of a
+ * {@link ChangePipeline}. Events are immutable, stages that change the row create a new event.
+ */
+public class ChangeEvent {
+
+  // Operations of OBSERVE events
+  public static final String INSERT = "Insert";
+  public static final String UPDATE = "Update";
+  public static final String DELETE = "Delete";
+  public static final String BEGIN_TRANSACTION = "BeginTransaction";
+  public static final String COMMIT_TRANSACTION = "CommitTransaction";
+  public static final String BEGIN_SNAPSHOT = "BeginSnapshot";
+  public static final String COMMIT_SNAPSHOT = "CommitSnapshot";
+
+  private final String operation;
+  private final Integer partition;
+  private final String offset;
+  private final Map<String, ValueType> row;
+  // Estimated size of the row, computed on first use
+  private long bytes = -1;
+
+  public ChangeEvent(String operation, Integer partition, String offset,
+      Map<String, ValueType> row) {
+    this.operation = operation;
+    this.partition = partition;
+    this.offset = offset;
+    this.row = row;
+  }
+
+  public String operation() {
+    return operation;
+  }
+
+  public Integer partition() {
+    return partition;
+  }
+
+  public String offset() {
+    return offset;
+  }
+
+  /**
+   * Returns values of the row by column name. Markers of transactions and snapshots have no
+   * meaningful values.
+   */
+  public Map<String, ValueType> row() {
+    return row;
+  }
+
+  /**
+   * Returns true if the event changes a row, false if it marks a transaction or a snapshot.
+   */
+  public boolean isRowChange() {
+    return isRowChange(operation);
+  }
+
+  public static boolean isRowChange(String operation) {
+    return operation.equals(INSERT) || operation.equals(UPDATE) || operation.equals(DELETE);
+  }
+
+  /**
+   * Returns the type of the record that carries the row change, null if the event doesn't change
+   * a row.
+   */
+  public RecordType recordType() {
+    switch (operation) {
+      case INSERT:
+        return RecordType.UPSERT;
+      case UPDATE:
+        return RecordType.UPDATE;
+      case DELETE:
+        return RecordType.DELETE;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Returns the estimated number of bytes held by the row, see
+   * {@link ChangeCompactor#estimateSize}.
+   */
+  public long estimatedBytes() {
+    if (bytes < 0) {
+      bytes = row == null ? 0 : ChangeCompactor.estimateSize(row);
+    }
+    return bytes;
+  }
+
+  /**
+   * Returns an event with the same position in the stream and the given row.
+   */
+  public ChangeEvent withRow(Map<String, ValueType> row) {
+    return new ChangeEvent(operation, partition, offset, row);
+  }
+}
@@ -0,0 +1,311 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Chain of stages between OBSERVE and a sink. OBSERVE is the source and passes decoded events to
+ * the first stage, every stage passes any number of events to the next one, and the last stage
+ * passes them to the sink. A stage runs on the thread of the stage before it, or on its own
+ * thread that takes events from a bounded queue. Either way, the order of events is kept.
+ *
+ * <p>When the source is done, {@link #finish} waits for the events queued for threaded stages and
+ * flushes every stage, so events buffered by stages reach the sink.
+ */
+public class ChangePipeline implements SingleStoreConnection.ObserveConsumer, AutoCloseable {
+
+  // Time a threaded stage waits for an event before it checks whether the pipeline is closed
+  static final long POLL_MILLIS = 100;
+
+  @FunctionalInterface
+  public interface Downstream {
+
+    void emit(ChangeEvent event) throws Exception;
+  }
+
+  @FunctionalInterface
+  public interface Stage {
+
+    /**
+     * Processes an event and passes the resulting events to the next stage.
+     */
+    void process(ChangeEvent event, Downstream next) throws Exception;
+
+    /**
+     * Passes events buffered by the stage to the next stage. Called when the source is done.
+     */
+    default void flush(Downstream next) throws Exception {
+    }
+  }
+
+  @FunctionalInterface
+  public interface Sink {
+
+    void accept(ChangeEvent event) throws Exception;
+  }
+
+  /**
+   * Sink that drops events. Used to measure throughput of the source and the stages.
+   */
+  public static class DiscardSink implements Sink {
+
+    private long events;
+    private long rowChanges;
+
+    @Override
+    public void accept(ChangeEvent event) {
+      events++;
+      if (event.isRowChange()) {
+        rowChanges++;
+      }
+    }
+
+    public long events() {
+      return events;
+    }
+
+    public long rowChanges() {
+      return rowChanges;
+    }
+  }
+
+  /**
+   * Threading and queueing policy of a stage.
+   */
+  public static class Threading {
+
+    public static final Threading CALLER = new Threading(0);
+
+    private final int queueCapacity;
+
+    private Threading(int queueCapacity) {
+      this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Runs the stage on its own thread. The stage before it waits while the queue is full.
+     */
+    public static Threading threaded(int queueCapacity) {
+      if (queueCapacity <= 0) {
+        throw new IllegalArgumentException("Queue capacity of a threaded stage must be positive");
+      }
+      return new Threading(queueCapacity);
+    }
+
+    boolean isThreaded() {
+      return queueCapacity > 0;
+    }
+  }
+
+  public static Stage filter(Predicate<ChangeEvent> predicate) {
+    return (event, next) -> {
+      if (predicate.test(event)) {
+        next.emit(event);
+      }
+    };
+  }
+
+  public static Stage transform(Function<ChangeEvent, ChangeEvent> function) {
+    return (event, next) -> next.emit(function.apply(event));
+  }
+
+  public static class Builder {
+
+    private final List<String> names = new ArrayList<>();
+    private final List<Stage> stages = new ArrayList<>();
+    private final List<Threading> threading = new ArrayList<>();
+
+    private Builder() {
+    }
+
+    public Builder stage(String name, Stage stage) {
+      return stage(name, stage, Threading.CALLER);
+    }
+
+    public Builder stage(String name, Stage stage, Threading policy) {
+      names.add(name);
+      stages.add(stage);
+      threading.add(policy);
+      return this;
+    }
+
+    public ChangePipeline build(Sink sink) {
+      return new ChangePipeline(this, sink);
+    }
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Stage together with the way events reach it.
+   */
+  private class Node implements Downstream {
+
+    final Stage stage;
+    final Downstream next;
+    // Null if the stage runs on the thread of the stage before it
+    final BlockingQueue<ChangeEvent> queue;
+    final Thread thread;
+    volatile boolean sourceDone;
+
+    Node(String name, Stage stage, Threading policy, Downstream next) {
+      this.stage = stage;
+      this.next = next;
+      if (policy.isThreaded()) {
+        this.queue = new ArrayBlockingQueue<>(policy.queueCapacity);
+        this.thread = new Thread(this::run, "pipeline-" + name);
+        this.thread.setDaemon(true);
+      } else {
+        this.queue = null;
+        this.thread = null;
+      }
+    }
+
+    @Override
+    public void emit(ChangeEvent event) throws Exception {
+      if (queue == null) {
+        stage.process(event, next);
+        return;
+      }
+
+      while (!queue.offer(event, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+        checkFailure();
+        if (closed) {
+          throw new IllegalStateException("Pipeline is closed");
+        }
+      }
+    }
+
+    /**
+     * Processes the remaining events of an upstream that is done, then flushes the stage.
+     */
+    void finish() throws Exception {
+      if (thread == null) {
+        stage.flush(next);
+        return;
+      }
+
+      sourceDone = true;
+      thread.join();
+      checkFailure();
+    }
+
+    private void run() {
+      try {
+        while (!closed) {
+          ChangeEvent event = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+          if (event != null) {
+            stage.process(event, next);
+          } else if (sourceDone) {
+            // The upstream may have queued events after the poll and before it was done. It passes
+            // no events once the flag is set, so the queue is drained when it is empty.
+            while ((event = queue.poll()) != null) {
+              stage.process(event, next);
+            }
+            stage.flush(next);
+            break;
+          }
+        }
+      } catch (Exception e) {
+        fail(e);
+      }
+    }
+  }
+
+  private final List<Node> nodes = new ArrayList<>();
+  private final Downstream head;
+  private volatile boolean closed;
+  private volatile Exception failure;
+
+  private ChangePipeline(Builder builder, Sink sink) {
+    Downstream next = sink::accept;
+    for (int i = builder.stages.size() - 1; i >= 0; i--) {
+      Node node = new Node(builder.names.get(i), builder.stages.get(i), builder.threading.get(i),
+          next);
+      nodes.add(0, node);
+      next = node;
+    }
+    this.head = next;
+
+    for (Node node : nodes) {
+      if (node.thread != null) {
+        node.thread.start();
+      }
+    }
+  }
+
+  private synchronized void fail(Exception e) {
+    if (failure == null) {
+      failure = e;
+    }
+    closed = true;
+  }
+
+  private void checkFailure() throws Exception {
+    Exception e = failure;
+    if (e != null) {
+      throw e;
+    }
+  }
+
+  /**
+   * Passes an event of the source to the first stage.
+   */
+  public void accept(ChangeEvent event) throws Exception {
+    checkFailure();
+    head.emit(event);
+  }
+
+  @Override
+  public void accept(String operation, Integer partition, String offset,
+      Map<String, ValueType> row) throws Exception {
+    accept(new ChangeEvent(operation, partition, offset, row));
+  }
+
+  /**
+   * Runs OBSERVE as the source of the pipeline and finishes the pipeline when it returns.
+   */
+  public void run(SingleStoreConnection conn, State state, Set<String> selectedColumns)
+      throws Exception {
+    try {
+      conn.observe(state, selectedColumns, this);
+      finish();
+    } finally {
+      close();
+    }
+  }
+
+  /**
+   * Called when the source is done. Passes events buffered by stages to the sink, stage by stage
+   * in order, and throws the first failure of a stage.
+   */
+  public void finish() throws Exception {
+    checkFailure();
+    for (Node node : nodes) {
+      node.finish();
+    }
+  }
+
+  /**
+   * Stops threaded stages. Events that have not reached the sink are dropped.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    closed = true;
+    for (Node node : nodes) {
+      if (node.thread != null) {
+        node.thread.join();
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Decodes rows of OBSERVE on a pool of workers. A reader thread reads raw rows and submits them
+ * for decoding, while the calling thread passes decoded rows to the consumer. Rows of the same
+ * partition are passed in the order they were read, rows of different partitions may interleave.
+ */
+public class DecodePipeline {
+
+  /**
+   * Change event read by the reader thread, whose row is not decoded yet.
+   */
+  public static class RawEvent {
+
+    final ChangeEvent event;
+    final Callable<Map<String, ValueType>> decoder;
+
+    /**
+     * @param event   the event without its row
+     * @param decoder decodes the raw row, called by a worker
+     */
+    public RawEvent(ChangeEvent event, Callable<Map<String, ValueType>> decoder) {
+      this.event = event;
+      this.decoder = decoder;
+    }
+  }
+
+  @FunctionalInterface
+  public interface Reader {
+
+    /**
+     * Reads the next row. Called only by the reader thread.
+     *
+     * @return the next row, null if there are no more rows
+     */
+    RawEvent read() throws Exception;
+  }
+
+  private static class Task implements Runnable {
+
+    final RawEvent event;
+    volatile boolean done;
+    Map<String, ValueType> row;
+    Exception error;
+
+    Task(RawEvent event) {
+      this.event = event;
+    }
+
+    @Override
+    public void run() {
+      try {
+        row = event.decoder.call();
+      } catch (Exception e) {
+        error = e;
+      }
+      done = true;
+    }
+  }
+
+  private final Executor workers;
+  private final int maxInFlight;
+
+  private final Object lock = new Object();
+  // Rows that are read but not yet passed to the consumer, by partition
+  private final Map<Integer, ArrayDeque<Task>> queues = new LinkedHashMap<>();
+  private boolean readerDone;
+  private Throwable readerError;
+
+  /**
+   * @param workers     executor that decodes rows, may be shared by several syncs
+   * @param maxInFlight maximum number of rows that are read but not yet passed to the consumer
+   */
+  public DecodePipeline(Executor workers, int maxInFlight) {
+    this.workers = workers;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * Reads all rows from the reader and passes them to the consumer on the calling thread. Returns
+   * when the reader has no more rows and all of them are consumed. If the reader, a decoder or the
+   * consumer fails, the reader thread is stopped and the error is thrown.
+   */
+  public void run(Reader reader, ChangePipeline.Sink consumer) throws Exception {
+    Semaphore inFlight = new Semaphore(maxInFlight);
+    Thread readerThread = new Thread(() -> {
+      try {
+        while (true) {
+          inFlight.acquire();
+          RawEvent event = reader.read();
+          if (event == null) {
+            break;
+          }
+
+          Task task = new Task(event);
+          synchronized (lock) {
+            queues.computeIfAbsent(event.event.partition(), p -> new ArrayDeque<>()).add(task);
+          }
+          workers.execute(() -> {
+            task.run();
+            synchronized (lock) {
+              lock.notifyAll();
+            }
+          });
+        }
+      } catch (Throwable e) {
+        synchronized (lock) {
+          readerError = e;
+        }
+      } finally {
+        synchronized (lock) {
+          readerDone = true;
+          lock.notifyAll();
+        }
+      }
+    }, "observe-reader");
+    readerThread.setDaemon(true);
+    readerThread.start();
+
+    try {
+      Task task;
+      while ((task = takeReady()) != null) {
+        inFlight.release();
+        if (task.error != null) {
+          throw task.error;
+        }
+
+        consumer.accept(task.event.event.withRow(task.row));
+      }
+    } finally {
+      readerThread.interrupt();
+      readerThread.join();
+    }
+  }
+
+  /**
+   * Waits for a decoded row at the head of any partition queue.
+   *
+   * @return the decoded row, null if all rows are consumed
+   */
+  private Task takeReady() throws Exception {
+    synchronized (lock) {
+      while (true) {
+        if (readerError != null) {
+          if (readerError instanceof Exception) {
+            throw (Exception) readerError;
+          }
+          throw new Exception(readerError);
+        }
+
+        boolean empty = true;
+        for (ArrayDeque<Task> queue : queues.values()) {
+          Task head = queue.peek();
+          if (head == null) {
+            continue;
+          }
+
+          empty = false;
+          if (head.done) {
+            return queue.poll();
+          }
+        }
+
+        if (empty && readerDone) {
+          return null;
+        }
+        lock.wait();
+      }
+    }
+  }
+}
@@ -0,0 +1,425 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spool of change events between OBSERVE and the sender of a sync. OBSERVE runs on a separate
+ * thread and appends events to memory-mapped segment files, so it reads at the speed of the
+ * database even if Fivetran receives records slower. The sync thread reads events in the same
+ * order. Segments that are read are deleted once a checkpoint that covers them is sent.
+ */
+public class DiskSpool implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(DiskSpool.class);
+
+  // Size of the length prefix of every event
+  private static final int HEADER_BYTES = 4;
+
+  public static class Settings {
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final long maxUnreadBytes;
+
+    /**
+     * @param directory      directory that receives segment files
+     * @param segmentBytes   size of a segment file
+     * @param maxUnreadBytes maximum size of segments that are not read yet, OBSERVE waits when
+     *                       it is exceeded
+     */
+    public Settings(Path directory, long segmentBytes, long maxUnreadBytes) {
+      if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException(
+            String.format("Spool segment size must be between 1 and %d bytes", Integer.MAX_VALUE));
+      }
+      this.directory = directory;
+      this.segmentBytes = segmentBytes;
+      this.maxUnreadBytes = maxUnreadBytes;
+    }
+  }
+
+  /**
+   * Source of the change events, runs OBSERVE from the given offsets.
+   */
+  @FunctionalInterface
+  interface Source {
+
+    void observe(State state, ChangePipeline.Sink sink) throws Exception;
+  }
+
+  private static class Segment {
+
+    final Path file;
+    final MappedByteBuffer buffer;
+    // Positions of the views are the write and the read positions of the segment
+    final ByteBuffer writer;
+    final ByteBuffer reader;
+    boolean sealed;
+
+    Segment(Path file, MappedByteBuffer buffer) {
+      this.file = file;
+      this.buffer = buffer;
+      this.writer = buffer.duplicate();
+      this.reader = buffer.duplicate();
+    }
+
+    boolean hasUnread() {
+      return reader.position() < writer.position();
+    }
+  }
+
+  private final Settings settings;
+  // Null if the writer doesn't take work slots
+  private final SyncScheduler.Permit permit;
+  private final Path directory;
+  // Segments that are not completely read, the last one receives new events
+  private final ArrayDeque<Segment> unread = new ArrayDeque<>();
+  // Segments that are read but not yet covered by a checkpoint
+  private final List<Segment> read = new ArrayList<>();
+  private long unreadBytes;
+  private long segmentCount;
+  private long peakBytes;
+  private boolean writerDone;
+  private boolean readerDone;
+  private Exception writerError;
+
+  /**
+   * @param settings settings of the spool
+   * @param permit   permit of the sync, OBSERVE holds its work slot while it passes an event and
+   *                 gives it to other syncs while it waits for the sync to read spooled events,
+   *                 null if work slots are not used
+   */
+  public DiskSpool(Settings settings, SyncScheduler.Permit permit) throws IOException {
+    this.settings = settings;
+    this.permit = permit;
+    Files.createDirectories(settings.directory);
+    this.directory = Files.createTempDirectory(settings.directory, "sync-");
+  }
+
+  /**
+   * Runs OBSERVE on a separate thread through the spool and passes events to the consumer on the
+   * calling thread. Returns when OBSERVE ends and all spooled events are consumed, or when the
+   * sync stops. Errors of OBSERVE are thrown after the events received before them are consumed.
+   */
+  public void observe(SingleStoreConnection conn, State state, Set<String> selectedColumns,
+      ChangePipeline.Sink consumer) throws Exception {
+    observe((offsets, sink) -> conn.observe(offsets, selectedColumns,
+        (operation, partition, offset, row) ->
+            sink.accept(new ChangeEvent(operation, partition, offset, row))),
+        state, consumer, conn::stop, conn::isStopped);
+  }
+
+  /**
+   * @param stop    stops the source, called if the consumer stops reading before the source ends
+   * @param stopped returns true if the sync is stopped
+   */
+  void observe(Source source, State state, ChangePipeline.Sink consumer, Runnable stop,
+      BooleanSupplier stopped) throws Exception {
+    synchronized (this) {
+      writerDone = false;
+      readerDone = false;
+      writerError = null;
+    }
+
+    // OBSERVE is ahead of the sync, so it resumes from its own offsets if it is restarted
+    OffsetTracker offsets = new OffsetTracker(state);
+    Thread writer = new Thread(() -> {
+      try {
+        source.observe(offsets.state(), event -> {
+          append(event);
+          offsets.advance(event);
+        });
+        finishWriter(null);
+      } catch (Exception e) {
+        finishWriter(e);
+      }
+    }, "observe-spool");
+    writer.setDaemon(true);
+    writer.start();
+
+    try {
+      while (!stopped.getAsBoolean()) {
+        // Time spent waiting for OBSERVE is recorded by the connection
+        ChangeEvent event = take();
+        if (event == null) {
+          break;
+        }
+        consumer.accept(event);
+      }
+    } finally {
+      boolean writing;
+      synchronized (this) {
+        readerDone = true;
+        notifyAll();
+        // A writer that is done may still be alive, it must not stop the next OBSERVE
+        writing = !writerDone;
+      }
+      if (writing) {
+        // The sync doesn't read anymore
+        stop.run();
+      }
+      writer.join();
+    }
+
+    synchronized (this) {
+      if (writerError != null) {
+        throw writerError;
+      }
+    }
+  }
+
+  private synchronized void finishWriter(Exception e) {
+    writerDone = true;
+    writerError = e;
+    notifyAll();
+  }
+
+  private boolean isFull(int size) {
+    return unreadBytes + size > settings.maxUnreadBytes && unreadBytes > 0;
+  }
+
+  private void append(ChangeEvent event) throws IOException, InterruptedException {
+    byte[] payload = encode(event);
+    int size = HEADER_BYTES + payload.length;
+
+    // Events are never dropped, OBSERVE waits while the sync catches up
+    while (true) {
+      synchronized (this) {
+        if (readerDone) {
+          return;
+        }
+        if (!isFull(size)) {
+          write(payload);
+          return;
+        }
+      }
+
+      // Give the work slot to other syncs while waiting. It is taken back outside of the lock,
+      // which the sync needs to read events.
+      if (permit != null) {
+        permit.endWork();
+      }
+      try {
+        synchronized (this) {
+          while (isFull(size) && !readerDone) {
+            wait();
+          }
+        }
+      } finally {
+        if (permit != null) {
+          permit.beginWork();
+        }
+      }
+    }
+  }
+
+  private void write(byte[] payload) throws IOException {
+    int size = HEADER_BYTES + payload.length;
+    Segment segment = unread.peekLast();
+    if (segment == null || segment.sealed || segment.writer.remaining() < size) {
+      if (segment != null) {
+        segment.sealed = true;
+      }
+      segment = newSegment(Math.max(settings.segmentBytes, size));
+      unread.addLast(segment);
+    }
+
+    segment.writer.putInt(payload.length);
+    segment.writer.put(payload);
+    unreadBytes += size;
+    peakBytes = Math.max(peakBytes, unreadBytes);
+    notifyAll();
+  }
+
+  /**
+   * Returns the next event, waiting for OBSERVE if needed, or null if OBSERVE ended and all
+   * events are read.
+   */
+  private ChangeEvent take() throws IOException, InterruptedException {
+    byte[] payload;
+    synchronized (this) {
+      while (true) {
+        Segment segment = unread.peekFirst();
+        if (segment != null && segment.hasUnread()) {
+          payload = new byte[segment.reader.getInt()];
+          segment.reader.get(payload);
+          unreadBytes -= HEADER_BYTES + payload.length;
+          notifyAll();
+          break;
+        }
+        if (segment != null && (segment.sealed || writerDone)) {
+          unread.removeFirst();
+          read.add(segment);
+          continue;
+        }
+        if (writerDone) {
+          return null;
+        }
+        wait();
+      }
+    }
+
+    return decode(payload);
+  }
+
+  /**
+   * Deletes segments whose events are all read. Must be called after a checkpoint that covers
+   * the events passed to the consumer.
+   */
+  public void checkpointed() {
+    List<Segment> deleted;
+    synchronized (this) {
+      deleted = new ArrayList<>(read);
+      read.clear();
+    }
+
+    for (Segment segment : deleted) {
+      delete(segment);
+    }
+  }
+
+  private Segment newSegment(long size) throws IOException {
+    Path file = directory.resolve(String.format("segment-%08d", segmentCount++));
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      // The mapping stays valid after the channel is closed
+      return new Segment(file, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+  }
+
+  private void delete(Segment segment) {
+    unmap(segment.buffer);
+    try {
+      Files.deleteIfExists(segment.file);
+      logger.debug(String.format("Deleted spool segment %s", segment.file));
+    } catch (IOException e) {
+      logger.warn(String.format("Failed to delete spool segment %s", segment.file), e);
+    }
+  }
+
+  /**
+   * Releases the mapping of a segment instead of waiting for the buffer to be garbage collected,
+   * so disk space of deleted segments is freed during the sync. The buffer must not be used
+   * afterwards.
+   */
+  private static void unmap(MappedByteBuffer buffer) {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner;
+      try {
+        invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      } catch (NoSuchMethodException e) {
+        // Java 8 exposes the cleaner of the buffer
+        Method cleaner = buffer.getClass().getMethod("cleaner");
+        cleaner.setAccessible(true);
+        Object bufferCleaner = cleaner.invoke(buffer);
+        bufferCleaner.getClass().getMethod("clean").invoke(bufferCleaner);
+        return;
+      }
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      invokeCleaner.invoke(theUnsafe.get(null), buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // The mapping is released when the buffer is garbage collected
+      logger.debug("Failed to unmap spool segment", e);
+    }
+  }
+
+  /**
+   * Returns the maximum number of bytes of events that were spooled but not read.
+   */
+  public synchronized long peakBytes() {
+    return peakBytes;
+  }
+
+  public synchronized long unreadBytes() {
+    return unreadBytes;
+  }
+
+  static byte[] encode(ChangeEvent event) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeUTF(event.operation());
+    out.writeInt(event.partition());
+    out.writeUTF(event.offset());
+    if (event.row() == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(event.row().size());
+      for (Map.Entry<String, ValueType> column : event.row().entrySet()) {
+        out.writeUTF(column.getKey());
+        byte[] value = column.getValue().toByteArray();
+        out.writeInt(value.length);
+        out.write(value);
+      }
+    }
+    out.flush();
+
+    return bytes.toByteArray();
+  }
+
+  private static ChangeEvent decode(byte[] payload) throws IOException {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    String operation = in.readUTF();
+    int partition = in.readInt();
+    String offset = in.readUTF();
+    int columns = in.readInt();
+    Map<String, ValueType> row = null;
+    if (columns >= 0) {
+      row = new LinkedHashMap<>();
+      for (int i = 0; i < columns; i++) {
+        String name = in.readUTF();
+        byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        row.put(name, ValueType.parseFrom(value));
+      }
+    }
+
+    return new ChangeEvent(operation, partition, offset, row);
+  }
+
+  @Override
+  public void close() {
+    List<Segment> all;
+    synchronized (this) {
+      readerDone = true;
+      notifyAll();
+      all = new ArrayList<>(read);
+      all.addAll(unread);
+      read.clear();
+      unread.clear();
+      unreadBytes = 0;
+    }
+
+    for (Segment segment : all) {
+      delete(segment);
+    }
+    try {
+      Files.deleteIfExists(directory);
+    } catch (IOException e) {
+      logger.warn(String.format("Failed to delete spool directory %s", directory), e);
+    }
+  }
+}
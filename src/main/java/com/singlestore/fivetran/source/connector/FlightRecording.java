@@ -0,0 +1,88 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.util.Date;
+import javax.management.ObjectName;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Starts time-boxed Java Flight Recorder recordings of the running process, so a misbehaving sync
+ * can be profiled without restarting the connector. A recording is started through JMX and is
+ * written to a file in the configured directory when it ends.
+ */
+public class FlightRecording implements FlightRecordingMBean {
+
+  private static final Logger logger = LoggerFactory.getLogger(FlightRecording.class);
+
+  private final Path directory;
+  private final long defaultDurationSeconds;
+  private Recording recording;
+  private Path destination;
+
+  /**
+   * @param directory              directory that receives recordings
+   * @param defaultDurationSeconds duration of recordings started without one
+   */
+  public FlightRecording(Path directory, long defaultDurationSeconds) {
+    this.directory = directory;
+    this.defaultDurationSeconds = defaultDurationSeconds;
+  }
+
+  @Override
+  public String start() throws Exception {
+    return start(defaultDurationSeconds);
+  }
+
+  @Override
+  public synchronized String start(long durationSeconds) throws Exception {
+    if (isRecording()) {
+      logger.info(String.format("Flight recording to %s is already running", destination));
+      return destination.toString();
+    }
+
+    Path file = directory.resolve(String.format("singlestore-fivetran-%s.jfr",
+        new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date())));
+    Recording r = new Recording(Configuration.getConfiguration("profile"));
+    try {
+      r.setName("singlestore-fivetran");
+      r.setToDisk(true);
+      r.setDestination(file);
+      r.setDuration(Duration.ofSeconds(durationSeconds));
+      r.start();
+    } catch (Exception e) {
+      r.close();
+      throw e;
+    }
+
+    recording = r;
+    destination = file;
+    logger.info(String.format("Flight recording STARTED for %d seconds, it will be written to %s",
+        durationSeconds, file));
+
+    return file.toString();
+  }
+
+  @Override
+  public synchronized boolean isRecording() {
+    return recording != null && recording.getState() == RecordingState.RUNNING;
+  }
+
+  /**
+   * Registers the control as a JMX bean. Failures are logged and ignored.
+   */
+  public void register() {
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(
+          "com.singlestore.fivetran.source.connector:type=FlightRecording"));
+    } catch (Exception e) {
+      logger.warn("Failed to register flight recording bean", e);
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package com.singlestore.fivetran.source.connector;
+
+/**
+ * JMX control of on-demand flight recordings.
+ */
+public interface FlightRecordingMBean {
+
+  /**
+   * Starts a recording of the default duration.
+   *
+   * @return path of the file that receives the recording
+   */
+  String start() throws Exception;
+
+  /**
+   * Starts a recording that stops by itself after the given number of seconds.
+   *
+   * @return path of the file that receives the recording
+   */
+  String start(long durationSeconds) throws Exception;
+
+  boolean isRecording();
+}
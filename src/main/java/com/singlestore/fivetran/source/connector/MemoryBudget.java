@@ -0,0 +1,182 @@
+package com.singlestore.fivetran.source.connector;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import java.util.ArrayDeque;
+
+/**
+ * Process-wide budget of memory used by syncs for data that is not yet delivered to Fivetran.
+ * Every sync has an account that tracks bytes of responses passed to gRPC but not yet flushed to
+ * the network and bytes of rows held in connector buffers. When the budget is exceeded, syncs are
+ * throttled until gRPC drains their responses, which pauses their OBSERVE cursors.
+ */
+public class MemoryBudget {
+
+  private static final long THROTTLE_POLL_MILLIS = 5;
+  // gRPC reports a stream as ready while fewer bytes than this are queued for the network
+  static final long ON_READY_THRESHOLD_BYTES = 32 * 1024;
+
+  private final long limit;
+  private long used;
+
+  /**
+   * @param limit maximum number of bytes held by all syncs
+   */
+  public MemoryBudget(long limit) {
+    this.limit = limit;
+  }
+
+  public static MemoryBudget unlimited() {
+    return new MemoryBudget(Long.MAX_VALUE);
+  }
+
+  public long limit() {
+    return limit;
+  }
+
+  public synchronized long used() {
+    return used;
+  }
+
+  /**
+   * Returns true if syncs hold more bytes than the budget allows.
+   */
+  public synchronized boolean isExceeded() {
+    return used > limit;
+  }
+
+  public Account newAccount(StreamObserver<?> responseObserver) {
+    return new Account(responseObserver);
+  }
+
+  public class Account implements AutoCloseable {
+
+    // null if the stream doesn't provide flow control information
+    private final ServerCallStreamObserver<?> responseObserver;
+    // Sizes of responses passed to gRPC that may not be flushed yet, oldest first
+    private final ArrayDeque<Long> inFlightResponses = new ArrayDeque<>();
+    private long inFlight;
+    private long buffered;
+    private long peak;
+    private long throttledNanos;
+
+    private Account(StreamObserver<?> responseObserver) {
+      if (responseObserver instanceof ServerCallStreamObserver) {
+        this.responseObserver = (ServerCallStreamObserver<?>) responseObserver;
+      } else {
+        this.responseObserver = null;
+      }
+    }
+
+    private void add(long bytes) {
+      used += bytes;
+      peak = Math.max(peak, inFlight + buffered);
+    }
+
+    /**
+     * Releases responses that gRPC has flushed. A ready stream has fewer than
+     * {@link #ON_READY_THRESHOLD_BYTES} queued, and responses are queued in order, so every
+     * response older than the newest ones that add up to the threshold is flushed. Responses of
+     * a stream without flow control and of a cancelled call are released right away.
+     */
+    private void releaseFlushed() {
+      long keep = responseObserver == null || responseObserver.isCancelled()
+          ? 0 : ON_READY_THRESHOLD_BYTES;
+      long released = 0;
+      while (!inFlightResponses.isEmpty() && inFlight - inFlightResponses.peekFirst() >= keep) {
+        long bytes = inFlightResponses.removeFirst();
+        inFlight -= bytes;
+        released += bytes;
+      }
+      if (released > 0) {
+        used -= released;
+        MemoryBudget.this.notifyAll();
+      }
+    }
+
+    private boolean isReady() {
+      // Responses of a cancelled call are dropped, so they never become ready
+      return responseObserver == null || responseObserver.isReady()
+          || responseObserver.isCancelled();
+    }
+
+    /**
+     * Accounts a response passed to gRPC. Its bytes are released once gRPC has flushed it.
+     */
+    public void sent(long bytes) {
+      boolean ready = isReady();
+      synchronized (MemoryBudget.this) {
+        inFlightResponses.addLast(bytes);
+        inFlight += bytes;
+        add(bytes);
+        if (ready) {
+          releaseFlushed();
+        }
+      }
+    }
+
+    /**
+     * Sets the number of bytes currently held in connector buffers by the sync.
+     */
+    public void setBuffered(long bytes) {
+      synchronized (MemoryBudget.this) {
+        long delta = bytes - buffered;
+        buffered = bytes;
+        add(delta);
+      }
+    }
+
+    public boolean isOverBudget() {
+      synchronized (MemoryBudget.this) {
+        return used > limit && inFlight > 0;
+      }
+    }
+
+    /**
+     * Blocks while the budget is exceeded and the sync has responses that gRPC has not drained
+     * yet. Bytes held in connector buffers are not waited for, as they are released only when the
+     * sync makes progress.
+     */
+    public void throttle() throws InterruptedException {
+      long start = System.nanoTime();
+      try {
+        while (true) {
+          boolean ready = isReady();
+          synchronized (MemoryBudget.this) {
+            if (ready) {
+              releaseFlushed();
+            }
+            // Bytes that a ready stream still holds are flushed without waiting for the sync
+            if (used <= limit || inFlight == 0 || ready) {
+              return;
+            }
+            MemoryBudget.this.wait(THROTTLE_POLL_MILLIS);
+          }
+        }
+      } finally {
+        throttledNanos += System.nanoTime() - start;
+      }
+    }
+
+    public long peak() {
+      synchronized (MemoryBudget.this) {
+        return peak;
+      }
+    }
+
+    public long throttledMillis() {
+      return throttledNanos / 1_000_000;
+    }
+
+    @Override
+    public void close() {
+      synchronized (MemoryBudget.this) {
+        used -= inFlight + buffered;
+        inFlight = 0;
+        inFlightResponses.clear();
+        buffered = 0;
+        MemoryBudget.this.notifyAll();
+      }
+    }
+  }
+}
@@ -0,0 +1,159 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.SchemaList;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the raw result stream of an OBSERVE query to a compressed local file, so it can be
+ * replayed later by {@link ObserveReplay} without a SingleStore instance.
+ *
+ * <p>The file starts with a header: magic number, format version, number of partitions, the
+ * table schema and the names, type names, JDBC types and encodings of the result set columns. It
+ * is followed by rows, each prefixed with a {@code 1} byte, and ends with a {@code 0} byte. Every
+ * value is stored as its length ({@code -1} for NULL) and bytes: binary columns as returned by
+ * {@link ResultSet#getBytes}, other columns as UTF-8 of {@link ResultSet#getString}. Version 1
+ * recordings have no JDBC types.
+ *
+ * <p>One recording covers a whole {@link SingleStoreConnection#observe} call. When OBSERVE is
+ * restarted after a reconnect, rows of the new query are appended, so the recording has every
+ * row the connection received. A restart after a schema change ends the recording, as rows with
+ * different columns can't be stored in one file.
+ */
+public class ObserveRecorder implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(ObserveRecorder.class);
+
+  static final int MAGIC = 0x53324F42;
+  static final int VERSION = 2;
+
+  private final String path;
+  private final DataOutputStream out;
+  private final int numPartitions;
+  private final SchemaList schema;
+  // Columns of the recorded result sets, null until the first one starts
+  private String[] labels;
+  private String[] typeNames;
+  private int[] types;
+  private boolean[] binary;
+  private boolean recording;
+  private boolean ended;
+
+  public ObserveRecorder(String path, int numPartitions, SchemaList schema) throws IOException {
+    this.path = path;
+    this.out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(path), 1 << 16), 1 << 16));
+    this.numPartitions = numPartitions;
+    this.schema = schema;
+  }
+
+  /**
+   * Starts recording rows of an OBSERVE result set. The header is written for the first result
+   * set. Result sets of restarted OBSERVE queries are appended if they have the same columns,
+   * otherwise the recording ends.
+   */
+  public void start(ResultSetMetaData metadata) throws IOException, SQLException {
+    int columnCount = metadata.getColumnCount();
+    String[] newLabels = new String[columnCount];
+    String[] newTypeNames = new String[columnCount];
+    int[] newTypes = new int[columnCount];
+    for (int i = 0; i < columnCount; i++) {
+      newLabels[i] = metadata.getColumnLabel(i + 1);
+      newTypeNames[i] = metadata.getColumnTypeName(i + 1);
+      newTypes[i] = metadata.getColumnType(i + 1);
+    }
+
+    if (ended) {
+      return;
+    }
+    if (labels != null) {
+      recording = Arrays.equals(labels, newLabels) && Arrays.equals(typeNames, newTypeNames)
+          && Arrays.equals(types, newTypes);
+      if (!recording) {
+        logger.warn(String.format("Columns of OBSERVE changed, recording %s ends before the "
+            + "change", path));
+        ended = true;
+      }
+      return;
+    }
+
+    labels = newLabels;
+    typeNames = newTypeNames;
+    types = newTypes;
+    binary = new boolean[columnCount];
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(numPartitions);
+    byte[] schemaBytes = schema.toByteArray();
+    out.writeInt(schemaBytes.length);
+    out.write(schemaBytes);
+    out.writeInt(columnCount);
+    for (int i = 0; i < columnCount; i++) {
+      binary[i] = isBinary(types[i]);
+      out.writeUTF(labels[i]);
+      out.writeUTF(typeNames[i]);
+      out.writeInt(types[i]);
+      out.writeBoolean(binary[i]);
+    }
+    recording = true;
+  }
+
+  private static boolean isBinary(int sqlType) {
+    switch (sqlType) {
+      case Types.BIT:
+      case Types.BINARY:
+      case Types.VARBINARY:
+      case Types.LONGVARBINARY:
+      case Types.BLOB:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Writes the current row of the result set, unless the recording has ended.
+   */
+  public void write(ResultSet rs) throws IOException, SQLException {
+    if (!recording) {
+      return;
+    }
+
+    out.writeByte(1);
+    for (int i = 0; i < binary.length; i++) {
+      byte[] value;
+      if (binary[i]) {
+        value = rs.getBytes(i + 1);
+      } else {
+        String s = rs.getString(i + 1);
+        value = s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+      }
+
+      if (value == null) {
+        out.writeInt(-1);
+      } else {
+        out.writeInt(value.length);
+        out.write(value);
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (labels != null) {
+      out.writeByte(0);
+    }
+    out.close();
+  }
+}
@@ -0,0 +1,372 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.SchemaList;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Replays an OBSERVE result stream recorded by {@link ObserveRecorder}. The stream is exposed as a
+ * {@link ResultSet} that supports the accessors used by {@link SingleStoreConnection#observe}, so
+ * recorded data goes through the same decoding path as rows read from SingleStore. Its
+ * {@link ResultSetMetaData} describes the recorded columns, so the raw row decoder and a new
+ * recording work during replay too.
+ */
+public class ObserveReplay {
+
+  private final String path;
+  private final int numPartitions;
+  private final SchemaList schema;
+  private final String[] names;
+  private final String[] typeNames;
+  private final int[] types;
+  private final boolean[] binary;
+  private final int version;
+
+  public ObserveReplay(String path) throws IOException {
+    this.path = path;
+    try (DataInputStream in = openStream(path)) {
+      if (in.readInt() != ObserveRecorder.MAGIC) {
+        throw new IOException(String.format("%s is not an OBSERVE recording", path));
+      }
+      version = in.readInt();
+      if (version < 1 || version > ObserveRecorder.VERSION) {
+        throw new IOException(
+            String.format("Unsupported version %d of OBSERVE recording %s", version, path));
+      }
+
+      numPartitions = in.readInt();
+      byte[] schemaBytes = new byte[in.readInt()];
+      in.readFully(schemaBytes);
+      schema = SchemaList.parseFrom(schemaBytes);
+
+      int columnCount = in.readInt();
+      names = new String[columnCount];
+      typeNames = new String[columnCount];
+      types = new int[columnCount];
+      binary = new boolean[columnCount];
+      for (int i = 0; i < columnCount; i++) {
+        names[i] = in.readUTF();
+        typeNames[i] = in.readUTF();
+        types[i] = version >= 2 ? in.readInt() : -1;
+        binary[i] = in.readBoolean();
+        if (types[i] == -1) {
+          // Columns that are not text are read with JDBC accessors by the raw row decoder
+          types[i] = binary[i] ? Types.VARBINARY : Types.OTHER;
+        }
+      }
+    }
+  }
+
+  private static DataInputStream openStream(String path) throws IOException {
+    return new DataInputStream(new BufferedInputStream(
+        new GZIPInputStream(new FileInputStream(path), 1 << 16), 1 << 16));
+  }
+
+  public int numPartitions() {
+    return numPartitions;
+  }
+
+  public SchemaList schema() {
+    return schema;
+  }
+
+  /**
+   * Opens a new result set that replays the recording from the offsets of the state, the same way
+   * OBSERVE resumes from them. Events of a partition up to and including its stored offset are
+   * skipped, partitions without an offset are replayed from the beginning.
+   *
+   * @param state state with offsets to resume from
+   */
+  public ResultSet resultSet(State state) throws IOException {
+    if (state.numPartitions() != numPartitions) {
+      throw new IOException(String.format(
+          "State has %d partitions, but OBSERVE recording %s has %d", state.numPartitions(), path,
+          numPartitions));
+    }
+
+    DataInputStream in = openStream(path);
+    try {
+      // Skip the header
+      in.readInt();
+      in.readInt();
+      in.readInt();
+      in.skipBytes(in.readInt());
+      int columnCount = in.readInt();
+      for (int i = 0; i < columnCount; i++) {
+        in.readUTF();
+        in.readUTF();
+        if (version >= 2) {
+          in.readInt();
+        }
+        in.readBoolean();
+      }
+    } catch (IOException e) {
+      in.close();
+      throw e;
+    }
+
+    return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+        new Class<?>[]{ResultSet.class}, new Handler(in, state));
+  }
+
+  private class Handler implements InvocationHandler {
+
+    private final DataInputStream in;
+    private final Map<String, Integer> indexes = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    private final byte[][] row = new byte[names.length][];
+    private final int partitionIndex;
+    private final int offsetIndex;
+    // Offsets to seek to, null for partitions that are replayed or were already sought
+    private final String[] seekOffsets;
+    private int seeking;
+    private boolean wasNull;
+    private boolean closed;
+
+    Handler(DataInputStream in, State state) throws IOException {
+      this.in = in;
+      for (int i = names.length - 1; i >= 0; i--) {
+        indexes.put(names[i], i + 1);
+      }
+
+      try {
+        partitionIndex = findColumn("PartitionId") - 1;
+        offsetIndex = findColumn("Offset") - 1;
+      } catch (SQLException e) {
+        in.close();
+        throw new IOException(String.format("%s is not an OBSERVE recording", path), e);
+      }
+      seekOffsets = new String[numPartitions];
+      for (int i = 0; i < numPartitions; i++) {
+        seekOffsets[i] = state.getOffset(i);
+        if (seekOffsets[i] != null) {
+          seeking++;
+        }
+      }
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      switch (method.getName()) {
+        case "next":
+          return next();
+        case "close":
+          if (!closed) {
+            closed = true;
+            in.close();
+          }
+          return null;
+        case "isClosed":
+          return closed;
+        case "findColumn":
+          return findColumn((String) args[0]);
+        case "wasNull":
+          return wasNull;
+        case "getStatement":
+          return null;
+        case "getMetaData":
+          return metadata();
+        case "setFetchSize":
+          return null;
+        case "getFetchSize":
+          return 0;
+        case "getString":
+        case "getBytes":
+        case "getObject":
+        case "getBoolean":
+        case "getShort":
+        case "getInt":
+        case "getLong":
+        case "getFloat":
+        case "getDouble":
+        case "getTimestamp":
+          int index = args[0] instanceof String ? findColumn((String) args[0]) : (int) args[0];
+          return getValue(method.getName(), index);
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        case "toString":
+          return String.format("ObserveReplay(%s)", path);
+        default:
+          throw new SQLFeatureNotSupportedException(
+              String.format("ResultSet.%s is not supported by OBSERVE replay", method.getName()));
+      }
+    }
+
+    private boolean next() throws IOException, SQLException {
+      while (readRow()) {
+        if (seeking == 0) {
+          return true;
+        }
+
+        int partition = Integer.parseInt(
+            new String(row[partitionIndex], StandardCharsets.UTF_8));
+        String seekOffset = seekOffsets[partition];
+        if (seekOffset == null) {
+          return true;
+        }
+        if (seekOffset.equalsIgnoreCase(SingleStoreConnection.bytesToHex(row[offsetIndex]))) {
+          // Events after this one are replayed
+          seekOffsets[partition] = null;
+          seeking--;
+        }
+      }
+
+      if (seeking > 0) {
+        // OBSERVE fails the same way for offsets it doesn't have
+        throw new SQLException(String.format(
+            "The requested Offset is not in OBSERVE recording %s for %d partitions", path,
+            seeking));
+      }
+      return false;
+    }
+
+    private boolean readRow() throws IOException {
+      if (closed) {
+        return false;
+      }
+
+      int marker;
+      try {
+        marker = in.readByte();
+      } catch (EOFException e) {
+        // The recording was not closed properly
+        marker = 0;
+      }
+      if (marker == 0) {
+        return false;
+      }
+
+      for (int i = 0; i < row.length; i++) {
+        int length = in.readInt();
+        if (length < 0) {
+          row[i] = null;
+        } else {
+          row[i] = new byte[length];
+          in.readFully(row[i]);
+        }
+      }
+
+      return true;
+    }
+
+    private int findColumn(String name) throws SQLException {
+      Integer index = indexes.get(name);
+      if (index == null) {
+        throw new SQLException(String.format("Unknown column '%s'", name));
+      }
+
+      return index;
+    }
+
+    private Object getValue(String accessor, int index) throws SQLException {
+      byte[] value = row[index - 1];
+      wasNull = value == null;
+      if (value == null) {
+        return nullValue(accessor);
+      }
+      if (accessor.equals("getBytes") || accessor.equals("getObject") && binary[index - 1]) {
+        return value;
+      }
+
+      String s = new String(value, StandardCharsets.UTF_8);
+      if (isDate(typeNames[index - 1]) && s.startsWith("0000-00-00")) {
+        // The driver reads zero dates as NULL
+        wasNull = true;
+        return nullValue(accessor);
+      }
+      try {
+        switch (accessor) {
+          case "getBoolean":
+            return !s.equals("0") && !s.equalsIgnoreCase("false");
+          case "getShort":
+            return Short.parseShort(s);
+          case "getInt":
+            return Integer.parseInt(s);
+          case "getLong":
+            return Long.parseLong(s);
+          case "getFloat":
+            return Float.parseFloat(s);
+          case "getDouble":
+            return Double.parseDouble(s);
+          case "getTimestamp":
+            return SingleStoreConnection.parseTimestamp(s);
+          default:
+            return s;
+        }
+      } catch (IllegalArgumentException e) {
+        throw new SQLException(
+            String.format("Failed to decode value '%s' of column '%s'", s, names[index - 1]), e);
+      }
+    }
+
+    private Object nullValue(String accessor) {
+      switch (accessor) {
+        case "getBoolean":
+          return false;
+        case "getShort":
+          return (short) 0;
+        case "getInt":
+          return 0;
+        case "getLong":
+          return 0L;
+        case "getFloat":
+          return 0f;
+        case "getDouble":
+          return 0d;
+        default:
+          return null;
+      }
+    }
+  }
+
+  /**
+   * Returns metadata of the recorded columns. Only the accessors used by the connector are
+   * supported.
+   */
+  private ResultSetMetaData metadata() {
+    return (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+        new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+          switch (method.getName()) {
+            case "getColumnCount":
+              return names.length;
+            case "getColumnLabel":
+            case "getColumnName":
+              return names[(int) args[0] - 1];
+            case "getColumnTypeName":
+              return typeNames[(int) args[0] - 1];
+            case "getColumnType":
+              return types[(int) args[0] - 1];
+            case "hashCode":
+              return System.identityHashCode(proxy);
+            case "equals":
+              return proxy == args[0];
+            case "toString":
+              return String.format("ObserveReplay(%s).metadata", path);
+            default:
+              throw new SQLFeatureNotSupportedException(String.format(
+                  "ResultSetMetaData.%s is not supported by OBSERVE replay", method.getName()));
+          }
+        });
+  }
+
+  private static boolean isDate(String typeName) {
+    return typeName.equals("DATE") || typeName.startsWith("DATETIME")
+        || typeName.startsWith("TIMESTAMP");
+  }
+}
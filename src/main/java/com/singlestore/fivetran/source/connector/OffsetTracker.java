@@ -0,0 +1,63 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks offsets of a change stream the same way as syncs store them in their state: only between
+ * transactions, so OBSERVE resumed from the tracked offsets starts at a transaction boundary.
+ */
+public class OffsetTracker {
+
+  private final State state;
+  private final Set<Integer> openTransactions = new HashSet<>();
+
+  /**
+   * @param state offsets the stream starts from, copied
+   */
+  public OffsetTracker(State state) {
+    this.state = state.copy();
+  }
+
+  public void advance(ChangeEvent event) {
+    Integer partition = event.partition();
+    switch (event.operation()) {
+      case ChangeEvent.BEGIN_TRANSACTION:
+        openTransactions.add(partition);
+        break;
+      case ChangeEvent.COMMIT_TRANSACTION:
+        openTransactions.remove(partition);
+        state.setOffset(partition, event.offset());
+        break;
+      case ChangeEvent.COMMIT_SNAPSHOT:
+        state.setOffset(partition, event.offset());
+        break;
+      case ChangeEvent.INSERT:
+      case ChangeEvent.UPDATE:
+      case ChangeEvent.DELETE:
+        if (!openTransactions.contains(partition)) {
+          state.setOffset(partition, event.offset());
+        }
+        break;
+      default:
+    }
+  }
+
+  /**
+   * Returns the tracked offsets. The state is updated by {@link #advance}.
+   */
+  public State state() {
+    return state;
+  }
+
+  public boolean inTransaction() {
+    return !openTransactions.isEmpty();
+  }
+
+  /**
+   * Forgets open transactions. Called when OBSERVE is restarted, their events are received again.
+   */
+  public void clearTransactions() {
+    openTransactions.clear();
+  }
+}
@@ -0,0 +1,278 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the rate at which syncs read rows from OBSERVE, so large snapshots don't compete with
+ * the production workload of the cluster. Every sync may have its own rows/sec and bytes/sec
+ * limits, and all syncs of one cluster share the cluster limits. In adaptive mode, the number of
+ * queries running on the cluster is checked periodically, and all limits of the cluster are
+ * halved while it is above the threshold and restored gradually once it drops. OBSERVE queries of
+ * syncs are not counted.
+ */
+public class RateLimiter {
+
+  private static final Logger logger = LoggerFactory.getLogger(RateLimiter.class);
+
+  public static final long UNLIMITED = 0;
+  public static final int NOT_ADAPTIVE = 0;
+
+  private static final long LOAD_CHECK_INTERVAL_MILLIS = 10_000;
+  // Limits are never scaled below this fraction, so syncs keep making progress
+  private static final double MIN_SCALE = 0.05;
+  private static final double BACKOFF_FACTOR = 0.5;
+  private static final double RECOVERY_FACTOR = 1.25;
+  // OBSERVE queries of syncs run for the whole sync and are not part of the workload
+  static final String RUNNING_QUERIES_SQL = "SELECT COUNT(*) "
+      + "FROM information_schema.MV_PROCESSLIST "
+      + "WHERE COMMAND = 'Query' AND (INFO IS NULL OR INFO NOT LIKE 'OBSERVE %')";
+
+  private final long clusterRowsPerSecond;
+  private final long clusterBytesPerSecond;
+  private final int maxRunningQueries;
+  // Connections of load checks count towards the connection limit of the cluster
+  private final SyncScheduler scheduler;
+  private final ConcurrentHashMap<String, Cluster> clusters = new ConcurrentHashMap<>();
+  private ScheduledExecutorService loadMonitor;
+
+  /**
+   * @param clusterRowsPerSecond  maximum number of rows per second read by all syncs of one
+   *                              cluster
+   * @param clusterBytesPerSecond maximum number of bytes per second read by all syncs of one
+   *                              cluster
+   * @param maxRunningQueries     number of queries running on the cluster above which limits are
+   *                              scaled down, {@link #NOT_ADAPTIVE} to disable the adaptive
+   *                              mode
+   */
+  public RateLimiter(long clusterRowsPerSecond, long clusterBytesPerSecond,
+      int maxRunningQueries) {
+    this(clusterRowsPerSecond, clusterBytesPerSecond, maxRunningQueries,
+        SyncScheduler.unlimited());
+  }
+
+  /**
+   * @param scheduler scheduler whose connection limits apply to load checks, a check is skipped
+   *                  if no connection to the cluster is left
+   */
+  public RateLimiter(long clusterRowsPerSecond, long clusterBytesPerSecond,
+      int maxRunningQueries, SyncScheduler scheduler) {
+    this.clusterRowsPerSecond = clusterRowsPerSecond;
+    this.clusterBytesPerSecond = clusterBytesPerSecond;
+    this.maxRunningQueries = maxRunningQueries;
+    this.scheduler = scheduler;
+  }
+
+  public static RateLimiter unlimited() {
+    return new RateLimiter(UNLIMITED, UNLIMITED, NOT_ADAPTIVE);
+  }
+
+  private class Cluster {
+
+    final TokenBucket rows;
+    final TokenBucket bytes;
+    // Configurations of running syncs of the cluster, the latest one is used to check its load
+    final List<SingleStoreConfiguration> activeSyncs = new ArrayList<>();
+    volatile double scale = 1.0;
+
+    Cluster() {
+      this.rows = clusterRowsPerSecond == UNLIMITED ? null
+          : new TokenBucket(clusterRowsPerSecond);
+      this.bytes = clusterBytesPerSecond == UNLIMITED ? null
+          : new TokenBucket(clusterBytesPerSecond);
+    }
+
+    /**
+     * Returns the configuration of the latest running sync, or null if no sync is running.
+     */
+    synchronized SingleStoreConfiguration conf() {
+      return activeSyncs.isEmpty() ? null : activeSyncs.get(activeSyncs.size() - 1);
+    }
+
+    void checkLoad() {
+      SingleStoreConfiguration conf = conf();
+      if (conf == null) {
+        return;
+      }
+
+      int running;
+      try (SyncScheduler.Permit connection = scheduler.tryAcquireConnection(conf)) {
+        if (connection == null) {
+          logger.debug(String.format("No connection to the cluster %s:%d is left, its load is "
+              + "checked later", conf.host(), conf.port()));
+          return;
+        }
+        running = countRunningQueries(conf);
+      } catch (Exception e) {
+        logger.warn(String.format("Failed to check the load of the cluster %s:%d", conf.host(),
+            conf.port()), e);
+        return;
+      }
+
+      double previous = scale;
+      if (running > maxRunningQueries) {
+        scale = Math.max(MIN_SCALE, previous * BACKOFF_FACTOR);
+      } else {
+        scale = Math.min(1.0, previous * RECOVERY_FACTOR);
+      }
+      if (scale != previous) {
+        logger.info(String.format("%d queries are running on the cluster %s:%d, syncs are limited "
+            + "to %.0f%% of their rate", running, conf.host(), conf.port(), scale * 100));
+      }
+    }
+  }
+
+  private static int countRunningQueries(SingleStoreConfiguration conf) throws Exception {
+    try (SingleStoreConnection conn = new SingleStoreConnection(conf);
+        Statement stmt = conn.getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(RUNNING_QUERIES_SQL)) {
+      rs.next();
+      return rs.getInt(1);
+    }
+  }
+
+  /**
+   * Limits of one sync. Must be closed when the sync is done.
+   */
+  public class Limit implements AutoCloseable {
+
+    private final Cluster cluster;
+    private final SingleStoreConfiguration conf;
+    private final List<TokenBucket> rowBuckets = new ArrayList<>();
+    private final List<TokenBucket> byteBuckets = new ArrayList<>();
+    private long throttledNanos;
+
+    private Limit(Cluster cluster, SingleStoreConfiguration conf) {
+      this.cluster = cluster;
+      this.conf = conf;
+      if (conf.rateLimitRowsPerSecond() != UNLIMITED) {
+        rowBuckets.add(new TokenBucket(conf.rateLimitRowsPerSecond()));
+      }
+      if (conf.rateLimitBytesPerSecond() != UNLIMITED) {
+        byteBuckets.add(new TokenBucket(conf.rateLimitBytesPerSecond()));
+      }
+      if (cluster.rows != null) {
+        rowBuckets.add(cluster.rows);
+      }
+      if (cluster.bytes != null) {
+        byteBuckets.add(cluster.bytes);
+      }
+    }
+
+    /**
+     * Returns false if rows of the sync are read at full speed.
+     */
+    public boolean isLimited() {
+      return !rowBuckets.isEmpty() || !byteBuckets.isEmpty();
+    }
+
+    /**
+     * Waits until the row fits into the limits. The size of a row is the serialized size of its
+     * values.
+     *
+     * @param permit permit of the sync that holds a work slot, the slot is given to other syncs
+     *               while waiting, null if work slots are not used
+     */
+    public void acquire(Map<String, ValueType> row, SyncScheduler.Permit permit,
+        BooleanSupplier stopped) throws InterruptedException {
+      double scale = cluster.scale;
+      // Tokens are taken from all buckets at once, they refill while the sync waits for the
+      // bucket with the largest debt
+      long waitNanos = 0;
+      for (TokenBucket bucket : rowBuckets) {
+        bucket.setScale(scale);
+        waitNanos = Math.max(waitNanos, bucket.reserve(1));
+      }
+      if (!byteBuckets.isEmpty()) {
+        long size = 0;
+        for (ValueType value : row.values()) {
+          size += value.getSerializedSize();
+        }
+        for (TokenBucket bucket : byteBuckets) {
+          bucket.setScale(scale);
+          waitNanos = Math.max(waitNanos, bucket.reserve(size));
+        }
+      }
+      if (waitNanos == 0) {
+        return;
+      }
+
+      throttledNanos += waitNanos;
+      if (permit != null) {
+        permit.endWork();
+      }
+      try {
+        TokenBucket.await(waitNanos, stopped);
+      } finally {
+        if (permit != null) {
+          permit.beginWork();
+        }
+      }
+    }
+
+    public long throttledMillis() {
+      return throttledNanos / 1_000_000;
+    }
+
+    @Override
+    public void close() {
+      synchronized (cluster) {
+        cluster.activeSyncs.remove(conf);
+      }
+    }
+  }
+
+  /**
+   * Creates limits of a sync with the given configuration.
+   */
+  public Limit newLimit(SingleStoreConfiguration conf) {
+    Cluster cluster = clusters.computeIfAbsent(String.format("%s:%d", conf.host(), conf.port()),
+        key -> {
+          Cluster c = new Cluster();
+          if (maxRunningQueries != NOT_ADAPTIVE) {
+            getLoadMonitor().scheduleWithFixedDelay(c::checkLoad, LOAD_CHECK_INTERVAL_MILLIS,
+                LOAD_CHECK_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+          }
+          return c;
+        });
+    synchronized (cluster) {
+      // The load is checked with the credentials of the latest sync, so changed credentials or
+      // a dropped database of an earlier sync don't break the check
+      cluster.activeSyncs.add(conf);
+    }
+
+    return new Limit(cluster, conf);
+  }
+
+  /**
+   * Returns the configuration used to check the load of the cluster, null if no sync of the
+   * cluster is running.
+   */
+  SingleStoreConfiguration loadCheckConfiguration(String host, int port) {
+    Cluster cluster = clusters.get(String.format("%s:%d", host, port));
+    return cluster == null ? null : cluster.conf();
+  }
+
+  private synchronized ScheduledExecutorService getLoadMonitor() {
+    if (loadMonitor == null) {
+      loadMonitor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "cluster-load-monitor");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+
+    return loadMonitor;
+  }
+}
@@ -0,0 +1,279 @@
+package com.singlestore.fivetran.source.connector;
+
+import com.google.protobuf.Timestamp;
+import com.google.protobuf.UnsafeByteOperations;
+import fivetran_sdk.v2.Column;
+import fivetran_sdk.v2.ValueType;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decodes rows of OBSERVE with the accessors that convert column bytes of the driver's row buffer
+ * directly, without the intermediate objects of the generic path. Nulls are detected with
+ * {@link ResultSet#wasNull} instead of decoding every value with {@link ResultSet#getObject},
+ * text is passed to protobuf as UTF-8 bytes instead of a {@link String}, and dates and datetimes
+ * are parsed into protobuf timestamps without {@link java.sql.Timestamp} and
+ * {@link java.time.LocalDateTime}. Columns and values the decoder doesn't handle are read by the
+ * JDBC path, and so is a column after the driver rejects its accessor.
+ */
+public class RawRowDecoder {
+
+  private static final Logger logger = LoggerFactory.getLogger(RawRowDecoder.class);
+
+  private static final ValueType NULL = ValueType.newBuilder()
+      .setNull(true)
+      .build();
+
+  @FunctionalInterface
+  public interface ValueReader {
+
+    ValueType read(ResultSet rs, int index, Column column) throws SQLException;
+  }
+
+  private enum Mode {
+    BOOLEAN,
+    SHORT,
+    INT,
+    LONG,
+    FLOAT,
+    DOUBLE,
+    DECIMAL,
+    NAIVE_DATE,
+    NAIVE_DATETIME,
+    STRING_BYTES,
+    JDBC
+  }
+
+  private final List<Column> columns;
+  private final int[] indexes;
+  private final Mode[] modes;
+  private final ValueReader fallback;
+
+  /**
+   * @param metadata metadata of the result set
+   * @param columns  columns of decoded rows
+   * @param indexes  indexes of the columns in the result set
+   * @param fallback JDBC path that reads values the decoder doesn't handle
+   */
+  public RawRowDecoder(ResultSetMetaData metadata, List<Column> columns, int[] indexes,
+      ValueReader fallback) throws SQLException {
+    this.columns = columns;
+    this.indexes = indexes;
+    this.modes = new Mode[columns.size()];
+    this.fallback = fallback;
+    for (int i = 0; i < columns.size(); i++) {
+      modes[i] = mode(columns.get(i), metadata.getColumnType(indexes[i]));
+    }
+  }
+
+  private static Mode mode(Column column, int sqlType) {
+    switch (column.getType()) {
+      case BOOLEAN:
+        return Mode.BOOLEAN;
+      case SHORT:
+        return Mode.SHORT;
+      case INT:
+        return Mode.INT;
+      case LONG:
+        return Mode.LONG;
+      case FLOAT:
+        return Mode.FLOAT;
+      case DOUBLE:
+        return Mode.DOUBLE;
+      case DECIMAL:
+        return Mode.DECIMAL;
+      case NAIVE_DATE:
+        return Mode.NAIVE_DATE;
+      case NAIVE_DATETIME:
+        return Mode.NAIVE_DATETIME;
+      case STRING:
+        // Only text columns can be read as bytes, the connection always uses UTF-8
+        switch (sqlType) {
+          case Types.CHAR:
+          case Types.VARCHAR:
+          case Types.LONGVARCHAR:
+            return Mode.STRING_BYTES;
+          default:
+            return Mode.JDBC;
+        }
+      default:
+        return Mode.JDBC;
+    }
+  }
+
+  public Map<String, ValueType> decode(ResultSet rs) throws SQLException {
+    Map<String, ValueType> res = new HashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      ValueType value;
+      try {
+        value = decode(rs, i);
+      } catch (SQLException e) {
+        logger.info(String.format("Column %s can't be decoded directly, reading it with JDBC "
+            + "accessors", columns.get(i).getName()), e);
+        modes[i] = Mode.JDBC;
+        value = decode(rs, i);
+      }
+      res.put(columns.get(i).getName(), value);
+    }
+
+    return res;
+  }
+
+  private ValueType decode(ResultSet rs, int i) throws SQLException {
+    int index = indexes[i];
+    switch (modes[i]) {
+      case BOOLEAN: {
+        boolean value = rs.getBoolean(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setBool(value).build();
+      }
+      case SHORT: {
+        short value = rs.getShort(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setShort(value).build();
+      }
+      case INT: {
+        int value = rs.getInt(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setInt(value).build();
+      }
+      case LONG: {
+        long value = rs.getLong(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setLong(value).build();
+      }
+      case FLOAT: {
+        float value = rs.getFloat(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setFloat(value).build();
+      }
+      case DOUBLE: {
+        double value = rs.getDouble(index);
+        return rs.wasNull() ? NULL : ValueType.newBuilder().setDouble(value).build();
+      }
+      case DECIMAL: {
+        String value = rs.getString(index);
+        return value == null ? NULL : ValueType.newBuilder().setDecimal(value).build();
+      }
+      case NAIVE_DATE:
+      case NAIVE_DATETIME: {
+        String value = rs.getString(index);
+        if (value == null) {
+          return NULL;
+        }
+        Timestamp timestamp = parseNaiveDatetime(value);
+        if (timestamp == null) {
+          // TIME, YEAR and zero dates
+          return fallback.read(rs, index, columns.get(i));
+        }
+        return modes[i] == Mode.NAIVE_DATE
+            ? ValueType.newBuilder().setNaiveDate(timestamp).build()
+            : ValueType.newBuilder().setNaiveDatetime(timestamp).build();
+      }
+      case STRING_BYTES: {
+        byte[] value = rs.getBytes(index);
+        if (value == null) {
+          return NULL;
+        }
+        try {
+          // The array is a copy owned by the caller, so it is not copied again
+          return ValueType.newBuilder().setStringBytes(UnsafeByteOperations.unsafeWrap(value))
+              .build();
+        } catch (IllegalArgumentException e) {
+          // Protobuf rejects invalid UTF-8, JDBC replaces malformed bytes like the generic path
+          return fallback.read(rs, index, columns.get(i));
+        }
+      }
+      case JDBC:
+      default:
+        return fallback.read(rs, index, columns.get(i));
+    }
+  }
+
+  /**
+   * Parses a value in the form YYYY-MM-DD or YYYY-MM-DD HH:MM:SS[.fraction] as a naive datetime.
+   *
+   * @return the timestamp, or null if the value has another form or is a zero date
+   */
+  static Timestamp parseNaiveDatetime(String value) {
+    int length = value.length();
+    if (length != 10 && (length < 19 || length == 20 || length > 29)) {
+      return null;
+    }
+    if (value.charAt(4) != '-' || value.charAt(7) != '-') {
+      return null;
+    }
+    int year = digits(value, 0, 4);
+    int month = digits(value, 5, 2);
+    int day = digits(value, 8, 2);
+    if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+      return null;
+    }
+
+    int hour = 0;
+    int minute = 0;
+    int second = 0;
+    int nanos = 0;
+    if (length > 10) {
+      if (value.charAt(10) != ' ' || value.charAt(13) != ':' || value.charAt(16) != ':') {
+        return null;
+      }
+      hour = digits(value, 11, 2);
+      minute = digits(value, 14, 2);
+      second = digits(value, 17, 2);
+      if (hour < 0 || hour > 23 || minute < 0 || minute > 59 || second < 0 || second > 59) {
+        return null;
+      }
+      if (length > 19) {
+        if (value.charAt(19) != '.') {
+          return null;
+        }
+        int fractionDigits = length - 20;
+        nanos = digits(value, 20, fractionDigits);
+        if (nanos < 0) {
+          return null;
+        }
+        for (int i = fractionDigits; i < 9; i++) {
+          nanos *= 10;
+        }
+      }
+    }
+
+    return Timestamp.newBuilder()
+        .setSeconds(epochDay(year, month, day) * 86_400 + hour * 3_600 + minute * 60 + second)
+        .setNanos(nanos)
+        .build();
+  }
+
+  /**
+   * Returns the number of decimal digits at the position, or -1 if some character is not a digit.
+   */
+  private static int digits(String value, int start, int count) {
+    int res = 0;
+    for (int i = start; i < start + count; i++) {
+      char c = value.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      res = res * 10 + (c - '0');
+    }
+
+    return res;
+  }
+
+  /**
+   * Returns the number of days from 1970-01-01 to the date of the proleptic Gregorian calendar.
+   */
+  static long epochDay(int year, int month, int day) {
+    // Years start in March, so the leap day is the last day of a year
+    long y = month <= 2 ? year - 1 : year;
+    long era = Math.floorDiv(y, 400);
+    long yearOfEra = y - era * 400;
+    long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+    long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+    return era * 146_097 + dayOfEra - 719_468;
+  }
+}
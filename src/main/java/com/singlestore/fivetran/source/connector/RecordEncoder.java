@@ -0,0 +1,139 @@
+package com.singlestore.fivetran.source.connector;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import fivetran_sdk.v2.Record;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.UpdateResponse;
+import fivetran_sdk.v2.ValueType;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Serializes record responses of one sync directly to protobuf wire format, without building
+ * {@link Record} and {@link UpdateResponse} messages. Fields that are the same for every record
+ * of the sync, schema and table names and column names, are encoded once. The output is identical
+ * to the serialization of the equivalent {@link UpdateResponse}. Used by the thread that sends
+ * records of the sync.
+ */
+public class RecordEncoder {
+
+  // Field numbers of entries of protobuf map fields
+  private static final int MAP_KEY_FIELD_NUMBER = 1;
+  private static final int MAP_VALUE_FIELD_NUMBER = 2;
+  private static final int MAP_VALUE_TAG_SIZE = CodedOutputStream.computeTagSize(
+      MAP_VALUE_FIELD_NUMBER);
+
+  /**
+   * Serialized {@link UpdateResponse} with a record. Passed to the response stream of a sync,
+   * where {@link UpdateResponseMarshaller} writes it as is.
+   */
+  public static class Encoded {
+
+    private final byte[] bytes;
+
+    private Encoded(byte[] bytes) {
+      this.bytes = bytes;
+    }
+
+    public byte[] bytes() {
+      return bytes;
+    }
+
+    public int size() {
+      return bytes.length;
+    }
+  }
+
+  // Schema and table name fields of the record
+  private final byte[] prefix;
+  // Key fields of map entries, by column name
+  private final Map<String, byte[]> keys = new HashMap<>();
+
+  public RecordEncoder(String schemaName, String tableName) {
+    try {
+      int size = CodedOutputStream.computeStringSize(Record.SCHEMA_NAME_FIELD_NUMBER, schemaName);
+      if (!tableName.isEmpty()) {
+        size += CodedOutputStream.computeStringSize(Record.TABLE_NAME_FIELD_NUMBER, tableName);
+      }
+      prefix = new byte[size];
+      CodedOutputStream out = CodedOutputStream.newInstance(prefix);
+      out.writeString(Record.SCHEMA_NAME_FIELD_NUMBER, schemaName);
+      if (!tableName.isEmpty()) {
+        out.writeString(Record.TABLE_NAME_FIELD_NUMBER, tableName);
+      }
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Returns the serialized response of a record with the given type and row. Columns are written
+   * in the iteration order of the row, as {@link Record.Builder#putAllData} does.
+   */
+  public Encoded encode(RecordType type, Map<String, ValueType> row) {
+    int recordSize = prefix.length;
+    if (type.getNumber() != 0) {
+      recordSize += CodedOutputStream.computeEnumSize(Record.TYPE_FIELD_NUMBER, type.getNumber());
+    }
+    int dataTagSize = CodedOutputStream.computeTagSize(Record.DATA_FIELD_NUMBER);
+    for (Map.Entry<String, ValueType> column : row.entrySet()) {
+      // Sizes of messages are memoized, so values are not measured again when they are written
+      int entrySize = entrySize(key(column.getKey()), column.getValue());
+      recordSize += dataTagSize + CodedOutputStream.computeUInt32SizeNoTag(entrySize) + entrySize;
+    }
+
+    byte[] bytes = new byte[CodedOutputStream.computeTagSize(UpdateResponse.RECORD_FIELD_NUMBER)
+        + CodedOutputStream.computeUInt32SizeNoTag(recordSize) + recordSize];
+    try {
+      CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+      out.writeTag(UpdateResponse.RECORD_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+      out.writeUInt32NoTag(recordSize);
+      out.writeRawBytes(prefix);
+      if (type.getNumber() != 0) {
+        out.writeEnum(Record.TYPE_FIELD_NUMBER, type.getNumber());
+      }
+      for (Map.Entry<String, ValueType> column : row.entrySet()) {
+        byte[] key = key(column.getKey());
+        ValueType value = column.getValue();
+        out.writeTag(Record.DATA_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+        out.writeUInt32NoTag(entrySize(key, value));
+        out.writeRawBytes(key);
+        // Map entries always contain the value, even if it is empty
+        out.writeMessage(MAP_VALUE_FIELD_NUMBER, value);
+      }
+      out.checkNoSpaceLeft();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    return new Encoded(bytes);
+  }
+
+  private static int entrySize(byte[] key, ValueType value) {
+    int valueSize = value.getSerializedSize();
+    return key.length + MAP_VALUE_TAG_SIZE + CodedOutputStream.computeUInt32SizeNoTag(valueSize)
+        + valueSize;
+  }
+
+  private byte[] key(String column) {
+    byte[] key = keys.get(column);
+    if (key == null) {
+      // Map entries always contain the key, even if it is empty
+      key = new byte[CodedOutputStream.computeStringSize(MAP_KEY_FIELD_NUMBER, column)];
+      try {
+        CodedOutputStream out = CodedOutputStream.newInstance(key);
+        out.writeString(MAP_KEY_FIELD_NUMBER, column);
+        out.checkNoSpaceLeft();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      keys.put(column, key);
+    }
+
+    return key;
+  }
+}
@@ -0,0 +1,110 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reduces UPDATE records to the columns that actually changed. The cache keeps a 64-bit hash of
+ * every column of recently sent rows, keyed by primary key, so large values are not retained.
+ * When an update of a cached row is sent, only key columns and columns whose hash differs are
+ * kept. Updates of rows that are not cached are sent with the full row image. The least recently
+ * used row is evicted when the cache exceeds its capacity.
+ */
+public class RowImageCache {
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private final List<String> keyColumns;
+  private final int capacity;
+  private final LinkedHashMap<List<ValueType>, Map<String, Long>> images =
+      new LinkedHashMap<>(16, 0.75f, true);
+  private long hits;
+  private long misses;
+
+  /**
+   * @param keyColumns names of columns that identify a row
+   * @param capacity   maximum number of rows kept in the cache
+   */
+  public RowImageCache(List<String> keyColumns, int capacity) {
+    this.keyColumns = keyColumns;
+    this.capacity = capacity;
+  }
+
+  /**
+   * Updates the cache with a record that is about to be sent and returns the row to send in it.
+   */
+  public Map<String, ValueType> apply(RecordType type, Map<String, ValueType> row) {
+    List<ValueType> key = new ArrayList<>(keyColumns.size());
+    for (String column : keyColumns) {
+      key.add(row.get(column));
+    }
+
+    if (type == RecordType.DELETE) {
+      images.remove(key);
+      return row;
+    }
+
+    Map<String, Long> hashes = new HashMap<>();
+    for (Map.Entry<String, ValueType> column : row.entrySet()) {
+      hashes.put(column.getKey(), hash(column.getValue()));
+    }
+    Map<String, Long> previous = images.put(key, hashes);
+    if (images.size() > capacity) {
+      images.remove(images.keySet().iterator().next());
+    }
+
+    if (type != RecordType.UPDATE) {
+      return row;
+    }
+    if (previous == null) {
+      misses++;
+      return row;
+    }
+
+    hits++;
+    Map<String, ValueType> res = new LinkedHashMap<>();
+    for (Map.Entry<String, ValueType> column : row.entrySet()) {
+      String name = column.getKey();
+      if (keyColumns.contains(name) || !hashes.get(name).equals(previous.get(name))) {
+        res.put(name, column.getValue());
+      }
+    }
+
+    return res;
+  }
+
+  static long hash(ValueType value) {
+    long res = FNV_OFFSET_BASIS;
+    // The serialized form covers both the kind and the content of the value
+    for (byte b : value.toByteArray()) {
+      res ^= b & 0xff;
+      res *= FNV_PRIME;
+    }
+
+    return res;
+  }
+
+  public int size() {
+    return images.size();
+  }
+
+  /**
+   * Returns the number of updates sent with only changed columns.
+   */
+  public long hits() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of updates sent with the full row image.
+   */
+  public long misses() {
+    return misses;
+  }
+}
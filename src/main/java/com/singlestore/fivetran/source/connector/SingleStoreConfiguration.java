@@ -1,11 +1,15 @@
 package com.singlestore.fivetran.source.connector;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class SingleStoreConfiguration {
 
   private final String host;
   private final Integer port;
+  private final List<AggregatorBalancer.Endpoint> endpoints;
   private final String database;
   private final String table;
   private final String user;
@@ -13,10 +17,21 @@ public class SingleStoreConfiguration {
   private final String sslMode;
   private final String sslServerCert;
   private final String driverParameters;
+  private final Integer compactionBufferSize;
+  private final Integer updateCacheSize;
+  private final Integer warmCursorSpoolSize;
+  private final Long warmCursorSpoolBytes;
+  private final Long rateLimitRowsPerSecond;
+  private final Long rateLimitBytesPerSecond;
+  private final Boolean rawDecoder;
+  private final Integer snapshotChunkSize;
+  private final String observeCaptureFile;
+  private final String observeReplayFile;
 
   SingleStoreConfiguration(Map<String, String> conf) {
     this.host = conf.get("host");
     this.port = Integer.valueOf(conf.get("port"));
+    this.endpoints = parseEndpoints(host, port);
     this.database = conf.get("database");
     this.table = conf.get("table");
     this.user = conf.get("user");
@@ -24,6 +39,64 @@ public class SingleStoreConfiguration {
     this.sslMode = withDefault(conf.get("ssl.mode"), "disable");
     this.sslServerCert = formatServerCert(withDefaultNull(conf.get("ssl.server.cert")));
     this.driverParameters = withDefaultNull(conf.get("driver.parameters"));
+    this.compactionBufferSize = Integer.valueOf(
+        withDefault(conf.get("compaction.buffer.size"), "0"));
+    this.updateCacheSize = Integer.valueOf(withDefault(conf.get("update.cache.size"), "0"));
+    this.warmCursorSpoolSize = Integer.valueOf(
+        withDefault(conf.get("warm.cursor.spool.size"), "0"));
+    this.warmCursorSpoolBytes = Long.valueOf(
+        withDefault(conf.get("warm.cursor.spool.bytes"), String.valueOf(64 * 1024 * 1024)));
+    this.rateLimitRowsPerSecond = Long.valueOf(
+        withDefault(conf.get("rate.limit.rows.per.second"), "0"));
+    this.rateLimitBytesPerSecond = Long.valueOf(
+        withDefault(conf.get("rate.limit.bytes.per.second"), "0"));
+    this.rawDecoder = Boolean.valueOf(withDefault(conf.get("raw.decoder"), "false"));
+    this.snapshotChunkSize = Integer.valueOf(withDefault(conf.get("snapshot.chunk.size"), "0"));
+    this.observeCaptureFile = withDefaultNull(conf.get("observe.capture.file"));
+    this.observeReplayFile = withDefaultNull(conf.get("observe.replay.file"));
+  }
+
+  /**
+   * Parses a comma-separated list of aggregators. Every entry is a host with an optional port,
+   * IPv6 addresses must be enclosed in square brackets.
+   */
+  private static List<AggregatorBalancer.Endpoint> parseEndpoints(String hosts, int defaultPort) {
+    if (hosts == null) {
+      return Collections.emptyList();
+    }
+
+    List<AggregatorBalancer.Endpoint> res = new ArrayList<>();
+    for (String entry : hosts.split(",")) {
+      entry = entry.trim();
+      if (entry.isEmpty()) {
+        continue;
+      }
+
+      String host = entry;
+      int port = defaultPort;
+      int portSeparator = entry.lastIndexOf(':');
+      if (entry.startsWith("[")) {
+        int end = entry.indexOf(']');
+        if (end < 0) {
+          throw new IllegalArgumentException(String.format("Invalid host '%s'", entry));
+        }
+        host = entry.substring(1, end);
+        if (portSeparator > end) {
+          port = Integer.parseInt(entry.substring(portSeparator + 1).trim());
+        }
+      } else if (portSeparator >= 0) {
+        if (entry.indexOf(':') != portSeparator) {
+          // An IPv6 address without a port
+          host = entry;
+        } else {
+          host = entry.substring(0, portSeparator).trim();
+          port = Integer.parseInt(entry.substring(portSeparator + 1).trim());
+        }
+      }
+      res.add(new AggregatorBalancer.Endpoint(host, port));
+    }
+
+    return Collections.unmodifiableList(res);
   }
 
   private String formatServerCert(String cert) {
@@ -58,6 +131,13 @@ public class SingleStoreConfiguration {
     return port;
   }
 
+  /**
+   * Returns aggregators listed in the host configuration.
+   */
+  public List<AggregatorBalancer.Endpoint> endpoints() {
+    return endpoints;
+  }
+
   public String database() {
     return database;
   }
@@ -85,4 +165,69 @@ public class SingleStoreConfiguration {
   public String driverParameters() {
     return driverParameters;
   }
+
+  public Integer compactionBufferSize() {
+    return compactionBufferSize;
+  }
+
+  /**
+   * Returns the number of rows whose column hashes are cached to send only changed columns in
+   * UPDATE records, 0 if updates carry full rows.
+   */
+  public Integer updateCacheSize() {
+    return updateCacheSize;
+  }
+
+  /**
+   * Returns the maximum number of change events spooled by the OBSERVE cursor that keeps running
+   * between syncs, 0 if every sync starts a new OBSERVE.
+   */
+  public Integer warmCursorSpoolSize() {
+    return warmCursorSpoolSize;
+  }
+
+  /**
+   * Returns the maximum estimated number of bytes of rows spooled by the OBSERVE cursor that keeps
+   * running between syncs.
+   */
+  public Long warmCursorSpoolBytes() {
+    return warmCursorSpoolBytes;
+  }
+
+  /**
+   * Returns the maximum number of rows per second read by the sync, 0 if it is not limited.
+   */
+  public Long rateLimitRowsPerSecond() {
+    return rateLimitRowsPerSecond;
+  }
+
+  /**
+   * Returns the maximum number of bytes per second read by the sync, 0 if it is not limited.
+   */
+  public Long rateLimitBytesPerSecond() {
+    return rateLimitBytesPerSecond;
+  }
+
+  /**
+   * Returns true if rows of OBSERVE are decoded by {@link RawRowDecoder}.
+   */
+  public Boolean rawDecoder() {
+    return rawDecoder;
+  }
+
+  /**
+   * Returns the number of rows of every chunk of the initial snapshot read in the order of the
+   * primary key, 0 if the initial snapshot is taken by OBSERVE.
+   */
+  public Integer snapshotChunkSize() {
+    return snapshotChunkSize;
+  }
+
+  public String observeCaptureFile() {
+    return observeCaptureFile;
+  }
+
+  public String observeReplayFile() {
+    return observeReplayFile;
+  }
 }
@@ -1,6 +1,5 @@
 package com.singlestore.fivetran.source.connector;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.google.protobuf.ByteString;
 import fivetran_sdk.v2.Column;
 import fivetran_sdk.v2.DataType;
@@ -10,9 +9,11 @@ import fivetran_sdk.v2.Schema;
 import fivetran_sdk.v2.SchemaList;
 import fivetran_sdk.v2.Table;
 import fivetran_sdk.v2.ValueType;
+import java.math.BigDecimal;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -20,18 +21,29 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
+import jdk.jfr.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-public class SingleStoreConnection {
+public class SingleStoreConnection implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(SingleStoreConnection.class);
 
   SingleStoreConfiguration conf;
-  private Connection conn;
+  // Read by threads that cancel the running query
+  private volatile Connection conn;
   private VectorTypeProjectFormat vectorTypeProjectFormat;
 
   private enum VectorTypeProjectFormat {
@@ -39,10 +51,66 @@ public class SingleStoreConnection {
     BINARY
   }
 
+  private static final int CONNECTION_VALIDATION_SECONDS = 5;
+  // Error of a query that reads a table whose definition changed while the query ran
+  private static final int ER_TABLE_DEF_CHANGED = 1412;
+
+  // Maximum number of rows of one sync that are read but not yet consumed, if rows are decoded
+  // by the decode executor of the scheduler
+  private static final int MAX_ROWS_IN_DECODE = 4096;
+  // Number of rows of a snapshot chunk fetched from the server at once
+  private static final int CHUNK_FETCH_SIZE = 4096;
+  private static final EventType CURSOR_STALL =
+      EventType.getEventType(SyncEvents.CursorStall.class);
+
+  // Number of consecutive attempts to reconnect after OBSERVE loses its connection
+  private static final int RECONNECT_MAX_ATTEMPTS = 10;
+  private static final long RECONNECT_INITIAL_BACKOFF_MILLIS = 500;
+  private static final long RECONNECT_MAX_BACKOFF_MILLIS = 30_000;
+
+  int reconnectMaxAttempts = RECONNECT_MAX_ATTEMPTS;
+  long reconnectInitialBackoffMillis = RECONNECT_INITIAL_BACKOFF_MILLIS;
+  // Time without new rows after which observe returns
+  long observeIdleTimeoutMillis = TimedResultSet.DEFAULT_TIMEOUT_MILLIS;
+  // Limits of the rate at which OBSERVE reads rows, null if rows are read at full speed
+  RateLimiter.Limit rateLimit;
+
+  private SyncScheduler.Permit permit;
+  private SyncMetrics metrics = new SyncMetrics();
+  private ObserveReplay replay;
+  private AggregatorBalancer balancer = AggregatorBalancer.shared();
+  // Aggregator of the open connection
+  private AggregatorBalancer.Endpoint endpoint;
+  // Set when a running observe must return after the current row
+  private volatile boolean stopped;
+  // Set when the running query is cancelled, so its failure is expected
+  private volatile boolean cancelled;
+
   public SingleStoreConnection(SingleStoreConfiguration conf) {
     this.conf = conf;
   }
 
+  /**
+   * @param conf   connection configuration
+   * @param permit sync permit used to take a work slot for every row read by OBSERVE
+   */
+  public SingleStoreConnection(SingleStoreConfiguration conf, SyncScheduler.Permit permit) {
+    this.conf = conf;
+    this.permit = permit;
+  }
+
+  /**
+   * @param conf    connection configuration
+   * @param permit  sync permit used to take a work slot for every row read by OBSERVE
+   * @param metrics metrics of the sync that receive time spent waiting for and decoding rows
+   */
+  public SingleStoreConnection(SingleStoreConfiguration conf, SyncScheduler.Permit permit,
+      SyncMetrics metrics) {
+    this.conf = conf;
+    this.permit = permit;
+    this.metrics = metrics;
+  }
+
   public VectorTypeProjectFormat getVectorTypeProjectFormat() throws Exception {
     if (vectorTypeProjectFormat == null) {
       try (Statement stmt = getConnection().createStatement()) {
@@ -64,6 +132,11 @@ public class SingleStoreConnection {
 
   Connection getConnection() throws Exception {
     if (conn == null || conn.isClosed()) {
+      // A closed connection may have been closed on purpose or by an idle timeout, so the
+      // aggregator is not marked as failed. Lost connections are reported by dropConnection.
+      releaseEndpoint();
+      conn = null;
+
       Properties connectionProps = new Properties();
       connectionProps.put("user", conf.user());
       if (conf.password() != null) {
@@ -90,21 +163,159 @@ public class SingleStoreConnection {
         }
       }
 
-      String url = String.format("jdbc:singlestore://%s:%d/%s", conf.host(), conf.port(),
-          conf.database());
+      // Aggregators are tried one by one, starting from the least loaded healthy one
+      SQLException error = null;
+      for (AggregatorBalancer.Endpoint candidate : balancer.order(conf.endpoints())) {
+        String url = String.format("jdbc:singlestore://%s/%s",
+            candidate.host().contains(":") ? "[" + candidate.host() + "]:" + candidate.port()
+                : candidate, conf.database());
+        try {
+          conn = DriverManager.getConnection(url, connectionProps);
+        } catch (SQLException e) {
+          if (!isConnectionError(e)) {
+            // Errors such as wrong credentials are the same on every aggregator
+            throw e;
+          }
+          balancer.failed(candidate);
+          if (error == null) {
+            error = e;
+          } else {
+            error.addSuppressed(e);
+          }
+          if (conf.endpoints().size() > 1) {
+            logger.warn(String.format("Failed to connect to the aggregator %s", candidate), e);
+          }
+          continue;
+        }
 
-      conn = DriverManager.getConnection(url, connectionProps);
+        endpoint = candidate;
+        balancer.connected(candidate);
+        break;
+      }
+      if (conn == null) {
+        if (error != null) {
+          throw error;
+        }
+        throw new Exception("No aggregator hosts are configured");
+      }
     }
 
     return conn;
   }
 
+  /**
+   * Returns the recording configured by {@code observe.replay.file}, or null if the connection
+   * reads from SingleStore.
+   */
+  private ObserveReplay getReplay() throws Exception {
+    if (replay == null && conf.observeReplayFile() != null) {
+      replay = new ObserveReplay(conf.observeReplayFile());
+    }
+
+    return replay;
+  }
+
+  private static boolean isConnectionError(SQLException e) {
+    return e.getSQLState() != null && e.getSQLState().startsWith("08");
+  }
+
+  /**
+   * Returns true if the error is caused by the loss of the connection, rather than by the query.
+   */
+  private boolean isConnectionLost(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof SQLException && isConnectionError((SQLException) t)) {
+        return true;
+      }
+    }
+
+    try {
+      return conn != null && (conn.isClosed() || !conn.isValid(CONNECTION_VALIDATION_SECONDS));
+    } catch (SQLException validationException) {
+      return true;
+    }
+  }
+
+  /**
+   * Closes the lost connection and marks its aggregator as failed, so the next call of
+   * {@link #getConnection()} opens a new one, possibly to another aggregator.
+   */
+  private void dropConnection() {
+    if (conn != null) {
+      try {
+        conn.close();
+      } catch (SQLException e) {
+        logger.debug("Failed to close the lost connection", e);
+      }
+      conn = null;
+    }
+    if (endpoint != null) {
+      balancer.failed(endpoint);
+      releaseEndpoint();
+    }
+  }
+
+  private void releaseEndpoint() {
+    if (endpoint != null) {
+      balancer.released(endpoint);
+      endpoint = null;
+    }
+  }
+
+  @Override
+  public void close() throws SQLException {
+    try {
+      if (conn != null && !conn.isClosed()) {
+        conn.close();
+      }
+    } finally {
+      releaseEndpoint();
+    }
+  }
+
   private void putIfNotEmpty(Properties props, String key, String value) {
     if (key != null && !key.trim().isEmpty() && value != null && !value.trim().isEmpty()) {
       props.put(key.trim(), value.trim());
     }
   }
 
+  /**
+   * Asks a running {@link #observe} to return after the row that is being consumed, as if the
+   * stream ended. Can be called from any thread.
+   */
+  public void stop() {
+    stopped = true;
+  }
+
+  public boolean isStopped() {
+    return stopped;
+  }
+
+  /**
+   * Stops a running {@link #observe} right away by cancelling its query, without waiting for the
+   * next row. Used when nobody receives the rows anymore. Can be called from any thread.
+   */
+  public void cancel() {
+    cancelled = true;
+    stopped = true;
+    Connection c = conn;
+    if (c == null) {
+      return;
+    }
+
+    try {
+      if (!c.isClosed()) {
+        ((com.singlestore.jdbc.Connection) c).cancelCurrentQuery();
+      }
+    } catch (Exception e) {
+      logger.warn("Failed to cancel the running query", e);
+    }
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
+  }
+
   public void checkConnection() throws Exception {
     try (Statement stmt = getConnection().createStatement();) {
       stmt.execute("SELECT 1");
@@ -130,69 +341,134 @@ public class SingleStoreConnection {
     return String.format("'%s'", literal.replace("'", "''"));
   }
 
+  /**
+   * Returns the schema of the configured table.
+   */
   public SchemaList getSchema() throws Exception {
+    if (getReplay() != null) {
+      return getReplay().schema();
+    }
 
-    Connection conn = getConnection();
-    DatabaseMetaData metadata = conn.getMetaData();
-
-    Set<String> primaryKeyColumns = new HashSet<>();
-    try (ResultSet primaryKeysRS = metadata.getPrimaryKeys(conf.database(), null,
-        conf.table())) {
-      while (primaryKeysRS.next()) {
-        primaryKeyColumns.add(primaryKeysRS.getString("COLUMN_NAME"));
-      }
-    }
-
-    List<Column> columns = new ArrayList<>();
-    try (ResultSet columnsRS = metadata.getColumns(conf.database(), null,
-        conf.table(), null)) {
-      while (columnsRS.next()) {
-        Column.Builder c = Column.newBuilder()
-            .setName(columnsRS.getString("COLUMN_NAME"))
-            .setType(mapDataTypes(columnsRS.getString("TYPE_NAME")))
-            .setPrimaryKey(
-                primaryKeyColumns.contains(columnsRS.getString("COLUMN_NAME")));
-        if (c.getType() == DataType.DECIMAL) {
-          c.setParams(DataTypeParams.newBuilder().setDecimal(DecimalParams.newBuilder()
-              .setScale(columnsRS.getInt("DECIMAL_DIGITS"))
-              .setPrecision(columnsRS.getInt("COLUMN_SIZE")).build()));
-        }
-        if (c.getType() == DataType.STRING) {
-          String typeName = columnsRS.getString("TYPE_NAME");
-          if (typeName.equals("GEOGRAPHYPOINT") || typeName.equals("GEOGRAPHY")) {
-            c.setParams(DataTypeParams.newBuilder()
-                .setStringByteLength(Integer.MAX_VALUE)
-                .build());
-          } else {
-            c.setParams(DataTypeParams.newBuilder()
-                .setStringByteLength(columnsRS.getInt("CHAR_OCTET_LENGTH"))
-                .build());
-          }
-        }
+    return readSchema(conf.table());
+  }
+
+  /**
+   * Returns the schema of every table in the configured database. Columns and primary keys of all
+   * tables are read with two batched queries, so the time doesn't depend on the number of tables.
+   */
+  public SchemaList getDatabaseSchema() throws Exception {
+    return readSchema(null);
+  }
+
+  /**
+   * Reads columns and primary keys from information_schema.
+   *
+   * @param table name of the table to read, null to read all tables of the database
+   */
+  private SchemaList readSchema(String table) throws Exception {
+    String filter = String.format("TABLE_SCHEMA = %s", escapeString(conf.database()));
+    if (table != null) {
+      filter += String.format(" AND TABLE_NAME = %s", escapeString(table));
+    }
 
-        columns.add(c.build());
+    Map<String, Set<String>> primaryKeyColumns = new HashMap<>();
+    try (Statement stmt = getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(String.format(
+            "SELECT TABLE_NAME, COLUMN_NAME FROM information_schema.STATISTICS "
+                + "WHERE %s AND INDEX_NAME = 'PRIMARY'", filter))) {
+      while (rs.next()) {
+        primaryKeyColumns.computeIfAbsent(rs.getString("TABLE_NAME"), t -> new HashSet<>())
+            .add(rs.getString("COLUMN_NAME"));
       }
     }
 
-    // If table doesn't have PK - add an internal id instead
-    if (primaryKeyColumns.isEmpty()) {
-      Column.Builder internalId = Column.newBuilder()
-          .setName("InternalId")
-          .setType(DataType.BINARY)
-          .setPrimaryKey(true);
-      columns.add(internalId.build());
+    // A requested table is always returned, even if it has no columns
+    Map<String, List<Column>> tables = new LinkedHashMap<>();
+    if (table != null) {
+      tables.put(table, new ArrayList<>());
+    }
+    try (Statement stmt = getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(String.format(
+            "SELECT TABLE_NAME, COLUMN_NAME, COLUMN_TYPE, NUMERIC_PRECISION, NUMERIC_SCALE, "
+                + "CHARACTER_OCTET_LENGTH FROM information_schema.COLUMNS "
+                + "WHERE %s ORDER BY TABLE_NAME, ORDINAL_POSITION", filter))) {
+      while (rs.next()) {
+        String tableName = rs.getString("TABLE_NAME");
+        String columnName = rs.getString("COLUMN_NAME");
+        tables.computeIfAbsent(tableName, t -> new ArrayList<>())
+            .add(buildColumn(columnName,
+                getTypeName(rs.getString("COLUMN_TYPE")),
+                primaryKeyColumns.getOrDefault(tableName, Collections.emptySet())
+                    .contains(columnName),
+                rs.getInt("NUMERIC_PRECISION"),
+                rs.getInt("NUMERIC_SCALE"),
+                rs.getLong("CHARACTER_OCTET_LENGTH")));
+      }
+    }
+
+    Schema.Builder schema = Schema.newBuilder().setName(conf.database());
+    for (Map.Entry<String, List<Column>> entry : tables.entrySet()) {
+      List<Column> columns = entry.getValue();
+      // If table doesn't have PK - add an internal id instead
+      if (!primaryKeyColumns.containsKey(entry.getKey())) {
+        Column.Builder internalId = Column.newBuilder()
+            .setName("InternalId")
+            .setType(DataType.BINARY)
+            .setPrimaryKey(true);
+        columns.add(internalId.build());
+      }
+
+      schema.addTables(Table.newBuilder()
+          .setName(entry.getKey())
+          .addAllColumns(columns));
     }
 
     return SchemaList.newBuilder()
-        .addSchemas(
-            Schema.newBuilder()
-                .setName(conf.database())
-                .addTables(Table.newBuilder()
-                    .setName(conf.table())
-                    .addAllColumns(columns)))
+        .addSchemas(schema)
         .build();
   }
 
+  /**
+   * Derives the type name from COLUMN_TYPE the same way as the JDBC driver does for
+   * {@link DatabaseMetaData#getColumns}: the length or the list of values is removed and the
+   * result is upper-cased, for example {@code int(11) unsigned} becomes {@code INT UNSIGNED}.
+   */
+  static String getTypeName(String columnType) {
+    int open = columnType.indexOf('(');
+    int close = columnType.lastIndexOf(')');
+    if (open >= 0 && close > open) {
+      columnType = columnType.substring(0, open) + columnType.substring(close + 1);
+    }
+
+    return columnType.toUpperCase(Locale.ROOT);
+  }
+
+  private Column buildColumn(String name, String typeName, boolean primaryKey, int precision,
+      int scale, long octetLength) throws Exception {
+    Column.Builder c = Column.newBuilder()
+        .setName(name)
+        .setType(mapDataTypes(typeName))
+        .setPrimaryKey(primaryKey);
+    if (c.getType() == DataType.DECIMAL) {
+      c.setParams(DataTypeParams.newBuilder().setDecimal(DecimalParams.newBuilder()
+          .setScale(scale)
+          .setPrecision(precision).build()));
+    }
+    if (c.getType() == DataType.STRING) {
+      if (typeName.equals("GEOGRAPHYPOINT") || typeName.equals("GEOGRAPHY")) {
+        c.setParams(DataTypeParams.newBuilder()
+            .setStringByteLength(Integer.MAX_VALUE)
+            .build());
+      } else {
+        c.setParams(DataTypeParams.newBuilder()
+            .setStringByteLength((int) Math.min(octetLength, Integer.MAX_VALUE))
+            .build());
+      }
+    }
+
+    return c.build();
+  }
+
   private DataType mapDataTypes(String typeName) throws Exception {
     switch (typeName) {
       case "BOOLEAN":
@@ -252,6 +528,10 @@ public class SingleStoreConnection {
   }
 
   public Integer getNumPartitions() throws Exception {
+    if (getReplay() != null) {
+      return getReplay().numPartitions();
+    }
+
     try (Statement stmt = getConnection().createStatement();
         ResultSet rs = stmt.executeQuery(
             String.format(
@@ -267,15 +547,46 @@ public class SingleStoreConnection {
   }
 
 
+  /**
+   * Returns the estimated number of rows in every partition of the table, based on table
+   * statistics. Only master partitions are counted, so replicas don't inflate the estimate.
+   *
+   * @return map from partition to the estimated number of rows
+   */
+  public Map<Integer, Long> getRowEstimates() throws Exception {
+    Map<Integer, Long> res = new HashMap<>();
+    if (getReplay() != null) {
+      return res;
+    }
+
+    try (Statement stmt = getConnection().createStatement();
+        ResultSet rs = stmt.executeQuery(String.format(
+            "SELECT ORDINAL, SUM(ROWS) AS ROWS FROM information_schema.TABLE_STATISTICS "
+                + "WHERE DATABASE_NAME = %s AND TABLE_NAME = %s AND PARTITION_TYPE = 'Master' "
+                + "GROUP BY ORDINAL",
+            escapeString(conf.database()), escapeString(conf.table())))) {
+      while (rs.next()) {
+        res.put(rs.getInt("ORDINAL"), rs.getLong("ROWS"));
+      }
+    }
+
+    return res;
+  }
+
   @FunctionalInterface
   public interface ObserveConsumer {
 
     void accept(String operation, Integer partition, String offset, Map<String, ValueType> row)
-        throws JsonProcessingException;
+        throws Exception;
   }
 
-  public void observe(State state, Set<String> selectedColumns, ObserveConsumer consumer)
-      throws Exception {
+  /**
+   * Returns columns of the table that are selected for the sync.
+   *
+   * @param selectedColumns set of column names to select, null if all columns are selected
+   * @return list of selected columns
+   */
+  public List<Column> getColumns(Set<String> selectedColumns) throws Exception {
     List<Column> columns = getSchema()
         .getSchemas(0)
         .getTables(0)
@@ -286,35 +597,552 @@ public class SingleStoreConnection {
           .collect(Collectors.toList());
     }
 
+    return columns;
+  }
+
+  /**
+   * Streams change events of the table to the consumer. If the schema of the table changes while
+   * OBSERVE is running, columns are resolved again and OBSERVE is restarted from the offsets
+   * stored in the state, so streaming continues with the new schema. If the connection is lost,
+   * OBSERVE is restarted the same way on a new connection after an exponential backoff.
+   *
+   * @param state           state with offsets to resume from
+   * @param selectedColumns set of column names to select, null if all columns are selected
+   * @param consumer        callback that receives change events
+   */
+  public void observe(State state, Set<String> selectedColumns, ObserveConsumer consumer)
+      throws Exception {
+    List<Column> columns = getColumns(selectedColumns);
+    String captureFile = conf.observeCaptureFile();
+    // The recording is kept across restarts of OBSERVE, so it has every event that is received.
+    // Metadata is read before OBSERVE starts, as the connection is busy streaming its results.
+    try (ObserveRecorder recorder = captureFile == null ? null
+        : new ObserveRecorder(captureFile, getNumPartitions(), getSchema())) {
+      int reconnectAttempts = 0;
+      while (!stopped) {
+        // Attempts are counted only while no events are received, so a long sync may survive
+        // any number of separate connection losses
+        boolean[] received = {false};
+        try {
+          observe(state, columns, recorder, (operation, partition, offset, row) -> {
+            received[0] = true;
+            if (rateLimit != null && ChangeEvent.isRowChange(operation)) {
+              // OBSERVE doesn't read the next row until this one is consumed
+              rateLimit.acquire(row, permit, this::isStopped);
+            }
+            consumer.accept(operation, partition, offset, row);
+          });
+          return;
+        } catch (Exception e) {
+          if (cancelled) {
+            // The query failed because it was cancelled
+            logger.debug("OBSERVE was cancelled", e);
+            return;
+          }
+          if (stopped) {
+            // A stopped observe is never restarted
+            throw e;
+          }
+          if (received[0]) {
+            reconnectAttempts = 0;
+          }
+          if (getReplay() == null && isConnectionLost(e)
+              && reconnectAttempts < reconnectMaxAttempts) {
+            long backoffMillis = reconnectBackoffMillis(reconnectAttempts);
+            reconnectAttempts++;
+            logger.warn(String.format("Lost connection while running OBSERVE, reconnecting in "
+                + "%d ms (attempt %d of %d)", backoffMillis, reconnectAttempts,
+                reconnectMaxAttempts), e);
+            dropConnection();
+            Thread.sleep(backoffMillis);
+            continue;
+          }
+          if (!isSchemaChangeError(e)) {
+            throw e;
+          }
+
+          List<Column> newColumns;
+          try {
+            newColumns = getColumns(selectedColumns);
+          } catch (Exception schemaException) {
+            e.addSuppressed(schemaException);
+            throw e;
+          }
+          if (newColumns.equals(columns)) {
+            throw e;
+          }
+
+          logger.info(String.format("Schema of the table %s changed, restarting OBSERVE",
+              escapeTable(conf.database(), conf.table())), e);
+          columns = newColumns;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the time to wait before the next attempt to reconnect, doubled after every attempt.
+   */
+  private long reconnectBackoffMillis(int reconnectAttempts) {
+    return Math.min(RECONNECT_MAX_BACKOFF_MILLIS,
+        reconnectInitialBackoffMillis << Math.min(reconnectAttempts, 16));
+  }
+
+  private void observe(State state, List<Column> columns, ObserveRecorder recorder,
+      ObserveConsumer consumer) throws Exception {
     List<Column> pkColumns = columns
         .stream()
         .filter(Column::getPrimaryKey)
         .collect(Collectors.toList());
 
+    ObserveReplay replay = getReplay();
+    // Null resources are skipped by try-with-resources
+    try (
+        Statement stmt = replay == null ? getConnection().createStatement() : null;
+        TimedResultSet timedRS = TimedResultSet.from(replay == null
+            ? stmt.executeQuery(observeQuery(state.offsetsAsSQL()))
+            : replay.resultSet(state), observeIdleTimeoutMillis)
+    ) {
+      ResultSet rs = timedRS.getResultSet();
+      if (recorder != null) {
+        recorder.start(rs.getMetaData());
+      }
+      int typeIndex = rs.findColumn("Type");
+      int partitionIndex = rs.findColumn("PartitionId");
+      int offsetIndex = rs.findColumn("Offset");
+      int[] columnIndexes = getColumnIndexes(rs, columns);
+      int[] pkColumnIndexes = getColumnIndexes(rs, pkColumns);
+
+      ExecutorService decodeExecutor = permit == null ? null : permit.decodeExecutor();
+      if (decodeExecutor != null) {
+        DecodePipeline pipeline = new DecodePipeline(decodeExecutor, MAX_ROWS_IN_DECODE);
+        pipeline.run(() -> {
+          long start = System.nanoTime();
+          SyncEvents.CursorStall stall = beginStall();
+          if (stopped || !timedRS.next()) {
+            return null;
+          }
+          metrics.record(SyncMetrics.Stage.WAIT, start);
+          commitStall(stall);
+          if (recorder != null) {
+            recorder.write(rs);
+          }
+
+          String operation = rs.getString(typeIndex);
+          int partition = rs.getInt(partitionIndex);
+          String offset = bytesToHex(rs.getBytes(offsetIndex));
+          boolean delete = operation.equals(ChangeEvent.DELETE);
+          List<Column> rowColumns = delete ? pkColumns : columns;
+          Object[] raw = getRawRow(rs, rowColumns, delete ? pkColumnIndexes : columnIndexes);
+
+          ChangeEvent event = new ChangeEvent(operation, partition, offset, null);
+          return new DecodePipeline.RawEvent(event, () -> {
+            long decodeStart = System.nanoTime();
+            Map<String, ValueType> row = decodeRawRow(rowColumns, raw);
+            metrics.record(SyncMetrics.Stage.DECODE, decodeStart);
+            return row;
+          });
+        }, event -> {
+          permit.beginWork();
+          try {
+            consumer.accept(event.operation(), event.partition(), event.offset(), event.row());
+          } finally {
+            permit.endWork();
+          }
+        });
+        return;
+      }
+
+      RawRowDecoder rowDecoder = null;
+      RawRowDecoder pkRowDecoder = null;
+      if (conf.rawDecoder()) {
+        rowDecoder = new RawRowDecoder(rs.getMetaData(), columns, columnIndexes, this::getValue);
+        pkRowDecoder = new RawRowDecoder(rs.getMetaData(), pkColumns, pkColumnIndexes,
+            this::getValue);
+      }
+
+      long start = System.nanoTime();
+      SyncEvents.CursorStall stall = beginStall();
+      while (!stopped && timedRS.next()) {
+        start = metrics.record(SyncMetrics.Stage.WAIT, start);
+        commitStall(stall);
+        if (recorder != null) {
+          recorder.write(rs);
+        }
+
+        // Work slots are taken per row, so a sync waiting for the cursor never holds one
+        if (permit != null) {
+          permit.beginWork();
+        }
+        try {
+          String operation = rs.getString(typeIndex);
+          int partition = rs.getInt(partitionIndex);
+          String offset = bytesToHex(rs.getBytes(offsetIndex));
+
+          long decodeStart = System.nanoTime();
+          Map<String, ValueType> row;
+          if (rowDecoder != null) {
+            row = operation.equals(ChangeEvent.DELETE)
+                ? pkRowDecoder.decode(rs) : rowDecoder.decode(rs);
+          } else if (operation.equals(ChangeEvent.DELETE)) {
+            row = getRow(rs, pkColumns, pkColumnIndexes);
+          } else {
+            row = getRow(rs, columns, columnIndexes);
+          }
+          metrics.record(SyncMetrics.Stage.DECODE, decodeStart);
+
+          consumer.accept(operation, partition, offset, row);
+        } finally {
+          if (permit != null) {
+            permit.endWork();
+          }
+        }
+        start = System.nanoTime();
+        stall = beginStall();
+      }
+    }
+  }
+
+  /**
+   * Returns offsets at which OBSERVE takes the snapshot of every partition, the offsets of its
+   * BeginSnapshot events. OBSERVE is started without offsets and cancelled as soon as every
+   * partition has been seen, rows read before that are skipped without decoding. The first event
+   * of every partition is its BeginSnapshot, so rows of partitions that have been seen are
+   * skipped without reading their type. Resuming OBSERVE from these offsets streams the changes
+   * committed after the snapshot was taken.
+   *
+   * @param numPartitions number of partitions of the database
+   * @return state with the offsets
+   */
+  public State captureSnapshotOffsets(int numPartitions) throws Exception {
+    State res = new State(numPartitions);
+    int missing = numPartitions;
     try (
         Statement stmt = getConnection().createStatement();
-        TimedResultSet timedRS = TimedResultSet.from(stmt.executeQuery(String.format(
-            "OBSERVE * FROM %s BEGIN AT (%s)",
-            escapeTable(conf.database(), conf.table()),
-            state.offsetsAsSQL())))
+        TimedResultSet timedRS = TimedResultSet.from(
+            stmt.executeQuery(observeQuery(res.offsetsAsSQL())), observeIdleTimeoutMillis)
     ) {
       ResultSet rs = timedRS.getResultSet();
+      int typeIndex = rs.findColumn("Type");
+      int partitionIndex = rs.findColumn("PartitionId");
+      int offsetIndex = rs.findColumn("Offset");
+      while (!stopped && timedRS.next()) {
+        int partition = rs.getInt(partitionIndex);
+        if (res.getOffset(partition) != null) {
+          continue;
+        }
+
+        String operation = rs.getString(typeIndex);
+        if (!operation.equals(ChangeEvent.BEGIN_SNAPSHOT)) {
+          throw new Exception(String.format(
+              "OBSERVE started partition %d of the table %s with %s instead of %s", partition,
+              escapeTable(conf.database(), conf.table()), operation,
+              ChangeEvent.BEGIN_SNAPSHOT));
+        }
+        res.setOffset(partition, bytesToHex(rs.getBytes(offsetIndex)));
+        missing--;
+        if (missing == 0) {
+          // Closing the result set cancels the query, so the rest of the snapshot is not read
+          break;
+        }
+      }
+    }
+
+    if (missing > 0 && !stopped) {
+      throw new Exception(String.format(
+          "OBSERVE didn't begin the snapshot of %d partitions of the table %s", missing,
+          escapeTable(conf.database(), conf.table())));
+    }
+
+    return res;
+  }
+
+  @FunctionalInterface
+  public interface ChunkConsumer {
+
+    void accept(Map<String, ValueType> row, List<String> key) throws Exception;
+  }
+
+  /**
+   * Reads up to {@code limit} rows of the table that follow the given key in the order of the
+   * primary key. Key values are passed as text and bound with the type of their column, see
+   * {@link #isChunkKey}. If the connection is lost, the rest of the chunk is read on a new
+   * connection after an exponential backoff, starting after the last row passed to the consumer.
+   *
+   * @param columns    columns of read rows
+   * @param keyColumns primary key columns
+   * @param afterKey   values of key columns of the last row that was read, null to read from the
+   *                   first row
+   * @param limit      maximum number of rows to read
+   * @param consumer   callback that receives rows together with values of their key columns
+   * @return number of rows passed to the consumer
+   */
+  public int readChunk(List<Column> columns, List<Column> keyColumns, List<String> afterKey,
+      int limit, ChunkConsumer consumer) throws Exception {
+    int[] count = {0};
+    AtomicReference<List<String>> lastKey = new AtomicReference<>(afterKey);
+    int reconnectAttempts = 0;
+    while (true) {
+      int countBefore = count[0];
+      try {
+        readChunkOnce(columns, keyColumns, lastKey.get(), limit - count[0], (row, key) -> {
+          consumer.accept(row, key);
+          lastKey.set(key);
+          count[0]++;
+        });
+        return count[0];
+      } catch (Exception e) {
+        if (stopped) {
+          throw e;
+        }
+        // Attempts are counted only while no rows are read, the same way as for OBSERVE
+        if (count[0] > countBefore) {
+          reconnectAttempts = 0;
+        }
+        if (getReplay() != null || !isConnectionLost(e)
+            || reconnectAttempts >= reconnectMaxAttempts) {
+          throw e;
+        }
+
+        long backoffMillis = reconnectBackoffMillis(reconnectAttempts);
+        reconnectAttempts++;
+        logger.warn(String.format("Lost connection while reading a snapshot chunk, reconnecting "
+            + "in %d ms (attempt %d of %d)", backoffMillis, reconnectAttempts,
+            reconnectMaxAttempts), e);
+        dropConnection();
+        Thread.sleep(backoffMillis);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the column can be a key of chunked reads. Binary values don't survive the
+   * text form of keys, and text of floating-point values doesn't compare equal to the stored
+   * values.
+   */
+  public static boolean isChunkKey(Column column) {
+    switch (column.getType()) {
+      case BINARY:
+      case FLOAT:
+      case DOUBLE:
+        return false;
+      default:
+        return true;
+    }
+  }
 
-      while (timedRS.next()) {
-        String operation = rs.getString("Type");
-        int partition = rs.getInt("PartitionId");
-        String offset = bytesToHex(rs.getBytes("Offset"));
+  /**
+   * Returns true if values of the column are compared as exact numbers. A number bound as text is
+   * compared as DOUBLE, which can't tell apart BIGINT or DECIMAL values beyond 2^53.
+   */
+  private static boolean isExactNumber(Column column) {
+    switch (column.getType()) {
+      case BOOLEAN:
+      case SHORT:
+      case INT:
+      case LONG:
+      case DECIMAL:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  private int readChunkOnce(List<Column> columns, List<Column> keyColumns, List<String> afterKey,
+      int limit, ChunkConsumer consumer) throws Exception {
+    StringBuilder query = new StringBuilder(String.format("SELECT * FROM %s",
+        escapeTable(conf.database(), conf.table())));
+    List<Column> paramColumns = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    if (afterKey != null) {
+      // (k1 > ?) OR (k1 = ? AND k2 > ?) OR ...
+      List<String> conditions = new ArrayList<>();
+      for (int i = 0; i < keyColumns.size(); i++) {
+        List<String> terms = new ArrayList<>();
+        for (int j = 0; j < i; j++) {
+          terms.add(escapeIdentifier(keyColumns.get(j).getName()) + " = ?");
+          paramColumns.add(keyColumns.get(j));
+          params.add(afterKey.get(j));
+        }
+        terms.add(escapeIdentifier(keyColumns.get(i).getName()) + " > ?");
+        paramColumns.add(keyColumns.get(i));
+        params.add(afterKey.get(i));
+        conditions.add("(" + String.join(" AND ", terms) + ")");
+      }
+      query.append(" WHERE ").append(String.join(" OR ", conditions));
+    }
+    query.append(" ORDER BY ").append(keyColumns
+        .stream()
+        .map(column -> escapeIdentifier(column.getName()))
+        .collect(Collectors.joining(", ")));
+    query.append(" LIMIT ").append(limit);
 
-        if (operation.equals("Delete")) {
-          consumer.accept(operation, partition, offset, getRow(rs, pkColumns));
+    int count = 0;
+    try (PreparedStatement stmt = getConnection().prepareStatement(query.toString())) {
+      for (int i = 0; i < params.size(); i++) {
+        if (isExactNumber(paramColumns.get(i))) {
+          stmt.setBigDecimal(i + 1, new BigDecimal(params.get(i)));
         } else {
-          consumer.accept(operation, partition, offset, getRow(rs, columns));
+          stmt.setString(i + 1, params.get(i));
+        }
+      }
+      stmt.setFetchSize(CHUNK_FETCH_SIZE);
+      try (ResultSet rs = stmt.executeQuery()) {
+        int[] columnIndexes = getColumnIndexes(rs, columns);
+        int[] keyIndexes = getColumnIndexes(rs, keyColumns);
+        RawRowDecoder rowDecoder = conf.rawDecoder()
+            ? new RawRowDecoder(rs.getMetaData(), columns, columnIndexes, this::getValue) : null;
+        long start = System.nanoTime();
+        while (!stopped && rs.next()) {
+          metrics.record(SyncMetrics.Stage.WAIT, start);
+          if (permit != null) {
+            permit.beginWork();
+          }
+          try {
+            long decodeStart = System.nanoTime();
+            Map<String, ValueType> row = rowDecoder != null
+                ? rowDecoder.decode(rs) : getRow(rs, columns, columnIndexes);
+            List<String> key = new ArrayList<>(keyIndexes.length);
+            for (int i = 0; i < keyIndexes.length; i++) {
+              // Numbers are stored in a form that is parsed back into the same value
+              key.add(isExactNumber(keyColumns.get(i))
+                  ? rs.getBigDecimal(keyIndexes[i]).toPlainString()
+                  : rs.getString(keyIndexes[i]));
+            }
+            metrics.record(SyncMetrics.Stage.DECODE, decodeStart);
+            if (rateLimit != null) {
+              rateLimit.acquire(row, permit, this::isStopped);
+            }
+
+            consumer.accept(row, key);
+          } finally {
+            if (permit != null) {
+              permit.endWork();
+            }
+          }
+          count++;
+          start = System.nanoTime();
+        }
+      }
+    } catch (SQLException e) {
+      if (cancelled) {
+        // The query failed because it was cancelled
+        logger.debug("Reading of a snapshot chunk was cancelled", e);
+        return count;
+      }
+      throw e;
+    }
+
+    return count;
+  }
+
+  /**
+   * Begins a cursor stall event, or returns null if no recording receives them, so no event is
+   * allocated for every row.
+   */
+  private static SyncEvents.CursorStall beginStall() {
+    if (!CURSOR_STALL.isEnabled()) {
+      return null;
+    }
+    SyncEvents.CursorStall stall = new SyncEvents.CursorStall();
+    stall.begin();
+    return stall;
+  }
+
+  private void commitStall(SyncEvents.CursorStall stall) {
+    if (stall == null) {
+      return;
+    }
+    stall.end();
+    if (stall.shouldCommit()) {
+      stall.table = conf.table();
+      stall.commit();
+    }
+  }
+
+  private String observeQuery(String offsetsSQL) {
+    return String.format("OBSERVE * FROM %s BEGIN AT (%s)",
+        escapeTable(conf.database(), conf.table()), offsetsSQL);
+  }
+
+  /**
+   * Returns true if the error means that the table doesn't match the schema OBSERVE was started
+   * with, because the table was altered while OBSERVE ran or before its result set was read.
+   */
+  static boolean isSchemaChangeError(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t instanceof SQLException
+          && ((SQLException) t).getErrorCode() == ER_TABLE_DEF_CHANGED) {
+        return true;
+      }
+      if (t.getMessage() == null) {
+        continue;
+      }
+
+      String message = t.getMessage().toLowerCase(Locale.ROOT);
+      if ((message.contains("schema") || message.contains("table definition"))
+          && (message.contains("chang") || message.contains("alter"))) {
+        return true;
+      }
+      // A column of the schema is missing from the result set
+      if (message.contains("unknown column") || message.contains("no such column")) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  public static boolean isStaleOffsetError(Throwable e) {
+    for (Throwable t = e; t != null; t = t.getCause()) {
+      if (t.getMessage() != null && t.getMessage().contains("The requested Offset is too stale")) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Returns partitions whose offsets are too stale to resume OBSERVE from. Each partition with an
+   * offset is probed by a separate OBSERVE query that resumes only this partition; the query is
+   * cancelled as soon as the first event is received.
+   *
+   * @param state state with offsets to check
+   * @return list of stale partitions
+   */
+  public List<Integer> getStalePartitions(State state) throws Exception {
+    List<Integer> stalePartitions = new ArrayList<>();
+    if (getReplay() != null) {
+      // Recordings don't expire
+      return stalePartitions;
+    }
+
+    for (int partition = 0; partition < state.numPartitions(); partition++) {
+      if (state.getOffset(partition) == null) {
+        continue;
+      }
+
+      State probe = new State(state.numPartitions());
+      probe.setOffset(partition, state.getOffset(partition));
+      try (
+          Statement stmt = getConnection().createStatement();
+          TimedResultSet timedRS = TimedResultSet.from(
+              stmt.executeQuery(observeQuery(probe.offsetsAsSQL())))
+      ) {
+        timedRS.next();
+      } catch (Exception e) {
+        if (!isStaleOffsetError(e)) {
+          throw e;
         }
+        stalePartitions.add(partition);
       }
     }
+
+    return stalePartitions;
   }
 
-  private String bytesToHex(byte[] bytes) {
+  static String bytesToHex(byte[] bytes) {
     char[] res = new char[bytes.length * 2];
 
     int j = 0;
@@ -326,18 +1154,168 @@ public class SingleStoreConnection {
     return new String(res);
   }
 
-  private Map<String, ValueType> getRow(ResultSet rs, List<Column> columns)
+  private int[] getColumnIndexes(ResultSet rs, List<Column> columns) throws SQLException {
+    int[] res = new int[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      res[i] = rs.findColumn(columns.get(i).getName());
+    }
+
+    return res;
+  }
+
+  Map<String, ValueType> getRow(ResultSet rs, List<Column> columns, int[] indexes)
       throws SQLException {
     Map<String, ValueType> res = new HashMap<>();
-    for (Column column : columns) {
-      res.put(column.getName(), getValue(rs, column));
+    for (int i = 0; i < columns.size(); i++) {
+      res.put(columns.get(i).getName(), getValue(rs, indexes[i], columns.get(i)));
+    }
+
+    return res;
+  }
+
+  /**
+   * Copies values of the current row without decoding them, so they can be decoded by another
+   * thread with {@link #decodeRawRow}. Binary columns are copied as bytes, other columns as text.
+   */
+  private Object[] getRawRow(ResultSet rs, List<Column> columns, int[] indexes)
+      throws SQLException {
+    Object[] res = new Object[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).getType() == DataType.BINARY) {
+        res[i] = rs.getBytes(indexes[i]);
+      } else {
+        res[i] = rs.getString(indexes[i]);
+      }
+    }
+
+    return res;
+  }
+
+  private Map<String, ValueType> decodeRawRow(List<Column> columns, Object[] raw) {
+    Map<String, ValueType> res = new HashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      res.put(columns.get(i).getName(), decodeRawValue(columns.get(i), raw[i]));
     }
 
     return res;
   }
 
-  private ValueType getValue(ResultSet rs, Column column) throws SQLException {
-    if (rs.getObject(column.getName()) == null) {
+  /**
+   * Decodes a value copied by {@link #getRawRow}. The result is the same as the one of
+   * {@link #getValue} for the original row.
+   */
+  static ValueType decodeRawValue(Column column, Object raw) {
+    if (raw == null) {
+      return ValueType.newBuilder()
+          .setNull(true)
+          .build();
+    }
+    if (column.getType() == DataType.BINARY) {
+      return ValueType.newBuilder()
+          .setBinary(ByteString.copyFrom((byte[]) raw))
+          .build();
+    }
+
+    String value = (String) raw;
+    switch (column.getType()) {
+      case BOOLEAN:
+        return ValueType.newBuilder()
+            .setBool(!value.equals("0") && !value.equalsIgnoreCase("false"))
+            .build();
+      case SHORT:
+        return ValueType.newBuilder()
+            .setShort(Short.parseShort(value))
+            .build();
+      case INT:
+        return ValueType.newBuilder()
+            .setInt(Integer.parseInt(value))
+            .build();
+      case LONG:
+        return ValueType.newBuilder()
+            .setLong(Long.parseLong(value))
+            .build();
+      case FLOAT:
+        return ValueType.newBuilder()
+            .setFloat(Float.parseFloat(value))
+            .build();
+      case DOUBLE:
+        return ValueType.newBuilder()
+            .setDouble(Double.parseDouble(value))
+            .build();
+      case DECIMAL:
+        return ValueType.newBuilder()
+            .setDecimal(value)
+            .build();
+      case NAIVE_DATE:
+      case NAIVE_DATETIME: {
+        Timestamp timestamp = parseTimestamp(value);
+        if (timestamp == null) {
+          // Zero dates are read as NULL
+          return ValueType.newBuilder()
+              .setNull(true)
+              .build();
+        }
+        ValueType.Builder builder = ValueType.newBuilder();
+        if (column.getType() == DataType.NAIVE_DATE) {
+          builder.setNaiveDate(convertTimestamps(timestamp));
+        } else {
+          builder.setNaiveDatetime(convertTimestamps(timestamp));
+        }
+        return builder.build();
+      }
+      case JSON:
+        return ValueType.newBuilder()
+            .setJson(value)
+            .build();
+      case STRING:
+      default:
+        return ValueType.newBuilder()
+            .setString(value)
+            .build();
+    }
+  }
+
+  /**
+   * Parses the text of a DATE, YEAR, TIME, DATETIME or TIMESTAMP value the same way as
+   * {@link ResultSet#getTimestamp} does. TIME values are offsets from 1970-01-01, so negative ones
+   * and ones of 24 hours or more fall on other days.
+   *
+   * @return the timestamp, or null for zero dates, which the driver reads as NULL
+   */
+  static Timestamp parseTimestamp(String value) {
+    if (value.startsWith("0000-00-00")) {
+      return null;
+    }
+    if (value.indexOf(':') < 0) {
+      if (value.length() == 4) {
+        // YEAR
+        return Timestamp.valueOf(value + "-01-01 00:00:00");
+      }
+      // DATE
+      return Timestamp.valueOf(value + " 00:00:00");
+    }
+    if (value.indexOf('-', 1) < 0) {
+      return parseTime(value);
+    }
+
+    return Timestamp.valueOf(value);
+  }
+
+  private static Timestamp parseTime(String value) {
+    boolean negative = value.startsWith("-");
+    String[] parts = value.substring(negative ? 1 : 0).split(":");
+    if (parts.length != 3) {
+      throw new IllegalArgumentException(String.format("Invalid TIME value '%s'", value));
+    }
+
+    long nanos = (Long.parseLong(parts[0]) * 3600 + Long.parseLong(parts[1]) * 60)
+        * 1_000_000_000L + new BigDecimal(parts[2]).movePointRight(9).longValueExact();
+    LocalDateTime epoch = LocalDateTime.of(1970, 1, 1, 0, 0);
+    return Timestamp.valueOf(negative ? epoch.minusNanos(nanos) : epoch.plusNanos(nanos));
+  }
+
+  ValueType getValue(ResultSet rs, int index, Column column) throws SQLException {
+    if (rs.getObject(index) == null) {
       return ValueType.newBuilder()
           .setNull(true)
           .build();
@@ -346,57 +1324,57 @@ public class SingleStoreConnection {
     switch (column.getType()) {
       case BOOLEAN:
         return ValueType.newBuilder()
-            .setBool(rs.getBoolean(column.getName()))
+            .setBool(rs.getBoolean(index))
             .build();
       case SHORT:
         return ValueType.newBuilder()
-            .setShort(rs.getShort(column.getName()))
+            .setShort(rs.getShort(index))
             .build();
       case INT:
         return ValueType.newBuilder()
-            .setInt(rs.getInt(column.getName()))
+            .setInt(rs.getInt(index))
             .build();
       case LONG:
         return ValueType.newBuilder()
-            .setLong(rs.getLong(column.getName()))
+            .setLong(rs.getLong(index))
             .build();
       case FLOAT:
         return ValueType.newBuilder()
-            .setFloat(rs.getFloat(column.getName()))
+            .setFloat(rs.getFloat(index))
             .build();
       case DOUBLE:
         return ValueType.newBuilder()
-            .setDouble(rs.getDouble(column.getName()))
+            .setDouble(rs.getDouble(index))
             .build();
       case DECIMAL:
         return ValueType.newBuilder()
-            .setDecimal(rs.getString(column.getName()))
+            .setDecimal(rs.getString(index))
             .build();
       case NAIVE_DATE:
         return ValueType.newBuilder()
-            .setNaiveDate(convertTimestamps(rs.getTimestamp(column.getName())))
+            .setNaiveDate(convertTimestamps(rs.getTimestamp(index)))
             .build();
       case NAIVE_DATETIME:
         return ValueType.newBuilder()
-            .setNaiveDatetime(convertTimestamps(rs.getTimestamp(column.getName())))
+            .setNaiveDatetime(convertTimestamps(rs.getTimestamp(index)))
             .build();
       case BINARY:
         return ValueType.newBuilder()
-            .setBinary(ByteString.copyFrom(rs.getBytes(column.getName())))
+            .setBinary(ByteString.copyFrom(rs.getBytes(index)))
             .build();
       case JSON:
         return ValueType.newBuilder()
-            .setJson(rs.getString(column.getName()))
+            .setJson(rs.getString(index))
             .build();
       case STRING:
       default:
         return ValueType.newBuilder()
-            .setString(rs.getString(column.getName()))
+            .setString(rs.getString(index))
             .build();
     }
   }
 
-  private com.google.protobuf.Timestamp convertTimestamps(Timestamp t) {
+  private static com.google.protobuf.Timestamp convertTimestamps(Timestamp t) {
     LocalDateTime local = t.toLocalDateTime();
     long seconds = local.toEpochSecond(ZoneOffset.UTC);
     int nanos = local.getNano();
@@ -3,6 +3,8 @@ package com.singlestore.fivetran.source.connector;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
 import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -21,6 +23,56 @@ public class SingleStoreSourceConnector {
     Options options = new Options();
     Option portOption = new Option("p", "port", true, "port which server will listen");
     options.addOption(portOption);
+    Option maxSyncsOption = new Option(null, "max-concurrent-syncs", true,
+        "maximum number of syncs running at the same time (default: unlimited)");
+    options.addOption(maxSyncsOption);
+    Option maxConnectionsOption = new Option(null, "max-connections-per-cluster", true,
+        "maximum number of connections opened to one SingleStore cluster (default: unlimited)");
+    options.addOption(maxConnectionsOption);
+    Option workSlotsOption = new Option(null, "work-slots", true,
+        "maximum number of syncs reading and converting rows at the same time "
+            + "(default: number of available processors)");
+    options.addOption(workSlotsOption);
+    Option decodeThreadsOption = new Option(null, "decode-threads", true,
+        "number of threads that decode rows for all syncs, 0 to decode rows by the thread that "
+            + "reads them (default: 0)");
+    options.addOption(decodeThreadsOption);
+    Option memoryBudgetOption = new Option(null, "memory-budget-mb", true,
+        "maximum memory in megabytes used by all syncs for data not yet delivered to Fivetran "
+            + "(default: half of the maximum heap size)");
+    options.addOption(memoryBudgetOption);
+    Option shutdownGracePeriodOption = new Option(null, "shutdown-grace-period-seconds", true,
+        "time given to running syncs to send their final checkpoints on shutdown (default: 30)");
+    options.addOption(shutdownGracePeriodOption);
+    Option jfrDirectoryOption = new Option(null, "jfr-directory", true,
+        "directory that receives flight recordings started on demand "
+            + "(default: the temporary directory)");
+    options.addOption(jfrDirectoryOption);
+    Option jfrDurationOption = new Option(null, "jfr-duration-seconds", true,
+        "default duration of flight recordings started through JMX (default: 60)");
+    options.addOption(jfrDurationOption);
+    Option spoolDirectoryOption = new Option(null, "spool-dir", true,
+        "directory where syncs spool change events that Fivetran hasn't received yet, so OBSERVE "
+            + "is not held back by a slow consumer (default: events are not spooled)");
+    options.addOption(spoolDirectoryOption);
+    Option spoolSegmentOption = new Option(null, "spool-segment-mb", true,
+        "size in megabytes of spool segment files (default: 64)");
+    options.addOption(spoolSegmentOption);
+    Option spoolMaxOption = new Option(null, "spool-max-mb", true,
+        "maximum size in megabytes of unread spooled events of one sync (default: 4096)");
+    options.addOption(spoolMaxOption);
+    Option clusterRowsOption = new Option(null, "cluster-rows-per-second", true,
+        "maximum number of rows per second read by all syncs of one SingleStore cluster "
+            + "(default: unlimited)");
+    options.addOption(clusterRowsOption);
+    Option clusterBytesOption = new Option(null, "cluster-bytes-per-second", true,
+        "maximum number of bytes per second read by all syncs of one SingleStore cluster "
+            + "(default: unlimited)");
+    options.addOption(clusterBytesOption);
+    Option adaptiveOption = new Option(null, "adaptive-max-running-queries", true,
+        "number of queries running on a cluster above which rate limits of its syncs are "
+            + "scaled down (default: limits are not adapted)");
+    options.addOption(adaptiveOption);
 
     CommandLineParser parser = new DefaultParser();
     HelpFormatter formatter = new HelpFormatter();
@@ -46,14 +98,101 @@ public class SingleStoreSourceConnector {
       throw e;
     }
 
+    SyncScheduler scheduler;
+    MemoryBudget memoryBudget;
+    long shutdownGracePeriodMillis;
+    long jfrDurationSeconds;
+    DiskSpool.Settings spoolSettings = null;
+    RateLimiter rateLimiter;
+    try {
+      scheduler = new SyncScheduler(
+          parseIntOption(cmd, "max-concurrent-syncs", SyncScheduler.UNLIMITED),
+          parseIntOption(cmd, "max-connections-per-cluster", SyncScheduler.UNLIMITED),
+          parseIntOption(cmd, "work-slots", Runtime.getRuntime().availableProcessors()),
+          parseIntOption(cmd, "decode-threads", 0));
+      memoryBudget = new MemoryBudget(
+          parseLongOption(cmd, "memory-budget-mb",
+              Runtime.getRuntime().maxMemory() / 2 / 1024 / 1024) * 1024 * 1024);
+      shutdownGracePeriodMillis = parseLongOption(cmd, "shutdown-grace-period-seconds", 30)
+          * 1000;
+      jfrDurationSeconds = parseLongOption(cmd, "jfr-duration-seconds", 60);
+      if (cmd.hasOption("spool-dir")) {
+        spoolSettings = new DiskSpool.Settings(Paths.get(cmd.getOptionValue("spool-dir")),
+            parseLongOption(cmd, "spool-segment-mb", 64) * 1024 * 1024,
+            parseLongOption(cmd, "spool-max-mb", 4096) * 1024 * 1024);
+      }
+      rateLimiter = new RateLimiter(
+          parseLongOption(cmd, "cluster-rows-per-second", RateLimiter.UNLIMITED),
+          parseLongOption(cmd, "cluster-bytes-per-second", RateLimiter.UNLIMITED),
+          parseIntOption(cmd, "adaptive-max-running-queries", RateLimiter.NOT_ADAPTIVE),
+          scheduler);
+    } catch (NumberFormatException e) {
+      logger.warn("Failed to parse resource limit options", e);
+      formatter.printHelp("singlestore-fivetran-source-connector", options);
+
+      throw e;
+    }
+
     logger.info(
         String.format("Starting Source Connector gRPC server (version %s) which listens port %d",
             VersionProvider.getVersion(), port));
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl(
+        scheduler, memoryBudget, spoolSettings, rateLimiter);
     Server server = ServerBuilder.forPort(port)
-        .addService(new SingleStoreSourceConnectorServiceImpl()).build();
+        .addService(service).build();
+
+    FlightRecording flightRecording = new FlightRecording(
+        Paths.get(cmd.getOptionValue("jfr-directory", System.getProperty("java.io.tmpdir"))),
+        jfrDurationSeconds);
+    flightRecording.register();
 
     server.start();
+    Runtime.getRuntime().addShutdownHook(new Thread(
+        () -> shutdown(server, service, shutdownGracePeriodMillis), "shutdown"));
     logger.info("Source Connector gRPC server started");
     server.awaitTermination();
   }
+
+  /**
+   * Stops accepting new calls and lets running syncs send their final checkpoints. Calls that are
+   * still running after the grace period are cancelled.
+   */
+  private static void shutdown(Server server, SingleStoreSourceConnectorServiceImpl service,
+      long gracePeriodMillis) {
+    logger.info("Shutting down Source Connector gRPC server");
+    long deadline = System.nanoTime() + gracePeriodMillis * 1_000_000;
+    server.shutdown();
+    service.stopSyncs();
+    try {
+      if (!service.awaitSyncs(gracePeriodMillis)) {
+        logger.warn("Syncs didn't stop within the shutdown grace period");
+      }
+      long leftNanos = Math.max(0, deadline - System.nanoTime());
+      if (!server.awaitTermination(leftNanos, TimeUnit.NANOSECONDS)) {
+        server.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      server.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    logger.info("Source Connector gRPC server stopped");
+  }
+
+  private static int parseIntOption(CommandLine cmd, String name, int def) {
+    String value = cmd.getOptionValue(name);
+    if (value == null) {
+      return def;
+    }
+
+    return Integer.parseInt(value);
+  }
+
+  private static long parseLongOption(CommandLine cmd, String name, long def) {
+    String value = cmd.getOptionValue(name);
+    if (value == null) {
+      return def;
+    }
+
+    return Long.parseLong(value);
+  }
 }
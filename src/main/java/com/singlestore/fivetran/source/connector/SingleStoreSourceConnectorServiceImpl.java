@@ -1,6 +1,8 @@
 package com.singlestore.fivetran.source.connector;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import fivetran_sdk.v2.Checkpoint;
+import fivetran_sdk.v2.Column;
 import fivetran_sdk.v2.ConditionalFields;
 import fivetran_sdk.v2.ConfigurationFormRequest;
 import fivetran_sdk.v2.ConfigurationFormResponse;
@@ -22,14 +24,20 @@ import fivetran_sdk.v2.TestResponse;
 import fivetran_sdk.v2.TextField;
 import fivetran_sdk.v2.UpdateRequest;
 import fivetran_sdk.v2.UpdateResponse;
+import fivetran_sdk.v2.ValueType;
 import fivetran_sdk.v2.VisibilityCondition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,6 +47,106 @@ public class SingleStoreSourceConnectorServiceImpl extends
   private static final Logger logger = LoggerFactory.getLogger(
       SingleStoreSourceConnectorServiceImpl.class);
 
+  private final SyncScheduler scheduler;
+  private final MemoryBudget memoryBudget;
+  // Null if change events are not spooled to disk
+  private final DiskSpool.Settings spoolSettings;
+  private final RateLimiter rateLimiter;
+  // Set when the service is bound with UpdateResponseMarshaller, so records can be sent encoded
+  private volatile boolean encodeRecords;
+  // Connections of running syncs, guarded by itself
+  private final Set<SingleStoreConnection> activeSyncs = new HashSet<>();
+  private boolean stopping;
+  private WarmCursorPool warmCursors;
+
+  public SingleStoreSourceConnectorServiceImpl() {
+    this(SyncScheduler.unlimited(), MemoryBudget.unlimited());
+  }
+
+  public SingleStoreSourceConnectorServiceImpl(SyncScheduler scheduler,
+      MemoryBudget memoryBudget) {
+    this(scheduler, memoryBudget, null);
+  }
+
+  public SingleStoreSourceConnectorServiceImpl(SyncScheduler scheduler,
+      MemoryBudget memoryBudget, DiskSpool.Settings spoolSettings) {
+    this(scheduler, memoryBudget, spoolSettings, RateLimiter.unlimited());
+  }
+
+  public SingleStoreSourceConnectorServiceImpl(SyncScheduler scheduler,
+      MemoryBudget memoryBudget, DiskSpool.Settings spoolSettings, RateLimiter rateLimiter) {
+    this.scheduler = scheduler;
+    this.memoryBudget = memoryBudget;
+    this.spoolSettings = spoolSettings;
+    this.rateLimiter = rateLimiter;
+    // Connections of pooled warm cursors are given to syncs that would wait for a connection
+    scheduler.setConnectionReclaimer(cluster -> getWarmCursors().evictIdlest(cluster));
+  }
+
+  @Override
+  public ServerServiceDefinition bindService() {
+    encodeRecords = true;
+    return UpdateResponseMarshaller.bind(super.bindService());
+  }
+
+  /**
+   * Asks all running syncs, and syncs that start later, to stop reading. Each sync then sends a
+   * checkpoint of the events it has processed and completes.
+   */
+  public void stopSyncs() {
+    synchronized (activeSyncs) {
+      stopping = true;
+      for (SingleStoreConnection conn : activeSyncs) {
+        conn.stop();
+      }
+    }
+    getWarmCursors().close();
+  }
+
+  synchronized WarmCursorPool getWarmCursors() {
+    if (warmCursors == null) {
+      warmCursors = new WarmCursorPool(WARM_CURSOR_IDLE_TIMEOUT_MILLIS);
+    }
+
+    return warmCursors;
+  }
+
+  /**
+   * Waits until all running syncs complete.
+   *
+   * @return false if syncs are still running after the timeout
+   */
+  public boolean awaitSyncs(long timeoutMillis) throws InterruptedException {
+    long deadline = System.nanoTime() + timeoutMillis * 1_000_000;
+    synchronized (activeSyncs) {
+      while (!activeSyncs.isEmpty()) {
+        long leftMillis = (deadline - System.nanoTime()) / 1_000_000;
+        if (leftMillis <= 0) {
+          return false;
+        }
+        activeSyncs.wait(leftMillis);
+      }
+    }
+
+    return true;
+  }
+
+  private AutoCloseable trackSync(SingleStoreConnection conn) {
+    synchronized (activeSyncs) {
+      activeSyncs.add(conn);
+      if (stopping) {
+        conn.stop();
+      }
+    }
+
+    return () -> {
+      synchronized (activeSyncs) {
+        activeSyncs.remove(conn);
+        activeSyncs.notifyAll();
+      }
+    };
+  }
+
   @Override
   public void configurationForm(ConfigurationFormRequest request,
       StreamObserver<ConfigurationFormResponse> responseObserver) {
@@ -54,6 +162,9 @@ public class SingleStoreSourceConnectorServiceImpl extends
         .setSchemaSelectionSupported(true).setTableSelectionSupported(true)
         .addAllFields(Arrays.asList(
             FormField.newBuilder().setName("host").setLabel("Host").setRequired(true)
+                .setDescription(
+                    "Host of an aggregator, or a comma-separated list of aggregators in the "
+                        + "host[:port] format to spread connections across them")
                 .setTextField(TextField.PlainText).build(),
             FormField.newBuilder().setName("port").setLabel("Port").setRequired(true)
                 .setTextField(TextField.PlainText).build(),
@@ -125,6 +236,68 @@ public class SingleStoreSourceConnectorServiceImpl extends
                     "Additional JDBC parameters to use with connection string to SingleStore server.\n"
                         + "Format: 'param1=value1; param2 = value2; ...'.\n"
                         + "The supported parameters are available in the https://docs.singlestore.com/cloud/developer-resources/connect-with-application-development-tools/connect-with-java-jdbc/the-singlestore-jdbc-driver/#connection-string-parameters .")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("compaction.buffer.size")
+                .setLabel("Change Compaction Buffer Size").setRequired(false)
+                .setDescription(
+                    "Maximum number of primary keys for which changes are compacted between checkpoints.\n"
+                        + "When set, only the last change of every row is sent within a checkpoint window. "
+                        + "Rows evicted from the buffer are sent immediately.\n"
+                        + "Default: 0 (compaction is disabled).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("update.cache.size")
+                .setLabel("Update Cache Size").setRequired(false)
+                .setDescription(
+                    "Maximum number of recently sent rows whose column hashes are cached.\n"
+                        + "When set, UPDATE records of cached rows carry only the primary key and the changed columns. "
+                        + "Updates of other rows carry the full row.\n"
+                        + "Default: 0 (the cache is disabled).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("warm.cursor.spool.size")
+                .setLabel("Warm Cursor Spool Size").setRequired(false)
+                .setDescription(
+                    "Maximum number of change events spooled by the OBSERVE cursor kept running between syncs.\n"
+                        + "When set, the next sync drains the spooled events instead of starting a new OBSERVE.\n"
+                        + "Default: 0 (every sync starts a new OBSERVE).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("warm.cursor.spool.bytes")
+                .setLabel("Warm Cursor Spool Bytes").setRequired(false)
+                .setDescription(
+                    "Maximum estimated size in bytes of rows spooled by the OBSERVE cursor kept running between syncs.\n"
+                        + "Default: 67108864 (64 MB).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("raw.decoder")
+                .setLabel("Raw Row Decoder").setRequired(false)
+                .setDescription(
+                    "Whether to decode rows of OBSERVE without the generic JDBC accessors.\n"
+                        + "Options include:\n"
+                        + " * 'false' to decode every value with JDBC (the default);\n"
+                        + " * 'true' to convert column bytes directly, values the decoder doesn't handle are read with JDBC.")
+                .setDropdownField(DropdownField.newBuilder()
+                    .addDropdownField("false")
+                    .addDropdownField("true"))
+                .build(),
+            FormField.newBuilder().setName("rate.limit.rows.per.second")
+                .setLabel("Rate Limit (Rows per Second)").setRequired(false)
+                .setDescription(
+                    "Maximum number of rows per second read from OBSERVE by a sync.\n"
+                        + "When set, the warm OBSERVE cursor is not used.\n"
+                        + "Default: 0 (reads are not limited).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("rate.limit.bytes.per.second")
+                .setLabel("Rate Limit (Bytes per Second)").setRequired(false)
+                .setDescription(
+                    "Maximum number of bytes per second read from OBSERVE by a sync, measured as the serialized size of row values.\n"
+                        + "When set, the warm OBSERVE cursor is not used.\n"
+                        + "Default: 0 (reads are not limited).")
+                .setTextField(TextField.PlainText).build(),
+            FormField.newBuilder().setName("snapshot.chunk.size")
+                .setLabel("Snapshot Chunk Size").setRequired(false)
+                .setDescription(
+                    "Number of rows read per chunk of the initial snapshot, in primary key order.\n"
+                        + "When set, a checkpoint is sent after every chunk, so a failed initial load resumes from the last completed chunk. "
+                        + "Tables without a selected primary key, or with a binary or floating-point one, are loaded by OBSERVE.\n"
+                        + "Default: 0 (the snapshot is taken by OBSERVE).")
                 .setTextField(TextField.PlainText).build()))
         .addAllTests(Arrays.asList(
             ConfigurationTest.newBuilder().setName("connect").setLabel("Tests connection").build(),
@@ -140,9 +313,9 @@ public class SingleStoreSourceConnectorServiceImpl extends
     String testName = request.getName();
     SingleStoreConfiguration configuration = new SingleStoreConfiguration(
         request.getConfigurationMap());
-    SingleStoreConnection conn = new SingleStoreConnection(configuration);
 
-    try {
+    try (SyncScheduler.Permit ignored = scheduler.acquireConnection(configuration);
+        SingleStoreConnection conn = new SingleStoreConnection(configuration)) {
       if (testName.equals("connect")) {
         conn.checkConnection();
       } else if (testName.equals("table")) {
@@ -166,9 +339,9 @@ public class SingleStoreSourceConnectorServiceImpl extends
       responseObserver) {
     SingleStoreConfiguration configuration = new SingleStoreConfiguration(
         request.getConfigurationMap());
-    SingleStoreConnection conn = new SingleStoreConnection(configuration);
 
-    try {
+    try (SyncScheduler.Permit ignored = scheduler.acquireConnection(configuration);
+        SingleStoreConnection conn = new SingleStoreConnection(configuration)) {
       SchemaList schema = conn.getSchema();
       responseObserver.onNext(SchemaResponse.newBuilder().setWithSchema(schema).
           build());
@@ -230,97 +403,544 @@ public class SingleStoreSourceConnectorServiceImpl extends
   }
 
   int CHECKPOINT_BATCH_SIZE = 10_000;
+  // Snapshots are bulk loads, so they are checkpointed less often
+  int SNAPSHOT_CHECKPOINT_BATCH_SIZE = 100_000;
+  // Number of snapshot records sent between checks of the memory budget
+  private static final int SNAPSHOT_THROTTLE_INTERVAL = 1_000;
+  long SNAPSHOT_PROGRESS_LOG_INTERVAL_MILLIS = 30_000;
+  // Time after which a warm cursor that is not used by a sync is closed
+  private static final long WARM_CURSOR_IDLE_TIMEOUT_MILLIS = 30 * 60_000;
+
+  private static void commitSyncEvent(SyncEvents.Sync event,
+      SingleStoreConfiguration configuration, SyncMetrics metrics, String outcome) {
+    event.end();
+    if (event.shouldCommit()) {
+      event.database = configuration.database();
+      event.table = configuration.table();
+      event.records = metrics.records();
+      event.recordBytes = metrics.totalRecordBytes();
+      event.outcome = outcome;
+      event.commit();
+    }
+  }
+
+  private static void throttle(SyncScheduler.Permit permit, MemoryBudget.Account memory)
+      throws InterruptedException {
+    if (memory.isOverBudget()) {
+      // Give the work slot to other syncs while waiting for gRPC to drain responses
+      permit.endWork();
+      try {
+        memory.throttle();
+      } finally {
+        permit.beginWork();
+      }
+    }
+  }
+
+  /**
+   * @param response {@link UpdateResponse} or a record encoded by {@link RecordEncoder}
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  private void send(StreamObserver<UpdateResponse> responseObserver,
+      MemoryBudget.Account memory, SyncMetrics metrics, Object response, long size) {
+    long start = System.nanoTime();
+    // Encoded records reach UpdateResponseMarshaller unchanged
+    ((StreamObserver) responseObserver).onNext(response);
+    metrics.record(SyncMetrics.Stage.SEND, start);
+    memory.sent(size);
+  }
+
+  private void sendRecord(StreamObserver<UpdateResponse> responseObserver,
+      MemoryBudget.Account memory, SyncMetrics metrics, SingleStoreConfiguration configuration,
+      RecordEncoder encoder, RecordType type, Map<String, ValueType> row) {
+    long start = System.nanoTime();
+    Object response;
+    int size;
+    if (encoder != null) {
+      RecordEncoder.Encoded encoded = encoder.encode(type, row);
+      response = encoded;
+      size = encoded.size();
+    } else {
+      UpdateResponse message = UpdateResponse.newBuilder()
+          .setRecord(
+              Record.newBuilder()
+                  .setSchemaName(configuration.database())
+                  .setTableName(configuration.table())
+                  .setType(type)
+                  .putAllData(row)
+                  .build())
+          .build();
+      response = message;
+      // The size is memoized, so it is not computed again during serialization
+      size = message.getSerializedSize();
+    }
+    metrics.record(SyncMetrics.Stage.BUILD, start);
+    metrics.recordRecord(row.size(), size);
+    if (size >= SyncEvents.LARGE_ROW_BYTES) {
+      SyncEvents.LargeRow event = new SyncEvents.LargeRow();
+      if (event.isEnabled()) {
+        event.table = configuration.table();
+        event.type = type.name();
+        event.columns = row.size();
+        event.bytes = size;
+        event.commit();
+      }
+    }
+
+    send(responseObserver, memory, metrics, response, size);
+  }
+
+  /**
+   * @return serialized size of the checkpoint response
+   */
+  private int sendCheckpoint(StreamObserver<UpdateResponse> responseObserver,
+      MemoryBudget.Account memory, SyncMetrics metrics, State state)
+      throws JsonProcessingException {
+    long start = System.nanoTime();
+    UpdateResponse response = UpdateResponse.newBuilder()
+        .setCheckpoint(
+            Checkpoint.newBuilder()
+                .setStateJson(state.toJson())
+                .build())
+        .build();
+    int size = response.getSerializedSize();
+    metrics.record(SyncMetrics.Stage.CHECKPOINT, start);
+
+    send(responseObserver, memory, metrics, response, size);
+    return size;
+  }
+
+  /**
+   * Sets estimated sizes of partitions to the snapshot progress. Statistics are optional, so
+   * failures are logged and ignored.
+   */
+  private static void estimateSnapshot(SingleStoreConnection conn, SnapshotProgress progress) {
+    try {
+      progress.setEstimates(conn.getRowEstimates());
+    } catch (Exception e) {
+      logger.warn("Failed to estimate the size of the snapshot", e);
+    }
+  }
+
+  /**
+   * Sends records buffered by the compactor and a checkpoint of the state. Records must be sent
+   * before the checkpoint, as their offsets are already stored in the state.
+   */
+  private void checkpoint(StreamObserver<UpdateResponse> responseObserver,
+      MemoryBudget.Account memory, SyncMetrics metrics, SingleStoreConfiguration configuration,
+      ChangeCompactor compactor, State state, DiskSpool spool) throws Exception {
+    SyncEvents.Checkpoint event = new SyncEvents.Checkpoint();
+    event.begin();
+    if (compactor != null) {
+      compactor.flush();
+    }
+    int size = sendCheckpoint(responseObserver, memory, metrics, state);
+    if (spool != null) {
+      spool.checkpointed();
+    }
+    event.end();
+    if (event.shouldCommit()) {
+      event.table = configuration.table();
+      event.stateBytes = size;
+      event.records = metrics.records();
+      event.commit();
+    }
+  }
+
+  /**
+   * Runs OBSERVE through the spool if it is enabled, or directly on the sync thread otherwise.
+   */
+  private static void observe(SingleStoreConnection conn, DiskSpool spool, State state,
+      Set<String> selectedColumns, ChangePipeline pipeline) throws Exception {
+    if (spool != null) {
+      spool.observe(conn, state, selectedColumns, pipeline::accept);
+    } else {
+      conn.observe(state, selectedColumns, pipeline);
+    }
+  }
+
+  /**
+   * Drops the offsets captured for a chunked snapshot, so OBSERVE takes the snapshot instead.
+   */
+  private static void restartWithObserveSnapshot(State state) {
+    for (int partition = 0; partition < state.numPartitions(); partition++) {
+      state.setOffset(partition, null);
+    }
+    state.setSnapshot(null);
+  }
+
+  /**
+   * Sends the initial snapshot of the table chunk by chunk in the order of the primary key, with a
+   * checkpoint after every chunk, so a failed snapshot resumes from the last completed chunk. The
+   * offsets at which OBSERVE takes its snapshot are captured first and kept in the state, and
+   * OBSERVE resumes from them once all chunks are sent. Changes made while chunks are read may be
+   * sent twice, which is harmless as records are applied by the primary key. Rows of chunks are
+   * not assigned to partitions, so the progress of every partition is tracked together.
+   */
+  private void chunkedSnapshot(SingleStoreConnection conn, State state,
+      Set<String> selectedColumns, SingleStoreConfiguration configuration,
+      SyncScheduler.Permit permit, MemoryBudget.Account memory, SyncMetrics metrics,
+      SnapshotProgress progress, ChangeCompactor.RecordEmitter sender,
+      StreamObserver<UpdateResponse> responseObserver) throws Exception {
+    int chunkSize = configuration.snapshotChunkSize();
+    if (chunkSize <= 0) {
+      logger.warn("Chunked snapshot is disabled, restarting the snapshot with OBSERVE");
+      restartWithObserveSnapshot(state);
+      return;
+    }
+
+    List<Column> columns = conn.getColumns(selectedColumns);
+    List<Column> keyColumns = columns
+        .stream()
+        .filter(Column::getPrimaryKey)
+        .collect(Collectors.toList());
+    // Key values are stored in the state as text
+    if (keyColumns.isEmpty() || !keyColumns.stream().allMatch(SingleStoreConnection::isChunkKey)) {
+      logger.warn("Primary key columns are not selected or are binary or floating-point, the "
+          + "snapshot is taken by OBSERVE");
+      if (state.getSnapshot() != null) {
+        restartWithObserveSnapshot(state);
+      }
+      return;
+    }
+
+    if (state.getSnapshot() == null) {
+      logger.info("Chunked snapshot STARTING, capturing offsets of OBSERVE");
+      State start = conn.captureSnapshotOffsets(state.numPartitions());
+      if (conn.isStopped()) {
+        return;
+      }
+      for (int partition = 0; partition < state.numPartitions(); partition++) {
+        state.setOffset(partition, start.getOffset(partition));
+      }
+      state.setSnapshot(new State.ChunkedSnapshot(null));
+      checkpoint(responseObserver, memory, metrics, configuration, null, state, null);
+    } else {
+      logger.info(String.format("Chunked snapshot RESUMING after key %s",
+          state.getSnapshot().lastKey()));
+    }
+
+    for (int partition = 0; partition < state.numPartitions(); partition++) {
+      progress.begin(partition);
+    }
+    AtomicLong records = new AtomicLong();
+    AtomicReference<List<String>> lastKey = new AtomicReference<>(
+        state.getSnapshot().lastKey());
+    while (!conn.isStopped()) {
+      int count = conn.readChunk(columns, keyColumns, lastKey.get(), chunkSize, (row, key) -> {
+        sender.emit(RecordType.UPSERT, row);
+        lastKey.set(key);
+        progress.row();
+        if (records.incrementAndGet() % SNAPSHOT_THROTTLE_INTERVAL == 0) {
+          throttle(permit, memory);
+        }
+      });
+      // Rows are sent in the order of the key, so a partially read chunk is resumed after the
+      // last row that is sent
+      state.setSnapshot(new State.ChunkedSnapshot(lastKey.get()));
+      if (conn.isStopped()) {
+        // The progress is stored by the final checkpoint of the sync
+        return;
+      }
+      if (count < chunkSize) {
+        state.setSnapshot(null);
+        checkpoint(responseObserver, memory, metrics, configuration, null, state, null);
+        for (int partition = 0; partition < state.numPartitions(); partition++) {
+          progress.commit(partition);
+        }
+        logger.info(String.format("Chunked snapshot DONE (%d records, %s), switching to "
+            + "incremental mode", records.get(), progress.status()));
+        return;
+      }
+
+      checkpoint(responseObserver, memory, metrics, configuration, null, state, null);
+      logger.info(String.format("Chunked snapshot PROGRESS (%d records, %s)", records.get(),
+          progress.status()));
+    }
+  }
 
   @Override
   public void update(UpdateRequest request, StreamObserver<UpdateResponse>
       responseObserver) {
     SingleStoreConfiguration configuration = new SingleStoreConfiguration(
         request.getConfigurationMap());
-    SingleStoreConnection conn = new SingleStoreConnection(configuration);
     Set<String> selectedColumns = getSelectedColumns(request, configuration);
-    AtomicLong recordsRead = new AtomicLong();
+    AtomicLong recordsSinceCheckpoint = new AtomicLong();
+    SyncMetrics metrics = new SyncMetrics();
+    SyncEvents.Sync syncEvent = new SyncEvents.Sync();
+    syncEvent.begin();
+    String warmKey = null;
+    WarmCursor warmCursor = null;
 
-    try {
-      State state;
+    try (SyncScheduler.Permit permit = scheduler.acquireSync(configuration);
+        SingleStoreConnection conn = new SingleStoreConnection(configuration, permit, metrics);
+        AutoCloseable tracking = trackSync(conn);
+        MemoryBudget.Account memory = memoryBudget.newAccount(responseObserver);
+        SnapshotProgress progress = new SnapshotProgress(SNAPSHOT_PROGRESS_LOG_INTERVAL_MILLIS);
+        DiskSpool spool = spoolSettings == null ? null : new DiskSpool(spoolSettings, permit);
+        RateLimiter.Limit rateLimit = rateLimiter.newLimit(configuration)) {
+      long setupStart = System.nanoTime();
+      if (rateLimit.isLimited()) {
+        conn.rateLimit = rateLimit;
+      }
+      if (responseObserver instanceof ServerCallStreamObserver) {
+        // Rows are not read for a client that is gone
+        ((ServerCallStreamObserver<UpdateResponse>) responseObserver).setOnCancelHandler(() -> {
+          logger.info("Sync CANCELLED by the client, cancelling OBSERVE");
+          conn.cancel();
+        });
+      }
+      OffsetTracker offsets;
       if (request.hasStateJson() && !request.getStateJson().equals("{}")) {
-        state = State.fromJson(request.getStateJson());
+        offsets = new OffsetTracker(State.fromJson(request.getStateJson()));
       } else {
-        state = new State(conn.getNumPartitions());
+        offsets = new OffsetTracker(new State(conn.getNumPartitions()));
+      }
+      // Offsets of events passed to the sync are stored by the tracker
+      State state = offsets.state();
+      SyncEvents.SyncStart startEvent = new SyncEvents.SyncStart();
+      if (startEvent.isEnabled()) {
+        startEvent.database = configuration.database();
+        startEvent.table = configuration.table();
+        startEvent.resumed = request.hasStateJson() && !request.getStateJson().equals("{}");
+        startEvent.commit();
+      }
+
+      List<String> keyColumns = Collections.emptyList();
+      if (configuration.compactionBufferSize() > 0 || configuration.updateCacheSize() > 0) {
+        keyColumns = conn.getColumns(selectedColumns)
+            .stream()
+            .filter(Column::getPrimaryKey)
+            .map(Column::getName)
+            .collect(Collectors.toList());
+        if (keyColumns.isEmpty()) {
+          logger.warn("Primary key columns are not selected, change compaction and "
+              + "column-level updates are disabled");
+        }
+      }
+
+      RowImageCache rowImages = null;
+      if (configuration.updateCacheSize() > 0 && !keyColumns.isEmpty()) {
+        rowImages = new RowImageCache(keyColumns, configuration.updateCacheSize());
       }
+      RowImageCache finalRowImages = rowImages;
+      // Records are encoded directly only for the gRPC stream, which passes them to
+      // UpdateResponseMarshaller
+      RecordEncoder encoder = encodeRecords && responseObserver instanceof ServerCallStreamObserver
+          ? new RecordEncoder(configuration.database(), configuration.table()) : null;
+      // Row images are compared after compaction, right before records are sent, as compacted
+      // updates must carry all columns changed within the window
+      ChangeCompactor.RecordEmitter sender = (type, row) -> sendRecord(responseObserver, memory,
+          metrics, configuration, encoder, type,
+          finalRowImages == null ? row : finalRowImages.apply(type, row));
+
+      ChangeCompactor compactor = null;
+      if (configuration.compactionBufferSize() > 0 && !keyColumns.isEmpty()) {
+        compactor = new ChangeCompactor(keyColumns, configuration.compactionBufferSize(), sender);
+      }
+      ChangeCompactor finalCompactor = compactor;
+      ChangeCompactor.RecordEmitter emitter = (type, row) -> {
+        if (finalCompactor != null) {
+          finalCompactor.add(type, row);
+        } else {
+          sender.emit(type, row);
+        }
+      };
+      TransactionBatcher transactions = new TransactionBatcher(emitter);
+      Runnable updateBuffered = () -> memory.setBuffered(transactions.bytes()
+          + (finalCompactor == null ? 0 : finalCompactor.bytes()));
+      SnapshotStage snapshot = new SnapshotStage(progress);
+      progress.register(configuration.database(), configuration.table());
+      if (state.hasMissingOffsets() || state.getSnapshot() != null) {
+        estimateSnapshot(conn, progress);
+      }
+      metrics.record(SyncMetrics.Stage.SETUP, setupStart);
 
       logger.info("Sync STARTING");
 
-      conn.observe(state, selectedColumns, (operation, partition, offset, row) -> {
-        switch (operation) {
-          case "Insert":
-            responseObserver.onNext(
-                UpdateResponse.newBuilder()
-                    .setRecord(
-                        Record.newBuilder()
-                            .setSchemaName(configuration.database())
-                            .setTableName(configuration.table())
-                            .setType(RecordType.UPSERT)
-                            .putAllData(row)
-                            .build())
-                    .build());
-            break;
-          case "Update":
-            responseObserver.onNext(
-                UpdateResponse.newBuilder()
-                    .setRecord(
-                        Record.newBuilder()
-                            .setSchemaName(configuration.database())
-                            .setTableName(configuration.table())
-                            .setType(RecordType.UPDATE)
-                            .putAllData(row)
-                            .build())
-                    .build());
+      ChangePipeline.Sink sink = event -> {
+        Integer partition = event.partition();
+        // Offsets are stored only between transactions, so every checkpoint resumes OBSERVE at
+        // a transaction boundary
+        offsets.advance(event);
+        switch (event.operation()) {
+          case ChangeEvent.BEGIN_SNAPSHOT:
+            // Changes received before the snapshot must not be sent after its rows
+            if (finalCompactor != null) {
+              finalCompactor.flush();
+              updateBuffered.run();
+            }
+            return;
+          case ChangeEvent.COMMIT_SNAPSHOT:
             break;
-          case "Delete":
-            responseObserver.onNext(
-                UpdateResponse.newBuilder()
-                    .setRecord(
-                        Record.newBuilder()
-                            .setSchemaName(configuration.database())
-                            .setTableName(configuration.table())
-                            .setType(RecordType.DELETE)
-                            .putAllData(row)
-                            .build())
-                    .build());
+          case ChangeEvent.BEGIN_TRANSACTION:
+            transactions.begin(partition);
+            updateBuffered.run();
+            return;
+          case ChangeEvent.COMMIT_TRANSACTION:
+            transactions.commit(partition);
             break;
           default:
-            return;
+            RecordType type = event.recordType();
+            if (type == null) {
+              return;
+            }
+
+            recordsSinceCheckpoint.incrementAndGet();
+            if (snapshot.inSnapshot(partition)) {
+              // A snapshot contains every row once and has no transactions, so its records are
+              // sent directly, without compaction and batching
+              sender.emit(type, event.row());
+              if (recordsSinceCheckpoint.get() >= SNAPSHOT_CHECKPOINT_BATCH_SIZE) {
+                checkpoint(responseObserver, memory, metrics, configuration, finalCompactor,
+                    state, spool);
+                updateBuffered.run();
+                recordsSinceCheckpoint.set(0);
+              }
+              if (snapshot.records() % SNAPSHOT_THROTTLE_INTERVAL == 0) {
+                throttle(permit, memory);
+              }
+              return;
+            }
+            if (transactions.inTransaction(partition)) {
+              // The offset is stored when the transaction is committed
+              transactions.add(partition, type, event.row());
+              updateBuffered.run();
+              throttle(permit, memory);
+              return;
+            }
+            emitter.emit(type, event.row());
         }
+        updateBuffered.run();
 
-        state.setOffset(partition, offset);
-        if (recordsRead.incrementAndGet() % CHECKPOINT_BATCH_SIZE == 0) {
-          responseObserver.onNext(
-              UpdateResponse.newBuilder()
-                  .setCheckpoint(
-                      Checkpoint.newBuilder()
-                          .setStateJson(state.toJson())
-                          .build())
-                  .build());
+        if (recordsSinceCheckpoint.get() >= (snapshot.inSnapshot()
+            ? SNAPSHOT_CHECKPOINT_BATCH_SIZE : CHECKPOINT_BATCH_SIZE)) {
+          checkpoint(responseObserver, memory, metrics, configuration, finalCompactor, state,
+              spool);
+          updateBuffered.run();
+          recordsSinceCheckpoint.set(0);
         }
-      });
 
-      if (recordsRead.incrementAndGet() % CHECKPOINT_BATCH_SIZE != 0) {
-        responseObserver.onNext(
-            UpdateResponse.newBuilder()
-                .setCheckpoint(
-                    Checkpoint.newBuilder()
-                        .setStateJson(state.toJson())
-                        .build())
-                .build());
+        throttle(permit, memory);
+      };
+
+      if (state.getSnapshot() != null
+          || (configuration.snapshotChunkSize() > 0 && state.hasNoOffsets())) {
+        chunkedSnapshot(conn, state, selectedColumns, configuration, permit, memory, metrics,
+            progress, sender, responseObserver);
+      }
+
+      if (configuration.warmCursorSpoolSize() > 0 && rateLimit.isLimited()) {
+        // A warm cursor reads changes between syncs, outside of the limits of any sync
+        logger.info("Reads of the sync are rate limited, the warm OBSERVE cursor is not used");
+      } else if (configuration.warmCursorSpoolSize() > 0 && !conn.isStopped()) {
+        warmKey = WarmCursorPool.key(request.getConfigurationMap(), selectedColumns);
+        warmCursor = getWarmCursors().take(warmKey, state);
       }
 
-      logger.info("Sync DONE");
+      try (ChangePipeline pipeline = ChangePipeline.builder()
+          .stage("snapshot", snapshot)
+          .build(sink)) {
+        if (warmCursor != null) {
+          logger.info(String.format("Draining the warm OBSERVE cursor (%d events, %d bytes "
+              + "spooled)", warmCursor.spooled(), warmCursor.spooledBytes()));
+          warmCursor.drain(pipeline::accept, conn::isStopped, metrics);
+        } else if (!conn.isStopped()) {
+          // A sync stopped during the chunked snapshot doesn't start OBSERVE, the progress of the
+          // snapshot is stored by the final checkpoint
+          try {
+            observe(conn, spool, state, selectedColumns, pipeline);
+          } catch (Exception e) {
+            if (!SingleStoreConnection.isStaleOffsetError(e)) {
+              throw e;
+            }
+
+            List<Integer> stalePartitions = conn.getStalePartitions(state);
+            if (stalePartitions.isEmpty()) {
+              throw e;
+            }
+
+            // Re-sync only stale partitions from a snapshot, other partitions resume from their
+            // offsets
+            logger.warn(String.format(
+                "Offsets of partitions %s are stale, re-syncing them from a snapshot",
+                stalePartitions));
+            for (Integer partition : stalePartitions) {
+              state.setOffset(partition, null);
+            }
+            transactions.clear();
+            offsets.clearTransactions();
+            snapshot.clear();
+            estimateSnapshot(conn, progress);
+            observe(conn, spool, state, selectedColumns, pipeline);
+          }
+        }
+        pipeline.finish();
+      }
+
+      if (conn.isCancelled()) {
+        // Nobody receives the final checkpoint
+        logger.info(String.format("Sync CANCELLED (%d records since the last checkpoint are "
+            + "dropped)", recordsSinceCheckpoint.get()));
+        commitSyncEvent(syncEvent, configuration, metrics, "CANCELLED");
+        return;
+      }
+      if (transactions.size() > 0) {
+        logger.info(String.format("Dropping %d records of uncommitted transactions, "
+            + "they will be received again by the next sync", transactions.size()));
+        transactions.clear();
+      }
+      checkpoint(responseObserver, memory, metrics, configuration, compactor, state, spool);
+      updateBuffered.run();
+
+      if (conn.isStopped()) {
+        logger.info("Sync STOPPED by the connector shutdown, state of processed events is saved");
+      }
+      commitSyncEvent(syncEvent, configuration, metrics, conn.isStopped() ? "STOPPED" : "DONE");
+      if (warmKey != null && !conn.isStopped()) {
+        // The cursor keeps reading changes until the next sync
+        if (warmCursor == null && !state.hasMissingOffsets()) {
+          // The cursor holds a connection of its own, which is not waited for
+          SyncScheduler.Permit cursorConnection = scheduler.tryAcquireConnection(configuration);
+          if (cursorConnection != null) {
+            warmCursor = WarmCursor.start(configuration, selectedColumns, state, memoryBudget,
+                cursorConnection);
+          } else {
+            logger.info("No connection to the cluster is left for a warm OBSERVE cursor");
+          }
+        }
+        if (warmCursor != null) {
+          getWarmCursors().release(warmKey, warmCursor);
+          warmCursor = null;
+        }
+      }
+      if (spool != null) {
+        logger.info(String.format("Peak size of spooled change events: %d bytes",
+            spool.peakBytes()));
+      }
+      if (rateLimit.isLimited()) {
+        logger.info(String.format("Rate limited for %d ms", rateLimit.throttledMillis()));
+      }
+      if (rowImages != null) {
+        logger.info(String.format("Sent %d updates with changed columns only, %d with full rows",
+            rowImages.hits(), rowImages.misses()));
+      }
+      logger.info(String.format("Sync DONE (peak memory: %d bytes, throttled for: %d ms, "
+              + "memory budget used: %d/%d bytes)%s",
+          memory.peak(), memory.throttledMillis(), memoryBudget.used(), memoryBudget.limit(),
+          metrics.summary()));
     } catch (Exception e) {
-      if (e.getMessage().contains("The requested Offset is too stale")) {
+      commitSyncEvent(syncEvent, configuration, metrics, "FAILED");
+      if (SingleStoreConnection.isStaleOffsetError(e)) {
         responseObserver.onError(new StaleOffsetException(e));
       } else {
         responseObserver.onError(e);
       }
+    } finally {
+      // The sync didn't finish, so the position of the cursor is unknown
+      if (warmCursor != null) {
+        warmCursor.close();
+      }
     }
 
     responseObserver.onCompleted();
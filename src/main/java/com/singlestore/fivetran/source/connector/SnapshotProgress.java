@@ -0,0 +1,194 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the progress of the snapshot phase of a sync. The number of rows of every partition is
+ * estimated from table statistics, so the progress, the current rate and the time left can be
+ * logged periodically. The progress is also registered as a JMX bean while the sync runs.
+ */
+public class SnapshotProgress implements SnapshotProgressMBean, AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(SnapshotProgress.class);
+  private static final AtomicLong nextId = new AtomicLong();
+  // Number of rows read between checks of the clock
+  private static final int CLOCK_CHECK_INTERVAL = 1_000;
+
+  private final long logIntervalNanos;
+  private Map<Integer, Long> estimates = Collections.emptyMap();
+  private final Set<Integer> partitions = new HashSet<>();
+  private final Map<Integer, Long> partitionRowsRead = new HashMap<>();
+  private long estimatedRows;
+  private long rowsRead;
+  private long startNanos;
+  private long lastLogNanos;
+  private long lastLogRows;
+  private double rowsPerSecond;
+  private ObjectName objectName;
+
+  /**
+   * @param logIntervalMillis minimum interval between progress messages
+   */
+  public SnapshotProgress(long logIntervalMillis) {
+    this.logIntervalNanos = logIntervalMillis * 1_000_000;
+  }
+
+  /**
+   * Registers the progress as a JMX bean. Failures are logged and ignored, as the bean is used
+   * only for monitoring.
+   */
+  public void register(String database, String table) {
+    try {
+      ObjectName name = new ObjectName(String.format(
+          "com.singlestore.fivetran.source.connector:type=SnapshotProgress,"
+              + "database=%s,table=%s,id=%d",
+          ObjectName.quote(database), ObjectName.quote(table), nextId.incrementAndGet()));
+      ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+      objectName = name;
+    } catch (Exception e) {
+      logger.warn("Failed to register snapshot progress bean", e);
+    }
+  }
+
+  @Override
+  public void close() {
+    if (objectName == null) {
+      return;
+    }
+
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      server.unregisterMBean(objectName);
+    } catch (Exception e) {
+      logger.warn("Failed to unregister snapshot progress bean", e);
+    }
+    objectName = null;
+  }
+
+  /**
+   * @param estimates estimated number of rows by partition
+   */
+  public synchronized void setEstimates(Map<Integer, Long> estimates) {
+    this.estimates = estimates;
+  }
+
+  public synchronized void begin(int partition) {
+    long now = System.nanoTime();
+    if (partitions.isEmpty()) {
+      startNanos = now;
+      lastLogNanos = now;
+      lastLogRows = rowsRead;
+    }
+    if (partitions.add(partition)) {
+      estimatedRows += estimates.getOrDefault(partition, 0L);
+    }
+  }
+
+  public synchronized void row(int partition) {
+    partitionRowsRead.merge(partition, 1L, Long::sum);
+    row();
+  }
+
+  /**
+   * Counts a row whose partition is unknown, such as a row of a chunked snapshot.
+   */
+  public synchronized void row() {
+    rowsRead++;
+    if (rowsRead % CLOCK_CHECK_INTERVAL != 0) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    if (now - lastLogNanos >= logIntervalNanos) {
+      rowsPerSecond = (rowsRead - lastLogRows) * 1e9 / (now - lastLogNanos);
+      lastLogNanos = now;
+      lastLogRows = rowsRead;
+      logger.info(String.format("Snapshot PROGRESS (%s)", status()));
+    }
+  }
+
+  public synchronized void commit(int partition) {
+    partitions.remove(partition);
+    if (partitions.isEmpty()) {
+      long elapsedNanos = System.nanoTime() - startNanos;
+      if (elapsedNanos > 0) {
+        rowsPerSecond = rowsRead * 1e9 / elapsedNanos;
+      }
+    }
+  }
+
+  /**
+   * Returns a human-readable description of the progress.
+   */
+  public synchronized String status() {
+    StringBuilder res = new StringBuilder();
+    res.append(String.format("%d rows", rowsRead));
+    if (estimatedRows > 0) {
+      res.append(String.format(" of ~%d (%.1f%%)", estimatedRows, getPercent()));
+    }
+    res.append(String.format(", %.0f rows/s", rowsPerSecond));
+    long eta = getEtaSeconds();
+    if (eta >= 0) {
+      res.append(String.format(", ETA %dh %02dm %02ds", eta / 3600, eta / 60 % 60, eta % 60));
+    }
+    res.append(String.format(", %d partitions in progress", partitions.size()));
+
+    return res.toString();
+  }
+
+  public synchronized long getPartitionRowsRead(int partition) {
+    return partitionRowsRead.getOrDefault(partition, 0L);
+  }
+
+  @Override
+  public synchronized long getRowsRead() {
+    return rowsRead;
+  }
+
+  @Override
+  public synchronized long getEstimatedRows() {
+    return estimatedRows;
+  }
+
+  @Override
+  public synchronized double getPercent() {
+    if (estimatedRows <= 0) {
+      return -1;
+    }
+
+    // Statistics are approximate, so more rows than estimated may be read
+    return Math.min(100.0, rowsRead * 100.0 / estimatedRows);
+  }
+
+  @Override
+  public synchronized double getRowsPerSecond() {
+    return rowsPerSecond;
+  }
+
+  @Override
+  public synchronized long getEtaSeconds() {
+    if (partitions.isEmpty()) {
+      return 0;
+    }
+    if (estimatedRows <= 0 || rowsPerSecond <= 0) {
+      return -1;
+    }
+
+    return (long) (Math.max(0, estimatedRows - rowsRead) / rowsPerSecond);
+  }
+
+  @Override
+  public synchronized boolean isInProgress() {
+    return !partitions.isEmpty();
+  }
+}
@@ -0,0 +1,28 @@
+package com.singlestore.fivetran.source.connector;
+
+/**
+ * JMX view of the progress of a snapshot.
+ */
+public interface SnapshotProgressMBean {
+
+  long getRowsRead();
+
+  /**
+   * Returns the estimated number of rows in partitions whose snapshot has started, 0 if unknown.
+   */
+  long getEstimatedRows();
+
+  /**
+   * Returns the percentage of estimated rows that are read, -1 if unknown.
+   */
+  double getPercent();
+
+  double getRowsPerSecond();
+
+  /**
+   * Returns the estimated number of seconds until the snapshot is done, -1 if unknown.
+   */
+  long getEtaSeconds();
+
+  boolean isInProgress();
+}
@@ -0,0 +1,79 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.util.HashSet;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stage of a sync that tracks partitions whose snapshot is being received from OBSERVE and
+ * reports the progress of the snapshot. Events pass unchanged, so later stages can tell snapshot
+ * rows from changes with {@link #inSnapshot(int)}.
+ */
+public class SnapshotStage implements ChangePipeline.Stage {
+
+  private static final Logger logger = LoggerFactory.getLogger(SnapshotStage.class);
+
+  private final SnapshotProgress progress;
+  private final Set<Integer> partitions = new HashSet<>();
+  private long records;
+
+  public SnapshotStage(SnapshotProgress progress) {
+    this.progress = progress;
+  }
+
+  @Override
+  public void process(ChangeEvent event, ChangePipeline.Downstream next) throws Exception {
+    Integer partition = event.partition();
+    switch (event.operation()) {
+      case ChangeEvent.BEGIN_SNAPSHOT:
+        if (partitions.isEmpty()) {
+          logger.info("Snapshot STARTING, switching to bulk mode");
+        }
+        partitions.add(partition);
+        progress.begin(partition);
+        break;
+      case ChangeEvent.COMMIT_SNAPSHOT:
+        partitions.remove(partition);
+        progress.commit(partition);
+        if (partitions.isEmpty()) {
+          logger.info(String.format(
+              "Snapshot DONE (%d records, %s), switching to incremental mode", records,
+              progress.status()));
+        }
+        break;
+      default:
+        if (event.isRowChange() && partitions.contains(partition)) {
+          records++;
+          progress.row(partition);
+        }
+    }
+
+    next.emit(event);
+  }
+
+  public boolean inSnapshot(int partition) {
+    return partitions.contains(partition);
+  }
+
+  /**
+   * Returns true if the snapshot of any partition is being received.
+   */
+  public boolean inSnapshot() {
+    return !partitions.isEmpty();
+  }
+
+  /**
+   * Returns the number of snapshot rows received.
+   */
+  public long records() {
+    return records;
+  }
+
+  /**
+   * Forgets partitions whose snapshot was not committed. Called when OBSERVE is restarted.
+   */
+  public void clear() {
+    partitions.clear();
+  }
+}
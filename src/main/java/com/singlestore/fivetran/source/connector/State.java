@@ -1,26 +1,76 @@
 package com.singlestore.fivetran.source.connector;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 public class State {
 
   private static final ObjectMapper mapper = new ObjectMapper();
 
+  /**
+   * Progress of a chunked snapshot. Rows are read in the order of the primary key, chunk by
+   * chunk, and the key of the last row of every completed chunk is stored.
+   */
+  public static class ChunkedSnapshot {
+
+    @JsonProperty
+    private final List<String> lastKey;
+
+    @JsonCreator
+    ChunkedSnapshot(@JsonProperty("lastKey") List<String> lastKey) {
+      this.lastKey = lastKey;
+    }
+
+    /**
+     * Returns values of primary key columns of the last row that is sent, null if no chunk is
+     * completed.
+     */
+    public List<String> lastKey() {
+      return lastKey;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof ChunkedSnapshot)) {
+        return false;
+      }
+      return Objects.equals(lastKey, ((ChunkedSnapshot) o).lastKey);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(lastKey);
+    }
+  }
+
   @JsonProperty
   private List<String> offsets;
 
+  // Set while a chunked snapshot runs, offsets are then the ones to catch up from once it is done
+  @JsonProperty
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  private ChunkedSnapshot snapshot;
+
   static State fromJson(String json) throws JsonProcessingException {
     return mapper.readValue(json, State.class);
   }
 
-  State(@JsonProperty("offsets") List<String> offsets) {
+  @JsonCreator
+  State(@JsonProperty("offsets") List<String> offsets,
+      @JsonProperty("snapshot") ChunkedSnapshot snapshot) {
     this.offsets = offsets;
+    this.snapshot = snapshot;
   }
 
   State(Integer numPartitions) {
@@ -41,4 +91,54 @@ public class State {
   public void setOffset(Integer index, String offset) {
     offsets.set(index, offset);
   }
+
+  public String getOffset(Integer index) {
+    return offsets.get(index);
+  }
+
+  public ChunkedSnapshot getSnapshot() {
+    return snapshot;
+  }
+
+  public void setSnapshot(ChunkedSnapshot snapshot) {
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * Returns true if no partition has an offset, so the table was never synced.
+   */
+  public boolean hasNoOffsets() {
+    return offsets.stream().allMatch(Objects::isNull);
+  }
+
+  /**
+   * Returns true if some partition has no offset, so OBSERVE starts it from a snapshot.
+   */
+  public boolean hasMissingOffsets() {
+    return offsets.contains(null);
+  }
+
+  public int numPartitions() {
+    return offsets.size();
+  }
+
+  public State copy() {
+    return new State(new ArrayList<>(offsets), snapshot);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof State)) {
+      return false;
+    }
+    return offsets.equals(((State) o).offsets) && Objects.equals(snapshot, ((State) o).snapshot);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(offsets, snapshot);
+  }
 }
@@ -0,0 +1,116 @@
+package com.singlestore.fivetran.source.connector;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder events of syncs. Events cost almost nothing while no recording is running,
+ * so they are always emitted.
+ */
+public final class SyncEvents {
+
+  private static final String CATEGORY = "SingleStore Fivetran Connector";
+
+  // Records whose serialized size is at least this many bytes are reported as large rows
+  static final int LARGE_ROW_BYTES = 1024 * 1024;
+
+  private SyncEvents() {
+  }
+
+  @Name("com.singlestore.fivetran.SyncStart")
+  @Label("Sync Start")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class SyncStart extends Event {
+
+    @Label("Database")
+    String database;
+
+    @Label("Table")
+    String table;
+
+    @Label("Resumed")
+    @Description("Whether the sync resumes from a state")
+    boolean resumed;
+  }
+
+  @Name("com.singlestore.fivetran.Sync")
+  @Label("Sync")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class Sync extends Event {
+
+    @Label("Database")
+    String database;
+
+    @Label("Table")
+    String table;
+
+    @Label("Records")
+    long records;
+
+    @Label("Record Bytes")
+    @DataAmount
+    long recordBytes;
+
+    @Label("Outcome")
+    @Description("DONE, STOPPED, CANCELLED or FAILED")
+    String outcome;
+  }
+
+  @Name("com.singlestore.fivetran.Checkpoint")
+  @Label("Checkpoint")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class Checkpoint extends Event {
+
+    @Label("Table")
+    String table;
+
+    @Label("State Bytes")
+    @DataAmount
+    long stateBytes;
+
+    @Label("Records")
+    @Description("Number of records sent by the sync before the checkpoint")
+    long records;
+  }
+
+  @Name("com.singlestore.fivetran.CursorStall")
+  @Label("Cursor Stall")
+  @Description("Wait for the next row of OBSERVE that exceeds the threshold")
+  @Category(CATEGORY)
+  @Threshold("200 ms")
+  @StackTrace(false)
+  public static class CursorStall extends Event {
+
+    @Label("Table")
+    String table;
+  }
+
+  @Name("com.singlestore.fivetran.LargeRow")
+  @Label("Large Row")
+  @Category(CATEGORY)
+  @StackTrace(false)
+  public static class LargeRow extends Event {
+
+    @Label("Table")
+    String table;
+
+    @Label("Type")
+    String type;
+
+    @Label("Columns")
+    int columns;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+  }
+}
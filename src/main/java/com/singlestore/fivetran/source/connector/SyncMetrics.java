@@ -0,0 +1,106 @@
+package com.singlestore.fivetran.source.connector;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latency histograms of the stages of a sync, together with distributions of record sizes. Used
+ * to find where a slow sync spends its time. Every sync has its own instance, which may be updated
+ * by the threads that read, decode and send its rows.
+ */
+public class SyncMetrics {
+
+  public enum Stage {
+    // Reading metadata and preparing the sync
+    SETUP,
+    // Waiting for the next row of OBSERVE
+    WAIT,
+    // Converting a row of the result set to values
+    DECODE,
+    // Building and serializing protobuf messages
+    BUILD,
+    // Passing responses to gRPC
+    SEND,
+    // Serializing the state of a checkpoint
+    CHECKPOINT
+  }
+
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  private final Histogram[] stages = new Histogram[Stage.values().length];
+  private final long[] totalNanos = new long[Stage.values().length];
+  private final Histogram recordBytes = new Histogram(SIGNIFICANT_DIGITS);
+  private final Histogram recordColumns = new Histogram(SIGNIFICANT_DIGITS);
+  private long totalRecordBytes;
+
+  public SyncMetrics() {
+    for (int i = 0; i < stages.length; i++) {
+      stages[i] = new Histogram(SIGNIFICANT_DIGITS);
+    }
+  }
+
+  /**
+   * Records one execution of the stage that started at {@code startNanos}.
+   *
+   * @return current {@link System#nanoTime()}, so consecutive stages can be timed with one call
+   */
+  public long record(Stage stage, long startNanos) {
+    long now = System.nanoTime();
+    recordNanos(stage, now - startNanos);
+    return now;
+  }
+
+  public synchronized void recordNanos(Stage stage, long nanos) {
+    // The clock is not guaranteed to be monotonic on every platform
+    nanos = Math.max(0, nanos);
+    stages[stage.ordinal()].recordValue(nanos);
+    totalNanos[stage.ordinal()] += nanos;
+  }
+
+  public synchronized void recordRecord(int columns, long bytes) {
+    recordColumns.recordValue(columns);
+    recordBytes.recordValue(bytes);
+    totalRecordBytes += bytes;
+  }
+
+  public synchronized long count(Stage stage) {
+    return stages[stage.ordinal()].getTotalCount();
+  }
+
+  public synchronized long totalNanos(Stage stage) {
+    return totalNanos[stage.ordinal()];
+  }
+
+  public synchronized long records() {
+    return recordBytes.getTotalCount();
+  }
+
+  public synchronized long totalRecordBytes() {
+    return totalRecordBytes;
+  }
+
+  /**
+   * Returns a multi-line summary with total time and percentiles of every stage, and
+   * distributions of record sizes.
+   */
+  public synchronized String summary() {
+    StringBuilder res = new StringBuilder();
+    for (Stage stage : Stage.values()) {
+      Histogram h = stages[stage.ordinal()];
+      res.append(String.format(
+          "%n  %-10s count: %d, total: %d ms, p50: %d us, p90: %d us, p99: %d us, max: %d us",
+          stage, h.getTotalCount(), totalNanos[stage.ordinal()] / 1_000_000,
+          h.getValueAtPercentile(50) / 1_000, h.getValueAtPercentile(90) / 1_000,
+          h.getValueAtPercentile(99) / 1_000, h.getMaxValue() / 1_000));
+    }
+    res.append(String.format(
+        "%n  %-10s count: %d, total: %d bytes, p50: %d bytes, p90: %d bytes, p99: %d bytes, "
+            + "max: %d bytes",
+        "RECORDS", recordBytes.getTotalCount(), totalRecordBytes,
+        recordBytes.getValueAtPercentile(50), recordBytes.getValueAtPercentile(90),
+        recordBytes.getValueAtPercentile(99), recordBytes.getMaxValue()));
+    res.append(String.format("%n  %-10s p50: %d, max: %d", "COLUMNS",
+        recordColumns.getValueAtPercentile(50), recordColumns.getMaxValue()));
+
+    return res.toString();
+  }
+}
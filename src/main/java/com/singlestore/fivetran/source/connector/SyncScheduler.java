@@ -0,0 +1,213 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Limits resources shared by all syncs served by the connector process: the number of running
+ * syncs, the number of connections to every SingleStore cluster and the number of syncs that read
+ * and convert rows at the same time. All permits are granted in FIFO order, so a large sync can't
+ * starve other syncs. Optionally, it owns a pool of threads that decode rows for all syncs.
+ *
+ * <p>Every connection opened to a cluster takes a connection permit, including connections of
+ * warm OBSERVE cursors and of the load monitor of the rate limiter. Connections that are only
+ * kept for later use, such as those of pooled warm cursors, can be closed by the connection
+ * reclaimer when a sync would otherwise wait for a connection.
+ */
+public class SyncScheduler {
+
+  public static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private final int maxConcurrentSyncs;
+  private final Semaphore syncs;
+  private final int maxConnectionsPerCluster;
+  private final ConcurrentHashMap<String, Semaphore> clusterConnections = new ConcurrentHashMap<>();
+  private final Semaphore workSlots;
+  private volatile Predicate<String> connectionReclaimer = cluster -> false;
+  // null if rows are decoded by the thread that reads them
+  private final ExecutorService decodeExecutor;
+
+  /**
+   * @param maxConcurrentSyncs       maximum number of syncs running at the same time
+   * @param maxConnectionsPerCluster maximum number of connections opened to one cluster
+   * @param maxWorkSlots             maximum number of syncs reading and converting rows at the
+   *                                 same time
+   */
+  public SyncScheduler(int maxConcurrentSyncs, int maxConnectionsPerCluster, int maxWorkSlots) {
+    this(maxConcurrentSyncs, maxConnectionsPerCluster, maxWorkSlots, 0);
+  }
+
+  /**
+   * @param maxConcurrentSyncs       maximum number of syncs running at the same time
+   * @param maxConnectionsPerCluster maximum number of connections opened to one cluster
+   * @param maxWorkSlots             maximum number of syncs reading and converting rows at the
+   *                                 same time
+   * @param decodeThreads            number of threads that decode rows for all syncs, 0 to decode
+   *                                 rows by the thread that reads them
+   */
+  public SyncScheduler(int maxConcurrentSyncs, int maxConnectionsPerCluster, int maxWorkSlots,
+      int decodeThreads) {
+    this.maxConcurrentSyncs = maxConcurrentSyncs;
+    this.syncs = new Semaphore(maxConcurrentSyncs, true);
+    this.maxConnectionsPerCluster = maxConnectionsPerCluster;
+    this.workSlots = new Semaphore(maxWorkSlots, true);
+    if (decodeThreads > 0) {
+      AtomicInteger threadNumber = new AtomicInteger();
+      this.decodeExecutor = Executors.newFixedThreadPool(decodeThreads, r -> {
+        Thread thread = new Thread(r, "decode-" + threadNumber.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+    } else {
+      this.decodeExecutor = null;
+    }
+  }
+
+  public static SyncScheduler unlimited() {
+    return new SyncScheduler(UNLIMITED, UNLIMITED, UNLIMITED);
+  }
+
+  public class Permit implements AutoCloseable {
+
+    private final List<Semaphore> acquired = new ArrayList<>();
+
+    private void acquire(Semaphore semaphore) throws InterruptedException {
+      semaphore.acquire();
+      acquired.add(semaphore);
+    }
+
+    private boolean tryAcquire(Semaphore semaphore) throws InterruptedException {
+      // Unlike tryAcquire(), a zero timeout doesn't take the permit ahead of waiting threads
+      if (!semaphore.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+        return false;
+      }
+      acquired.add(semaphore);
+      return true;
+    }
+
+    /**
+     * Must be called before a sync reads and converts a row. Blocks until a work slot is
+     * available.
+     */
+    public void beginWork() throws InterruptedException {
+      workSlots.acquire();
+    }
+
+    public void endWork() {
+      workSlots.release();
+    }
+
+    /**
+     * Returns the executor that decodes rows, null if rows are decoded by the thread that reads
+     * them.
+     */
+    public ExecutorService decodeExecutor() {
+      return decodeExecutor;
+    }
+
+    @Override
+    public void close() {
+      for (Semaphore semaphore : acquired) {
+        semaphore.release();
+      }
+      acquired.clear();
+    }
+  }
+
+  /**
+   * Returns the key of the cluster of the configuration, passed to the connection reclaimer.
+   */
+  public static String cluster(SingleStoreConfiguration conf) {
+    return String.format("%s:%d", conf.host(), conf.port());
+  }
+
+  private Semaphore getClusterConnections(String cluster) {
+    return clusterConnections.computeIfAbsent(cluster,
+        key -> new Semaphore(maxConnectionsPerCluster, true));
+  }
+
+  /**
+   * Sets the callback that closes one idle connection to the given cluster and returns true, or
+   * returns false if the cluster has no idle connections. It is called when a connection can't be
+   * acquired right away.
+   */
+  public void setConnectionReclaimer(Predicate<String> connectionReclaimer) {
+    this.connectionReclaimer = connectionReclaimer;
+  }
+
+  private void acquireConnection(Permit permit, SingleStoreConfiguration conf)
+      throws InterruptedException {
+    String cluster = cluster(conf);
+    Semaphore connections = getClusterConnections(cluster);
+    if (permit.tryAcquire(connections)) {
+      return;
+    }
+    while (connectionReclaimer.test(cluster)) {
+      if (permit.tryAcquire(connections)) {
+        return;
+      }
+    }
+    permit.acquire(connections);
+  }
+
+  /**
+   * Acquires a connection to the cluster of the given configuration. Blocks until the number of
+   * connections to the cluster is below the limit.
+   */
+  public Permit acquireConnection(SingleStoreConfiguration conf) throws InterruptedException {
+    Permit permit = new Permit();
+    try {
+      acquireConnection(permit, conf);
+    } catch (InterruptedException e) {
+      permit.close();
+      throw e;
+    }
+
+    return permit;
+  }
+
+  /**
+   * Acquires a connection to the cluster of the given configuration if the number of connections
+   * to the cluster is below the limit. Used for connections that are optional, so they never wait
+   * and never close idle connections.
+   *
+   * @return the permit, or null if the limit is reached
+   */
+  public Permit tryAcquireConnection(SingleStoreConfiguration conf) throws InterruptedException {
+    Permit permit = new Permit();
+    if (!permit.tryAcquire(getClusterConnections(cluster(conf)))) {
+      return null;
+    }
+
+    return permit;
+  }
+
+  /**
+   * Acquires a sync together with its connection to the cluster. Blocks until both are available.
+   * The connection is acquired first, so syncs waiting for a busy cluster don't hold sync slots
+   * needed by syncs of other clusters.
+   */
+  public Permit acquireSync(SingleStoreConfiguration conf) throws InterruptedException {
+    Permit permit = new Permit();
+    try {
+      acquireConnection(permit, conf);
+      permit.acquire(syncs);
+    } catch (InterruptedException e) {
+      permit.close();
+      throw e;
+    }
+
+    return permit;
+  }
+
+  public int runningSyncs() {
+    return maxConcurrentSyncs - syncs.availablePermits();
+  }
+}
@@ -10,15 +10,26 @@ import java.util.concurrent.TimeoutException;
 
 public class TimedResultSet implements AutoCloseable {
 
+  public static final long DEFAULT_TIMEOUT_MILLIS = 1000;
+
   private final ResultSet resultSet;
+  private final long timeoutMillis;
   ScheduledExecutorService executor = Executors.newScheduledThreadPool(1);
 
-  private TimedResultSet(ResultSet resultSet) {
+  private TimedResultSet(ResultSet resultSet, long timeoutMillis) {
     this.resultSet = resultSet;
+    this.timeoutMillis = timeoutMillis;
   }
 
   public static TimedResultSet from(ResultSet resultSet) {
-    return new TimedResultSet(resultSet);
+    return new TimedResultSet(resultSet, DEFAULT_TIMEOUT_MILLIS);
+  }
+
+  /**
+   * @param timeoutMillis time to wait for the next row before the result set is considered ended
+   */
+  public static TimedResultSet from(ResultSet resultSet, long timeoutMillis) {
+    return new TimedResultSet(resultSet, timeoutMillis);
   }
 
   @Override
@@ -27,8 +38,13 @@ public class TimedResultSet implements AutoCloseable {
       executor.shutdownNow();
 
       if (!resultSet.isClosed()) {
-        ((com.singlestore.jdbc.Connection) resultSet.getStatement()
-            .getConnection()).cancelCurrentQuery();
+        if (resultSet.getStatement() == null) {
+          // Result sets that are not backed by a query, such as OBSERVE replays
+          resultSet.close();
+        } else {
+          ((com.singlestore.jdbc.Connection) resultSet.getStatement()
+              .getConnection()).cancelCurrentQuery();
+        }
       }
     } catch (Exception ignored) {
     }
@@ -41,8 +57,7 @@ public class TimedResultSet implements AutoCloseable {
   public Boolean next() throws InterruptedException, ExecutionException {
     Future<Boolean> future = executor.submit(resultSet::next);
     try {
-      // Get the result with a timeout of 1 second
-      return future.get(1, TimeUnit.SECONDS);
+      return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
     } catch (TimeoutException e) {
       future.cancel(true);
       return false;
@@ -0,0 +1,97 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Token bucket that limits the rate of rows or bytes. The bucket holds up to one second of tokens,
+ * so short bursts are allowed. A request larger than the bucket is granted and leaves the bucket
+ * in debt, which following requests wait for. The rate can be scaled down while the cluster is
+ * under load.
+ */
+public class TokenBucket {
+
+  // Longest single sleep, so a stopped sync doesn't wait for the whole debt
+  private static final long MAX_SLEEP_NANOS = 100_000_000;
+
+  private final double ratePerSecond;
+  private double scale = 1.0;
+  private double tokens;
+  private long lastRefillNanos;
+
+  /**
+   * @param ratePerSecond number of tokens added every second
+   */
+  public TokenBucket(double ratePerSecond) {
+    this(ratePerSecond, System.nanoTime());
+  }
+
+  TokenBucket(double ratePerSecond, long nowNanos) {
+    if (ratePerSecond <= 0) {
+      throw new IllegalArgumentException("Rate of a token bucket must be positive");
+    }
+    this.ratePerSecond = ratePerSecond;
+    this.tokens = ratePerSecond;
+    this.lastRefillNanos = nowNanos;
+  }
+
+  /**
+   * Takes tokens from the bucket, waiting until they are available or until the sync stops.
+   *
+   * @return time spent waiting in nanoseconds
+   */
+  public long acquire(long amount, BooleanSupplier stopped) throws InterruptedException {
+    long waitNanos = reserve(amount);
+    await(waitNanos, stopped);
+    return waitNanos;
+  }
+
+  /**
+   * Waits for the given time or until the sync stops.
+   */
+  public static void await(long waitNanos, BooleanSupplier stopped) throws InterruptedException {
+    long deadline = System.nanoTime() + waitNanos;
+    long left = waitNanos;
+    while (left > 0 && !stopped.getAsBoolean()) {
+      long sleepNanos = Math.min(left, MAX_SLEEP_NANOS);
+      Thread.sleep(sleepNanos / 1_000_000, (int) (sleepNanos % 1_000_000));
+      left = deadline - System.nanoTime();
+    }
+  }
+
+  /**
+   * Takes tokens from the bucket without waiting.
+   *
+   * @return time in nanoseconds the caller must wait for the tokens
+   */
+  public long reserve(long amount) {
+    return reserve(amount, System.nanoTime());
+  }
+
+  /**
+   * Takes tokens from the bucket.
+   *
+   * @return time in nanoseconds until the bucket is out of debt, 0 if enough tokens were available
+   */
+  synchronized long reserve(long amount, long nowNanos) {
+    double rate = rate();
+    tokens = Math.min(rate, tokens + (nowNanos - lastRefillNanos) * rate / 1e9);
+    lastRefillNanos = nowNanos;
+    tokens -= amount;
+    if (tokens >= 0) {
+      return 0;
+    }
+
+    return (long) Math.ceil(-tokens / rate * 1e9);
+  }
+
+  /**
+   * Sets the fraction of the configured rate that is currently allowed.
+   */
+  public synchronized void setScale(double scale) {
+    this.scale = scale;
+  }
+
+  public synchronized double rate() {
+    return ratePerSecond * scale;
+  }
+}
@@ -0,0 +1,117 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups change events of every partition by transaction. Records of a transaction are buffered
+ * until its commit and then emitted together, so records of concurrent transactions of different
+ * partitions are not interleaved, and no checkpoint is taken while a transaction is partly
+ * emitted. Transactions are buffered whole however large they are, the caller charges
+ * {@link #bytes} to the {@link MemoryBudget}.
+ */
+public class TransactionBatcher {
+
+  private static class Change {
+
+    final RecordType type;
+    final Map<String, ValueType> row;
+
+    Change(RecordType type, Map<String, ValueType> row) {
+      this.type = type;
+      this.row = row;
+    }
+  }
+
+  private final ChangeCompactor.RecordEmitter emitter;
+  // Buffered records of open transactions, by partition
+  private final Map<Integer, List<Change>> transactions = new HashMap<>();
+  private int size;
+  private long bytes;
+
+  /**
+   * @param emitter callback that receives records of transactions
+   */
+  public TransactionBatcher(ChangeCompactor.RecordEmitter emitter) {
+    this.emitter = emitter;
+  }
+
+  public void begin(int partition) {
+    // The transaction may be received again after OBSERVE is restarted from a committed offset
+    discard(partition);
+    transactions.put(partition, new ArrayList<>());
+  }
+
+  public boolean inTransaction(int partition) {
+    return transactions.containsKey(partition);
+  }
+
+  /**
+   * Adds a record of the open transaction of the partition.
+   */
+  public void add(int partition, RecordType type, Map<String, ValueType> row) {
+    transactions.get(partition).add(new Change(type, row));
+    size++;
+    bytes += ChangeCompactor.estimateSize(row);
+  }
+
+  /**
+   * Emits buffered records of the open transaction of the partition and closes it.
+   */
+  public void commit(int partition) throws Exception {
+    List<Change> changes = transactions.remove(partition);
+    if (changes != null) {
+      emit(changes);
+    }
+  }
+
+  /**
+   * Drops records of all open transactions. They are received again when OBSERVE resumes from
+   * offsets of the last commits.
+   */
+  public void clear() {
+    transactions.clear();
+    size = 0;
+    bytes = 0;
+  }
+
+  private void discard(int partition) {
+    List<Change> changes = transactions.remove(partition);
+    if (changes != null) {
+      release(changes);
+    }
+  }
+
+  private void emit(List<Change> changes) throws Exception {
+    for (Change change : changes) {
+      emitter.emit(change.type, change.row);
+    }
+    release(changes);
+  }
+
+  private void release(List<Change> changes) {
+    for (Change change : changes) {
+      bytes -= ChangeCompactor.estimateSize(change.row);
+    }
+    size -= changes.size();
+    changes.clear();
+  }
+
+  /**
+   * Returns the number of buffered records.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns an estimated number of bytes held by buffered rows.
+   */
+  public long bytes() {
+    return bytes;
+  }
+}
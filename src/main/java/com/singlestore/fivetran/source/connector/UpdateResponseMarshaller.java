@@ -0,0 +1,87 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.SourceConnectorGrpc;
+import fivetran_sdk.v2.UpdateResponse;
+import io.grpc.KnownLength;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.ServiceDescriptor;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Marshaller of responses of the update stream that accepts records serialized by
+ * {@link RecordEncoder} besides {@link UpdateResponse} messages. Serialized records are written
+ * as is, other responses are serialized by the protobuf marshaller.
+ */
+public class UpdateResponseMarshaller implements MethodDescriptor.Marshaller<Object> {
+
+  private static class EncodedStream extends ByteArrayInputStream implements KnownLength {
+
+    EncodedStream(byte[] bytes) {
+      super(bytes);
+    }
+  }
+
+  private final MethodDescriptor.Marshaller<UpdateResponse> delegate;
+
+  public UpdateResponseMarshaller(MethodDescriptor.Marshaller<UpdateResponse> delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public InputStream stream(Object value) {
+    if (value instanceof RecordEncoder.Encoded) {
+      return new EncodedStream(((RecordEncoder.Encoded) value).bytes());
+    }
+
+    return delegate.stream((UpdateResponse) value);
+  }
+
+  @Override
+  public Object parse(InputStream stream) {
+    return delegate.parse(stream);
+  }
+
+  /**
+   * Returns the service definition with the update method using this marshaller for responses.
+   * Other methods are not changed.
+   */
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public static ServerServiceDefinition bind(ServerServiceDefinition definition) {
+    String updateMethodName = SourceConnectorGrpc.getUpdateMethod().getFullMethodName();
+    List<ServerMethodDefinition<?, ?>> methods = new ArrayList<>();
+    for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+      if (method.getMethodDescriptor().getFullMethodName().equals(updateMethodName)) {
+        MethodDescriptor<Object, UpdateResponse> descriptor =
+            (MethodDescriptor) method.getMethodDescriptor();
+        // Responses are passed to the marshaller unchanged, so the handler doesn't depend on
+        // their type
+        method = ServerMethodDefinition.create(
+            descriptor.toBuilder(descriptor.getRequestMarshaller(),
+                (MethodDescriptor.Marshaller) new UpdateResponseMarshaller(
+                    descriptor.getResponseMarshaller())).build(),
+            (ServerCallHandler) method.getServerCallHandler());
+      }
+      methods.add(method);
+    }
+
+    // Method descriptors of the service must be the ones of its methods
+    ServiceDescriptor original = definition.getServiceDescriptor();
+    ServiceDescriptor.Builder descriptor = ServiceDescriptor.newBuilder(original.getName())
+        .setSchemaDescriptor(original.getSchemaDescriptor());
+    for (ServerMethodDefinition<?, ?> method : methods) {
+      descriptor.addMethod(method.getMethodDescriptor());
+    }
+    ServerServiceDefinition.Builder builder = ServerServiceDefinition.builder(descriptor.build());
+    for (ServerMethodDefinition<?, ?> method : methods) {
+      builder.addMethod(method);
+    }
+
+    return builder.build();
+  }
+}
@@ -0,0 +1,225 @@
+package com.singlestore.fivetran.source.connector;
+
+import fivetran_sdk.v2.ValueType;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * OBSERVE cursor that keeps running between syncs of a table. Change events are spooled in a
+ * queue bounded both by the number of events and by the estimated bytes of their rows, and the
+ * next sync drains them instead of connecting and starting OBSERVE again. Spooled bytes are
+ * charged to the {@link MemoryBudget}, and the spool is also full while the budget is exceeded.
+ * The cursor can be used only by a sync whose state matches the position of the last drained
+ * event. If the spool overflows while no sync drains it, the cursor stops and is discarded.
+ */
+public class WarmCursor implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(WarmCursor.class);
+
+  private static final long NO_IDLE_TIMEOUT = Long.MAX_VALUE;
+  // Time a full spool waits for a sync to drain it before the cursor is stopped
+  private static final long SPOOL_OFFER_MILLIS = 100;
+  private static final long CLOSE_TIMEOUT_MILLIS = 10_000;
+
+  private final SingleStoreConnection conn;
+  // Permit of the connection of the cursor, released when the cursor is closed
+  private final SyncScheduler.Permit connection;
+  private final String cluster;
+  private final Set<String> selectedColumns;
+  private final int maxEvents;
+  private final long maxBytes;
+  private final BlockingQueue<ChangeEvent> spool = new LinkedBlockingQueue<>();
+  private final MemoryBudget budget;
+  private final MemoryBudget.Account memory;
+  // Estimated bytes of spooled rows, guarded by the spool
+  private long spooledBytes;
+  // Offsets a sync stores after consuming the events passed to it
+  private final OffsetTracker position;
+  // Offsets OBSERVE resumes from if it is restarted
+  private final OffsetTracker resumeOffsets;
+  private final Thread thread;
+  private volatile boolean draining;
+  private volatile boolean overflowed;
+  private volatile boolean finished;
+  private volatile boolean closed;
+  private volatile long lastUsedNanos = System.nanoTime();
+
+  private WarmCursor(SingleStoreConfiguration conf, Set<String> selectedColumns, State state,
+      MemoryBudget budget, SyncScheduler.Permit connection) {
+    this.conn = new SingleStoreConnection(conf);
+    this.connection = connection;
+    this.cluster = SyncScheduler.cluster(conf);
+    this.conn.observeIdleTimeoutMillis = NO_IDLE_TIMEOUT;
+    this.selectedColumns = selectedColumns;
+    this.maxEvents = conf.warmCursorSpoolSize();
+    this.maxBytes = conf.warmCursorSpoolBytes();
+    this.budget = budget;
+    this.memory = budget.newAccount(null);
+    this.position = new OffsetTracker(state);
+    this.resumeOffsets = new OffsetTracker(state);
+    this.thread = new Thread(this::run, "warm-cursor-" + conf.table());
+    this.thread.setDaemon(true);
+  }
+
+  /**
+   * Starts a cursor that resumes OBSERVE from the offsets of the state. The spool is bounded by
+   * {@code warm.cursor.spool.size} events and {@code warm.cursor.spool.bytes} bytes.
+   *
+   * @param budget     memory budget that is charged for spooled rows
+   * @param connection permit of the connection to the cluster, owned by the cursor
+   */
+  public static WarmCursor start(SingleStoreConfiguration conf, Set<String> selectedColumns,
+      State state, MemoryBudget budget, SyncScheduler.Permit connection) {
+    WarmCursor cursor = new WarmCursor(conf, selectedColumns, state, budget, connection);
+    cursor.thread.start();
+    return cursor;
+  }
+
+  private void run() {
+    try {
+      conn.observe(resumeOffsets.state(), selectedColumns, this::push);
+    } catch (Exception e) {
+      if (!conn.isCancelled()) {
+        logger.warn("Warm OBSERVE cursor failed, the next sync starts a new OBSERVE", e);
+      }
+    } finally {
+      finished = true;
+    }
+  }
+
+  private void push(String operation, Integer partition, String offset,
+      Map<String, ValueType> row) throws InterruptedException {
+    ChangeEvent event = new ChangeEvent(operation, partition, offset, row);
+    synchronized (spool) {
+      if (closed) {
+        // The memory account is closed, nobody drains the spool anymore
+        conn.stop();
+        return;
+      }
+      // An empty spool takes any event, so a row larger than the limit doesn't stop the cursor
+      while (!spool.isEmpty() && (spool.size() >= maxEvents
+          || spooledBytes + event.estimatedBytes() > maxBytes || budget.isExceeded())) {
+        if (!draining) {
+          logger.info(String.format("Spool of the warm OBSERVE cursor is full (%d events, %d "
+              + "bytes), stopping the cursor", spool.size(), spooledBytes));
+          overflowed = true;
+          conn.stop();
+          return;
+        }
+        spool.wait(SPOOL_OFFER_MILLIS);
+      }
+
+      spool.add(event);
+      spooledBytes += event.estimatedBytes();
+      memory.setBuffered(spooledBytes);
+    }
+
+    resumeOffsets.advance(event);
+  }
+
+  private ChangeEvent poll(long timeoutMillis) throws InterruptedException {
+    ChangeEvent event = spool.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+    if (event != null) {
+      synchronized (spool) {
+        spooledBytes -= event.estimatedBytes();
+        memory.setBuffered(spooledBytes);
+        spool.notifyAll();
+      }
+    }
+
+    return event;
+  }
+
+  /**
+   * Returns true if a sync that resumes from the state can drain the cursor. Records of a
+   * transaction that was open when the last sync ended were dropped by that sync, so the cursor
+   * can't be used after it.
+   */
+  public boolean linesUpWith(State state) {
+    return isHealthy() && !position.inTransaction() && position.state().equals(state);
+  }
+
+  /**
+   * Returns false if the cursor has stopped and events after its spool will never be received.
+   */
+  public boolean isHealthy() {
+    return !overflowed && !finished;
+  }
+
+  /**
+   * Passes spooled and new change events to the consumer, until no events are received for the
+   * idle timeout or the sync stops.
+   */
+  public void drain(ChangePipeline.Sink consumer, BooleanSupplier stopped,
+      SyncMetrics metrics) throws Exception {
+    draining = true;
+    try {
+      while (!stopped.getAsBoolean()) {
+        long start = System.nanoTime();
+        ChangeEvent event = poll(TimedResultSet.DEFAULT_TIMEOUT_MILLIS);
+        if (event == null) {
+          return;
+        }
+        metrics.record(SyncMetrics.Stage.WAIT, start);
+
+        consumer.accept(event);
+        position.advance(event);
+      }
+    } finally {
+      draining = false;
+      lastUsedNanos = System.nanoTime();
+    }
+  }
+
+  public int spooled() {
+    return spool.size();
+  }
+
+  public long spooledBytes() {
+    synchronized (spool) {
+      return spooledBytes;
+    }
+  }
+
+  /**
+   * Returns the cluster of the cursor, see {@link SyncScheduler#cluster}.
+   */
+  public String cluster() {
+    return cluster;
+  }
+
+  public long idleNanos() {
+    return System.nanoTime() - lastUsedNanos;
+  }
+
+  @Override
+  public void close() {
+    synchronized (spool) {
+      closed = true;
+      spool.notifyAll();
+    }
+    conn.cancel();
+    try {
+      thread.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    try {
+      conn.close();
+    } catch (Exception e) {
+      logger.warn("Failed to close the connection of the warm OBSERVE cursor", e);
+    }
+    connection.close();
+    synchronized (spool) {
+      spool.clear();
+      spooledBytes = 0;
+      memory.close();
+    }
+  }
+}
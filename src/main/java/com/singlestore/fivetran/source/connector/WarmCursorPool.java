@@ -0,0 +1,172 @@
+package com.singlestore.fivetran.source.connector;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warm OBSERVE cursors that wait for the next sync of their tables. A sync takes the cursor of its
+ * configuration for the time it runs and returns it when it is done. Cursors that are not taken
+ * for the idle timeout are closed, so tables that are no longer synced don't hold connections.
+ */
+public class WarmCursorPool implements AutoCloseable {
+
+  private static final Logger logger = LoggerFactory.getLogger(WarmCursorPool.class);
+
+  private final long idleTimeoutNanos;
+  private final Map<String, WarmCursor> cursors = new HashMap<>();
+  private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(
+      r -> {
+        Thread thread = new Thread(r, "warm-cursor-evictor");
+        thread.setDaemon(true);
+        return thread;
+      });
+  private boolean closed;
+  private long hits;
+
+  /**
+   * @param idleTimeoutMillis time after which a cursor that is not taken by a sync is closed
+   */
+  public WarmCursorPool(long idleTimeoutMillis) {
+    this.idleTimeoutNanos = idleTimeoutMillis * 1_000_000;
+    long checkIntervalMillis = Math.max(1, idleTimeoutMillis / 10);
+    evictor.scheduleWithFixedDelay(this::evictIdle, checkIntervalMillis, checkIntervalMillis,
+        TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Returns the key of cursors of syncs with the given configuration.
+   */
+  public static String key(Map<String, String> configuration, Set<String> selectedColumns) {
+    return String.format("%s %s", new TreeMap<>(configuration),
+        selectedColumns == null ? "*" : new TreeSet<>(selectedColumns));
+  }
+
+  /**
+   * Takes the cursor of the configuration if a sync resuming from the state can drain it.
+   * Cursors that don't line up with the state are closed.
+   *
+   * @return the cursor, or null if the sync must start a new OBSERVE
+   */
+  public WarmCursor take(String key, State state) {
+    WarmCursor cursor;
+    synchronized (this) {
+      cursor = cursors.remove(key);
+      if (cursor == null) {
+        return null;
+      }
+      if (cursor.linesUpWith(state)) {
+        hits++;
+        return cursor;
+      }
+    }
+
+    logger.info("Warm OBSERVE cursor doesn't match the state of the sync, starting a new OBSERVE");
+    cursor.close();
+    return null;
+  }
+
+  /**
+   * Returns the cursor to the pool after a sync. Cursors that stopped are closed.
+   */
+  public void release(String key, WarmCursor cursor) {
+    WarmCursor previous = null;
+    synchronized (this) {
+      if (!closed && cursor.isHealthy()) {
+        previous = cursors.put(key, cursor);
+        cursor = null;
+      }
+    }
+
+    if (previous != null) {
+      previous.close();
+    }
+    if (cursor != null) {
+      cursor.close();
+    }
+  }
+
+  /**
+   * Returns the number of syncs that drained a warm cursor.
+   */
+  public synchronized long hits() {
+    return hits;
+  }
+
+  public synchronized int size() {
+    return cursors.size();
+  }
+
+  /**
+   * Closes the cursor of the cluster that has not been taken for the longest time. Used when a
+   * sync needs the connection held by the cursor.
+   *
+   * @return false if no cursor of the cluster is in the pool
+   */
+  public boolean evictIdlest(String cluster) {
+    WarmCursor evicted = null;
+    String evictedKey = null;
+    synchronized (this) {
+      for (Map.Entry<String, WarmCursor> entry : cursors.entrySet()) {
+        WarmCursor cursor = entry.getValue();
+        if (cursor.cluster().equals(cluster)
+            && (evicted == null || cursor.idleNanos() > evicted.idleNanos())) {
+          evicted = cursor;
+          evictedKey = entry.getKey();
+        }
+      }
+      if (evicted == null) {
+        return false;
+      }
+      cursors.remove(evictedKey);
+    }
+
+    logger.info(String.format("Closing a warm OBSERVE cursor of the cluster %s, its connection "
+        + "is needed by a sync", cluster));
+    evicted.close();
+    return true;
+  }
+
+  private void evictIdle() {
+    List<WarmCursor> evicted = new ArrayList<>();
+    synchronized (this) {
+      Iterator<WarmCursor> it = cursors.values().iterator();
+      while (it.hasNext()) {
+        WarmCursor cursor = it.next();
+        if (!cursor.isHealthy() || cursor.idleNanos() > idleTimeoutNanos) {
+          it.remove();
+          evicted.add(cursor);
+        }
+      }
+    }
+
+    for (WarmCursor cursor : evicted) {
+      cursor.close();
+    }
+  }
+
+  @Override
+  public void close() {
+    List<WarmCursor> all;
+    synchronized (this) {
+      closed = true;
+      all = new ArrayList<>(cursors.values());
+      cursors.clear();
+    }
+
+    evictor.shutdownNow();
+    for (WarmCursor cursor : all) {
+      cursor.close();
+    }
+  }
+}
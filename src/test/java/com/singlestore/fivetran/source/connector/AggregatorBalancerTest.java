@@ -0,0 +1,122 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class AggregatorBalancerTest {
+
+  private static final AggregatorBalancer.Endpoint agg1 =
+      new AggregatorBalancer.Endpoint("agg1", 3306);
+  private static final AggregatorBalancer.Endpoint agg2 =
+      new AggregatorBalancer.Endpoint("agg2", 3306);
+  private static final AggregatorBalancer.Endpoint agg3 =
+      new AggregatorBalancer.Endpoint("agg3", 3306);
+  private static final List<AggregatorBalancer.Endpoint> endpoints =
+      Arrays.asList(agg1, agg2, agg3);
+
+  @Test
+  public void leastConnections() {
+    AggregatorBalancer balancer = new AggregatorBalancer(60_000, 60_000);
+    assertEquals(endpoints, balancer.order(endpoints));
+
+    balancer.connected(agg1);
+    assertEquals(Arrays.asList(agg2, agg3, agg1), balancer.order(endpoints));
+    balancer.connected(agg2);
+    balancer.connected(agg3);
+    // Ties are broken by the time an aggregator was last chosen
+    assertEquals(Arrays.asList(agg1, agg2, agg3), balancer.order(endpoints));
+
+    balancer.released(agg2);
+    assertEquals(Arrays.asList(agg2, agg1, agg3), balancer.order(endpoints));
+    assertEquals(0, balancer.openConnections(agg2));
+    balancer.released(agg2);
+    assertEquals(0, balancer.openConnections(agg2));
+  }
+
+  @Test
+  public void failures() throws Exception {
+    AggregatorBalancer balancer = new AggregatorBalancer(50, 200);
+    balancer.failed(agg1);
+    assertTrue(balancer.isDown(agg1));
+    assertEquals(Arrays.asList(agg2, agg3, agg1), balancer.order(endpoints));
+
+    balancer.failed(agg2);
+    balancer.failed(agg2);
+    // agg1 is expected to recover sooner
+    assertEquals(Arrays.asList(agg3, agg1, agg2), balancer.order(endpoints));
+
+    Thread.sleep(60);
+    assertFalse(balancer.isDown(agg1));
+    assertTrue(balancer.isDown(agg2));
+    assertEquals(Arrays.asList(agg1, agg3, agg2), balancer.order(endpoints));
+
+    // A successful connection resets the period
+    balancer.connected(agg2);
+    assertFalse(balancer.isDown(agg2));
+    balancer.failed(agg2);
+    Thread.sleep(60);
+    assertFalse(balancer.isDown(agg2));
+  }
+
+  @Test
+  public void maxDownPeriod() throws Exception {
+    AggregatorBalancer balancer = new AggregatorBalancer(50, 100);
+    for (int i = 0; i < 10; i++) {
+      balancer.failed(agg1);
+    }
+    assertTrue(balancer.isDown(agg1));
+    Thread.sleep(110);
+    assertFalse(balancer.isDown(agg1));
+  }
+
+  @Test
+  public void ignoresUnknownEndpoint() {
+    AggregatorBalancer balancer = new AggregatorBalancer(60_000, 60_000);
+    balancer.failed(null);
+    balancer.released(null);
+    balancer.connected(null);
+    assertEquals(endpoints, balancer.order(endpoints));
+  }
+
+  @Test
+  public void healthChecks() {
+    AggregatorBalancer balancer = new AggregatorBalancer(60_000, 60_000);
+    balancer.failed(agg1);
+    balancer.failed(agg2);
+    balancer.failed(agg2);
+
+    // Only endpoints that are down are probed
+    List<AggregatorBalancer.Endpoint> probed = new ArrayList<>();
+    balancer.checkDownEndpoints(endpoint -> {
+      probed.add(endpoint);
+      return endpoint.equals(agg2);
+    });
+    probed.sort(Comparator.comparing(AggregatorBalancer.Endpoint::host));
+    assertEquals(Arrays.asList(agg1, agg2), probed);
+    assertTrue(balancer.isDown(agg1));
+    assertFalse(balancer.isDown(agg2));
+    assertEquals(Arrays.asList(agg2, agg3, agg1), balancer.order(endpoints));
+  }
+
+  @Test
+  public void acceptsConnections() throws Exception {
+    try (ServerSocket server = new ServerSocket(0)) {
+      assertTrue(AggregatorBalancer.acceptsConnections(
+          new AggregatorBalancer.Endpoint("localhost", server.getLocalPort())));
+    }
+    int closedPort;
+    try (ServerSocket server = new ServerSocket(0)) {
+      closedPort = server.getLocalPort();
+    }
+    assertFalse(AggregatorBalancer.acceptsConnections(
+        new AggregatorBalancer.Endpoint("localhost", closedPort)));
+  }
+}
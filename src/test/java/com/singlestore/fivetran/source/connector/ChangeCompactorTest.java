@@ -0,0 +1,85 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.google.common.collect.ImmutableMap;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class ChangeCompactorTest {
+
+  static class Emitted {
+
+    RecordType type;
+    Map<String, ValueType> row;
+
+    public Emitted(RecordType type, Map<String, ValueType> row) {
+      this.type = type;
+      this.row = row;
+    }
+  }
+
+  private static Map<String, ValueType> row(int a, int b) {
+    return ImmutableMap.of("a", ValueType.newBuilder().setInt(a).build(),
+        "b", ValueType.newBuilder().setInt(b).build());
+  }
+
+  private static Map<String, ValueType> key(int a) {
+    return ImmutableMap.of("a", ValueType.newBuilder().setInt(a).build());
+  }
+
+  @Test
+  public void keepsLastChange() throws Exception {
+    List<Emitted> emitted = new ArrayList<>();
+    ChangeCompactor compactor = new ChangeCompactor(Collections.singletonList("a"), 100,
+        (type, row) -> emitted.add(new Emitted(type, row)));
+
+    for (int i = 0; i < 1000; i++) {
+      compactor.add(RecordType.UPDATE, row(1, i));
+    }
+    compactor.add(RecordType.UPSERT, row(2, 1));
+    compactor.add(RecordType.UPDATE, row(2, 2));
+    compactor.add(RecordType.UPSERT, row(3, 1));
+    compactor.add(RecordType.DELETE, key(3));
+    assertEquals(0, emitted.size());
+    assertEquals(3, compactor.size());
+
+    compactor.flush();
+    assertEquals(0, compactor.size());
+    assertEquals(3, emitted.size());
+
+    assertEquals(RecordType.UPDATE, emitted.get(0).type);
+    assertEquals(row(1, 999), emitted.get(0).row);
+    assertEquals(RecordType.UPSERT, emitted.get(1).type);
+    assertEquals(row(2, 2), emitted.get(1).row);
+    assertEquals(RecordType.DELETE, emitted.get(2).type);
+    assertEquals(key(3), emitted.get(2).row);
+  }
+
+  @Test
+  public void evictsOldestKey() throws Exception {
+    List<Emitted> emitted = new ArrayList<>();
+    ChangeCompactor compactor = new ChangeCompactor(Collections.singletonList("a"), 2,
+        (type, row) -> emitted.add(new Emitted(type, row)));
+
+    compactor.add(RecordType.UPSERT, row(1, 1));
+    compactor.add(RecordType.UPSERT, row(2, 1));
+    compactor.add(RecordType.UPDATE, row(1, 2));
+    assertEquals(0, emitted.size());
+
+    compactor.add(RecordType.UPSERT, row(3, 1));
+    assertEquals(1, emitted.size());
+    assertEquals(row(2, 1), emitted.get(0).row);
+
+    compactor.flush();
+    assertEquals(3, emitted.size());
+    assertEquals(RecordType.UPSERT, emitted.get(1).type);
+    assertEquals(row(1, 2), emitted.get(1).row);
+    assertEquals(row(3, 1), emitted.get(2).row);
+  }
+}
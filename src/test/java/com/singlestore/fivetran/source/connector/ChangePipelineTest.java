@@ -0,0 +1,180 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Test;
+
+public class ChangePipelineTest {
+
+  private static ChangeEvent event(String operation, int offset) {
+    return new ChangeEvent(operation, 0, String.valueOf(offset), null);
+  }
+
+  private static List<String> offsets(List<ChangeEvent> events) {
+    return events.stream().map(ChangeEvent::offset).collect(Collectors.toList());
+  }
+
+  /**
+   * Stage that buffers events and passes them in batches.
+   */
+  private static class Batch implements ChangePipeline.Stage {
+
+    private final int size;
+    private final List<ChangeEvent> buffer = new ArrayList<>();
+
+    Batch(int size) {
+      this.size = size;
+    }
+
+    @Override
+    public void process(ChangeEvent event, ChangePipeline.Downstream next) throws Exception {
+      buffer.add(event);
+      if (buffer.size() == size) {
+        flush(next);
+      }
+    }
+
+    @Override
+    public void flush(ChangePipeline.Downstream next) throws Exception {
+      for (ChangeEvent event : buffer) {
+        next.emit(event);
+      }
+      buffer.clear();
+    }
+  }
+
+  @Test
+  public void noStages() throws Exception {
+    List<ChangeEvent> sink = new ArrayList<>();
+    try (ChangePipeline pipeline = ChangePipeline.builder().build(sink::add)) {
+      ChangeEvent event = event("Insert", 1);
+      pipeline.accept(event);
+      pipeline.finish();
+      assertEquals(1, sink.size());
+      assertSame(event, sink.get(0));
+    }
+  }
+
+  @Test
+  public void filterAndTransform() throws Exception {
+    List<ChangeEvent> sink = new ArrayList<>();
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("rows", ChangePipeline.filter(ChangeEvent::isRowChange))
+        .stage("renumber", ChangePipeline.transform(
+            e -> new ChangeEvent(e.operation(), e.partition(), e.offset() + "0", e.row())))
+        .build(sink::add)) {
+      pipeline.accept(event("BeginTransaction", 1));
+      pipeline.accept(event("Insert", 2));
+      pipeline.accept(event("Update", 3));
+      pipeline.accept(event("Delete", 4));
+      pipeline.accept(event("CommitTransaction", 5));
+      pipeline.finish();
+    }
+
+    assertEquals(Arrays.asList("20", "30", "40"), offsets(sink));
+  }
+
+  @Test
+  public void flush() throws Exception {
+    List<ChangeEvent> sink = new ArrayList<>();
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("batch", new Batch(3))
+        .build(sink::add)) {
+      for (int i = 0; i < 5; i++) {
+        pipeline.accept(event("Insert", i));
+      }
+      assertEquals(Arrays.asList("0", "1", "2"), offsets(sink));
+      pipeline.finish();
+    }
+
+    assertEquals(Arrays.asList("0", "1", "2", "3", "4"), offsets(sink));
+  }
+
+  @Test
+  public void threadedStagesKeepOrder() throws Exception {
+    List<ChangeEvent> sink = new ArrayList<>();
+    List<String> expected = new ArrayList<>();
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("batch", new Batch(7), ChangePipeline.Threading.threaded(4))
+        .stage("rows", ChangePipeline.filter(ChangeEvent::isRowChange))
+        .stage("batch2", new Batch(5), ChangePipeline.Threading.threaded(2))
+        .build(sink::add)) {
+      for (int i = 0; i < 1000; i++) {
+        boolean row = i % 3 != 0;
+        pipeline.accept(event(row ? "Insert" : "CommitTransaction", i));
+        if (row) {
+          expected.add(String.valueOf(i));
+        }
+      }
+      pipeline.finish();
+    }
+
+    assertEquals(expected, offsets(sink));
+  }
+
+  @Test
+  public void lastEventBeforeFinish() throws Exception {
+    // Passes the last event around the time the threaded stage stops waiting for one, so the
+    // event is queued after the stage found the queue empty and before it sees the source is done
+    for (int i = 0; i < 20; i++) {
+      List<ChangeEvent> sink = new ArrayList<>();
+      try (ChangePipeline pipeline = ChangePipeline.builder()
+          .stage("batch", new Batch(2), ChangePipeline.Threading.threaded(1))
+          .build(sink::add)) {
+        Thread.sleep(ChangePipeline.POLL_MILLIS - 10 + i);
+        pipeline.accept(event("Insert", i));
+        pipeline.finish();
+      }
+
+      assertEquals(Arrays.asList(String.valueOf(i)), offsets(sink));
+    }
+  }
+
+  @Test
+  public void stageFailure() throws Exception {
+    IllegalStateException failure = new IllegalStateException("stage failed");
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("fail", (event, next) -> {
+          throw failure;
+        }, ChangePipeline.Threading.threaded(1))
+        .build(new ChangePipeline.DiscardSink())) {
+      // The failure reaches the source either when it passes an event or when it finishes
+      Exception e = assertThrows(Exception.class, () -> {
+        for (int i = 0; i < 100; i++) {
+          pipeline.accept(event("Insert", i));
+        }
+        pipeline.finish();
+      });
+      assertSame(failure, e);
+    }
+  }
+
+  @Test
+  public void discardSink() throws Exception {
+    ChangePipeline.DiscardSink sink = new ChangePipeline.DiscardSink();
+    try (ChangePipeline pipeline = ChangePipeline.builder()
+        .stage("batch", new Batch(2), ChangePipeline.Threading.threaded(8))
+        .build(sink)) {
+      pipeline.accept(event("BeginTransaction", 1));
+      pipeline.accept(event("Insert", 2));
+      pipeline.accept(event("Delete", 3));
+      pipeline.accept(event("CommitTransaction", 4));
+      pipeline.accept(event("BeginSnapshot", 5));
+      pipeline.finish();
+    }
+
+    assertEquals(5, sink.events());
+    assertEquals(2, sink.rowChanges());
+  }
+
+  @Test
+  public void invalidQueueCapacity() {
+    assertThrows(IllegalArgumentException.class, () -> ChangePipeline.Threading.threaded(0));
+  }
+}
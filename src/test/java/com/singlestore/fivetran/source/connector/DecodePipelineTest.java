@@ -0,0 +1,129 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+public class DecodePipelineTest {
+
+  private static final int PARTITIONS = 4;
+
+  @Test
+  public void keepsOrderWithinPartition() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      int rows = 10_000;
+      Random random = new Random(42);
+      AtomicInteger read = new AtomicInteger();
+      Map<Integer, List<Integer>> consumed = new HashMap<>();
+
+      new DecodePipeline(executor, 64).run(() -> {
+        int i = read.getAndIncrement();
+        if (i == rows) {
+          return null;
+        }
+        int delay = random.nextInt(100);
+        return new DecodePipeline.RawEvent(
+            new ChangeEvent(ChangeEvent.INSERT, i % PARTITIONS, Integer.toString(i), null), () -> {
+              // Rows are decoded in a random order
+              LockSupport.parkNanos(delay * 1_000L);
+              return null;
+            });
+      }, event -> consumed.computeIfAbsent(event.partition(), p -> new ArrayList<>())
+          .add(Integer.parseInt(event.offset())));
+
+      int total = 0;
+      for (int partition = 0; partition < PARTITIONS; partition++) {
+        List<Integer> offsets = consumed.get(partition);
+        for (int i = 0; i < offsets.size(); i++) {
+          assertEquals(partition + i * PARTITIONS, offsets.get(i));
+        }
+        total += offsets.size();
+      }
+      assertEquals(rows, total);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void propagatesDecodeError() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger read = new AtomicInteger();
+      AtomicInteger consumed = new AtomicInteger();
+      Exception e = assertThrows(IllegalStateException.class,
+          () -> new DecodePipeline(executor, 16).run(() -> {
+            int i = read.getAndIncrement();
+            return new DecodePipeline.RawEvent(
+                new ChangeEvent(ChangeEvent.INSERT, 0, Integer.toString(i), null), () -> {
+                  if (i == 100) {
+                    throw new IllegalStateException("decode failed");
+                  }
+                  return null;
+                });
+          }, event -> consumed.incrementAndGet()));
+
+      assertEquals("decode failed", e.getMessage());
+      assertEquals(100, consumed.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void propagatesReaderError() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger read = new AtomicInteger();
+      Exception e = assertThrows(Exception.class,
+          () -> new DecodePipeline(executor, 16).run(() -> {
+            if (read.getAndIncrement() == 10) {
+              throw new Exception("read failed");
+            }
+            return new DecodePipeline.RawEvent(new ChangeEvent(ChangeEvent.INSERT, 0, "", null),
+                () -> null);
+          }, event -> {
+          }));
+
+      assertEquals("read failed", e.getMessage());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void stopsReaderOnConsumerError() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      AtomicInteger read = new AtomicInteger();
+      assertThrows(IllegalStateException.class,
+          () -> new DecodePipeline(executor, 16).run(
+              () -> new DecodePipeline.RawEvent(
+                  new ChangeEvent(ChangeEvent.INSERT, read.getAndIncrement() % 2, "", null),
+                  () -> null),
+              event -> {
+                throw new IllegalStateException("consume failed");
+              }));
+
+      // The reader can't read more rows than the pipeline holds
+      int readAfterError = read.get();
+      Thread.sleep(100);
+      assertEquals(readAfterError, read.get());
+      assertTrue(readAfterError <= 17);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,161 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class DiskSpoolTest {
+
+  private static final int EVENTS = 1000;
+
+  /**
+   * Source that passes the given number of inserts, taking a work slot for every event the same
+   * way as OBSERVE does.
+   */
+  private static DiskSpool.Source source(int events, SyncScheduler.Permit permit) {
+    return (state, consumer) -> {
+      for (int i = 0; i < events; i++) {
+        permit.beginWork();
+        try {
+          consumer.accept(
+              new ChangeEvent(ChangeEvent.INSERT, i % 4, String.format("%08d", i), null));
+        } finally {
+          permit.endWork();
+        }
+      }
+    };
+  }
+
+  private static long segmentFiles(Path directory) throws IOException {
+    try (Stream<Path> files = Files.walk(directory)) {
+      return files.filter(Files::isRegularFile).count();
+    }
+  }
+
+  @Test
+  public void keepsOrder() throws Exception {
+    Path directory = Files.createTempDirectory("spool");
+    SyncScheduler.Permit permit = SyncScheduler.unlimited().new Permit();
+    List<String> offsets = new ArrayList<>();
+    AtomicBoolean stopped = new AtomicBoolean();
+    try (DiskSpool spool = new DiskSpool(new DiskSpool.Settings(directory, 256, 1024), permit)) {
+      spool.observe(source(EVENTS, permit), new State(4), event -> {
+        assertEquals(ChangeEvent.INSERT, event.operation());
+        assertEquals(offsets.size() % 4, event.partition());
+        offsets.add(event.offset());
+      }, () -> stopped.set(true), stopped::get);
+
+      assertEquals(0, spool.unreadBytes());
+      assertTrue(spool.peakBytes() <= 1024);
+    }
+
+    assertEquals(EVENTS, offsets.size());
+    for (int i = 0; i < EVENTS; i++) {
+      assertEquals(String.format("%08d", i), offsets.get(i));
+    }
+    // A source that ends by itself is not stopped
+    assertFalse(stopped.get());
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  public void deletesCheckpointedSegments() throws Exception {
+    Path directory = Files.createTempDirectory("spool");
+    SyncScheduler.Permit permit = SyncScheduler.unlimited().new Permit();
+    AtomicLong events = new AtomicLong();
+    AtomicLong maxFiles = new AtomicLong();
+    try (DiskSpool spool = new DiskSpool(new DiskSpool.Settings(directory, 256, 1024), permit)) {
+      spool.observe(source(EVENTS, permit), new State(4), event -> {
+        if (events.incrementAndGet() % 10 == 0) {
+          spool.checkpointed();
+          maxFiles.set(Math.max(maxFiles.get(), segmentFiles(directory)));
+        }
+      }, () -> {
+      }, () -> false);
+    }
+
+    assertEquals(EVENTS, events.get());
+    // About a hundred segments are written, but only the unread ones and the ones read since the
+    // last checkpoint exist at a time
+    assertTrue(maxFiles.get() > 0);
+    assertTrue(maxFiles.get() <= 8, "segment files: " + maxFiles.get());
+  }
+
+  @Test
+  public void releasesWorkSlotWhileFull() throws Exception {
+    Path directory = Files.createTempDirectory("spool");
+    SyncScheduler.Permit permit = new SyncScheduler(1, 1, 1).new Permit();
+    AtomicLong events = new AtomicLong();
+    try (DiskSpool spool = new DiskSpool(new DiskSpool.Settings(directory, 256, 1024), permit)) {
+      spool.observe(source(EVENTS, permit), new State(4), event -> {
+        if (events.incrementAndGet() == 1) {
+          while (spool.unreadBytes() < 900) {
+            Thread.sleep(10);
+          }
+          Thread.sleep(100);
+
+          // OBSERVE waits for the sync, so the only work slot is free
+          Thread other = new Thread(() -> {
+            try {
+              permit.beginWork();
+              permit.endWork();
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          });
+          other.setDaemon(true);
+          other.start();
+          other.join(10_000);
+          assertFalse(other.isAlive());
+        }
+      }, () -> {
+      }, () -> false);
+    }
+
+    assertEquals(EVENTS, events.get());
+  }
+
+  @Test
+  public void stopsSourceWhenReaderFails() throws Exception {
+    Path directory = Files.createTempDirectory("spool");
+    SyncScheduler.Permit permit = SyncScheduler.unlimited().new Permit();
+    AtomicBoolean stopped = new AtomicBoolean();
+    IllegalStateException failure = new IllegalStateException("consumer failed");
+    try (DiskSpool spool = new DiskSpool(new DiskSpool.Settings(directory, 256, 1024), permit)) {
+      // The source runs until it is stopped
+      DiskSpool.Source source = (state, consumer) -> {
+        for (int i = 0; !stopped.get(); i++) {
+          permit.beginWork();
+          try {
+            consumer.accept(new ChangeEvent(ChangeEvent.INSERT, 0, String.format("%08d", i), null));
+          } finally {
+            permit.endWork();
+          }
+        }
+      };
+      Exception e = assertThrows(Exception.class, () -> spool.observe(source, new State(1),
+          event -> {
+            if (event.offset().equals("00000005")) {
+              throw failure;
+            }
+          }, () -> stopped.set(true), stopped::get));
+      assertSame(failure, e);
+    }
+
+    assertTrue(stopped.get());
+  }
+}
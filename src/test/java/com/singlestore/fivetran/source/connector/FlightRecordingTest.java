@@ -0,0 +1,62 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+
+public class FlightRecordingTest {
+
+  @Test
+  public void recordsSyncEvents() throws Exception {
+    Path directory = Files.createTempDirectory("flightRecording");
+    FlightRecording recording = new FlightRecording(directory, 1);
+    assertFalse(recording.isRecording());
+
+    // A recording started without a duration lasts the default duration
+    Path file = Paths.get(recording.start());
+    assertTrue(recording.isRecording());
+    // A running recording is not started again
+    assertEquals(file, Paths.get(recording.start(1)));
+
+    SyncEvents.LargeRow event = new SyncEvents.LargeRow();
+    event.table = "recordsSyncEvents";
+    event.type = "UPSERT";
+    event.columns = 3;
+    event.bytes = SyncEvents.LARGE_ROW_BYTES;
+    event.commit();
+
+    // The file is written after the recording stops, so it is read until it is complete
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    List<RecordedEvent> events = null;
+    while (events == null) {
+      assertTrue(System.nanoTime() < deadline);
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+      if (recording.isRecording() || !Files.exists(file)) {
+        continue;
+      }
+      try {
+        events = RecordingFile.readAllEvents(file);
+      } catch (IOException e) {
+        // Not written yet
+      }
+    }
+
+    RecordedEvent largeRow = events.stream()
+        .filter(e -> e.getEventType().getName().equals("com.singlestore.fivetran.LargeRow"))
+        .findFirst()
+        .orElseThrow(AssertionError::new);
+    assertEquals("recordsSyncEvents", largeRow.getString("table"));
+    assertEquals(3, largeRow.getInt("columns"));
+  }
+}
@@ -3,7 +3,10 @@ package com.singlestore.fivetran.source.connector;
 import com.google.common.collect.ImmutableMap;
 import java.sql.Connection;
 import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Map;
 import java.util.Properties;
 import org.junit.jupiter.api.BeforeAll;
 
@@ -15,9 +18,36 @@ public class IntegrationTestBase {
   static String password = System.getenv("ROOT_PASSWORD");
   static String database = "db";
 
+  static Map<String, String> getConfigMap(String table) {
+    return ImmutableMap.of("host", host,
+        "port", port, "user", user, "password", password, "database", database, "table", table);
+  }
+
   static SingleStoreConfiguration getConfig(String table) {
-    return new SingleStoreConfiguration(ImmutableMap.of("host", host,
-        "port", port, "user", user, "password", password, "database", database, "table", table));
+    return new SingleStoreConfiguration(getConfigMap(table));
+  }
+
+  /**
+   * Makes offsets of the table taken before the call too stale to resume OBSERVE from. Rows are
+   * changed and the database is snapshotted several times while only one snapshot is kept, so
+   * the logs that contain the offsets are removed. The table must have an INT column b.
+   */
+  static void makeOffsetsStale(Statement stmt, String table) throws SQLException {
+    String snapshotsToKeep;
+    try (ResultSet rs = stmt.executeQuery("SELECT @@snapshots_to_keep")) {
+      rs.next();
+      snapshotsToKeep = rs.getString(1);
+    }
+
+    stmt.execute("SET GLOBAL snapshots_to_keep = 1");
+    try {
+      for (int i = 0; i < 3; i++) {
+        stmt.execute(String.format("UPDATE %s SET b = b + 1", table));
+        stmt.execute(String.format("SNAPSHOT DATABASE %s", database));
+      }
+    } finally {
+      stmt.execute(String.format("SET GLOBAL snapshots_to_keep = %s", snapshotsToKeep));
+    }
   }
 
   @BeforeAll
@@ -0,0 +1,187 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import org.junit.jupiter.api.Test;
+
+public class MemoryBudgetTest {
+
+  static class NoopObserver implements StreamObserver<Object> {
+
+    @Override
+    public void onNext(Object value) {
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+
+  /**
+   * Stream with flow control whose readiness is set by the test.
+   */
+  static class FlowControlledObserver extends ServerCallStreamObserver<Object> {
+
+    volatile boolean ready;
+    volatile boolean cancelled;
+
+    @Override
+    public boolean isReady() {
+      return ready;
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return cancelled;
+    }
+
+    @Override
+    public void setOnReadyHandler(Runnable onReadyHandler) {
+    }
+
+    @Override
+    public void setOnCancelHandler(Runnable onCancelHandler) {
+    }
+
+    @Override
+    public void disableAutoInboundFlowControl() {
+    }
+
+    @Override
+    public void request(int count) {
+    }
+
+    @Override
+    public void setMessageCompression(boolean enable) {
+    }
+
+    @Override
+    public void setCompression(String compression) {
+    }
+
+    @Override
+    public void onNext(Object value) {
+    }
+
+    @Override
+    public void onError(Throwable t) {
+    }
+
+    @Override
+    public void onCompleted() {
+    }
+  }
+
+  @Test
+  public void accountsBufferedBytes() {
+    MemoryBudget budget = new MemoryBudget(100);
+    try (MemoryBudget.Account first = budget.newAccount(new NoopObserver());
+        MemoryBudget.Account second = budget.newAccount(new NoopObserver())) {
+      first.setBuffered(30);
+      second.setBuffered(50);
+      assertEquals(80, budget.used());
+
+      first.setBuffered(10);
+      assertEquals(60, budget.used());
+      assertEquals(30, first.peak());
+      assertEquals(50, second.peak());
+
+      second.close();
+      assertEquals(10, budget.used());
+    }
+    assertEquals(0, budget.used());
+  }
+
+  @Test
+  public void releasesDrainedResponses() throws InterruptedException {
+    MemoryBudget budget = new MemoryBudget(100);
+    try (MemoryBudget.Account account = budget.newAccount(new NoopObserver())) {
+      // Streams without flow control are considered drained right after a response is sent
+      account.sent(1000);
+      assertEquals(0, budget.used());
+      assertEquals(1000, account.peak());
+      assertFalse(account.isOverBudget());
+
+      account.throttle();
+      assertEquals(0, budget.used());
+    }
+  }
+
+  @Test
+  public void releasesFlushedResponses() throws InterruptedException {
+    long threshold = MemoryBudget.ON_READY_THRESHOLD_BYTES;
+    MemoryBudget budget = new MemoryBudget(4 * threshold);
+    FlowControlledObserver observer = new FlowControlledObserver();
+    try (MemoryBudget.Account account = budget.newAccount(observer)) {
+      // Nothing is released while gRPC holds the responses
+      account.sent(threshold);
+      account.sent(2 * threshold);
+      account.sent(threshold / 2);
+      assertEquals(3 * threshold + threshold / 2, budget.used());
+      assertFalse(account.isOverBudget());
+      account.sent(threshold);
+      assertEquals(4 * threshold + threshold / 2, budget.used());
+      assertTrue(account.isOverBudget());
+
+      // A ready stream may still hold the newest responses up to the threshold, older ones are
+      // released with exactly their own size
+      observer.ready = true;
+      account.throttle();
+      assertEquals(threshold, budget.used());
+
+      account.sent(threshold / 4);
+      assertEquals(threshold + threshold / 4, budget.used());
+      account.sent(threshold / 4);
+      // The first response of the threshold size is released once the newer ones add up to it
+      assertEquals(threshold + threshold / 2, budget.used());
+      account.setBuffered(100);
+      assertEquals(threshold + threshold / 2 + 100, budget.used());
+
+      // Responses of a cancelled call are never flushed, so they are released at once
+      observer.ready = false;
+      account.sent(threshold);
+      assertEquals(2 * threshold + threshold / 2 + 100, budget.used());
+      observer.cancelled = true;
+      account.throttle();
+      assertEquals(100, budget.used());
+    }
+    assertEquals(0, budget.used());
+  }
+
+  @Test
+  public void throttleWaitsForReadyStream() throws Exception {
+    long threshold = MemoryBudget.ON_READY_THRESHOLD_BYTES;
+    MemoryBudget budget = new MemoryBudget(threshold);
+    FlowControlledObserver observer = new FlowControlledObserver();
+    try (MemoryBudget.Account account = budget.newAccount(observer)) {
+      account.sent(2 * threshold);
+      assertTrue(account.isOverBudget());
+
+      Thread drain = new Thread(() -> {
+        try {
+          Thread.sleep(50);
+        } catch (InterruptedException e) {
+          return;
+        }
+        observer.ready = true;
+      });
+      drain.start();
+      account.throttle();
+      drain.join();
+      assertTrue(account.throttledMillis() >= 40);
+      // The only response may still be partly queued, so it stays accounted until newer ones
+      // push it out
+      assertEquals(2 * threshold, budget.used());
+      account.sent(threshold);
+      assertEquals(threshold, budget.used());
+    }
+  }
+}
@@ -0,0 +1,80 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+public class RateLimiterTest {
+
+  private static SingleStoreConfiguration conf(String user, String rowsPerSecond) {
+    return new SingleStoreConfiguration(ImmutableMap.of("host", "localhost", "port", "3306",
+        "user", user, "database", "db", "table", "t", "rate.limit.rows.per.second",
+        rowsPerSecond));
+  }
+
+  @Test
+  public void unlimited() {
+    try (RateLimiter.Limit limit = RateLimiter.unlimited().newLimit(conf("user", "0"))) {
+      assertFalse(limit.isLimited());
+    }
+    try (RateLimiter.Limit limit = RateLimiter.unlimited().newLimit(conf("user", "10"))) {
+      assertTrue(limit.isLimited());
+    }
+    try (RateLimiter.Limit limit = new RateLimiter(10, RateLimiter.UNLIMITED,
+        RateLimiter.NOT_ADAPTIVE).newLimit(conf("user", "0"))) {
+      assertTrue(limit.isLimited());
+    }
+  }
+
+  @Test
+  public void releasesWorkSlotWhileWaiting() throws Exception {
+    SyncScheduler.Permit permit = new SyncScheduler(1, 1, 1).new Permit();
+    AtomicBoolean otherWorked = new AtomicBoolean();
+    try (RateLimiter.Limit limit = RateLimiter.unlimited().newLimit(conf("user", "1"))) {
+      permit.beginWork();
+      // The bucket starts full
+      limit.acquire(Collections.emptyMap(), permit, () -> false);
+      assertFalse(limit.throttledMillis() > 0);
+
+      Thread other = new Thread(() -> {
+        try {
+          permit.beginWork();
+          otherWorked.set(true);
+          permit.endWork();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      });
+      other.setDaemon(true);
+      other.start();
+      // The second row waits for a second, the other sync works in the meantime
+      limit.acquire(Collections.emptyMap(), permit, otherWorked::get);
+      other.join(10_000);
+      assertTrue(otherWorked.get());
+      assertTrue(limit.throttledMillis() > 0);
+      permit.endWork();
+    }
+  }
+
+  @Test
+  public void loadCheckUsesLatestSync() {
+    RateLimiter rateLimiter = new RateLimiter(RateLimiter.UNLIMITED, RateLimiter.UNLIMITED,
+        RateLimiter.NOT_ADAPTIVE);
+    SingleStoreConfiguration first = conf("first", "0");
+    SingleStoreConfiguration second = conf("second", "0");
+    try (RateLimiter.Limit firstLimit = rateLimiter.newLimit(first)) {
+      assertSame(first, rateLimiter.loadCheckConfiguration("localhost", 3306));
+      try (RateLimiter.Limit secondLimit = rateLimiter.newLimit(second)) {
+        assertSame(second, rateLimiter.loadCheckConfiguration("localhost", 3306));
+      }
+      assertSame(first, rateLimiter.loadCheckConfiguration("localhost", 3306));
+    }
+    assertNull(rateLimiter.loadCheckConfiguration("localhost", 3306));
+  }
+}
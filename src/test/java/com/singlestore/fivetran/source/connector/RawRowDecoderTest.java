@@ -0,0 +1,52 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.google.protobuf.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+
+public class RawRowDecoderTest {
+
+  @Test
+  public void epochDay() {
+    for (LocalDate date = LocalDate.of(1, 1, 1); date.getYear() < 10_000;
+        date = date.plusDays(13)) {
+      assertEquals(date.toEpochDay(),
+          RawRowDecoder.epochDay(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+    }
+    assertEquals(0, RawRowDecoder.epochDay(1970, 1, 1));
+    assertEquals(-1, RawRowDecoder.epochDay(1969, 12, 31));
+    assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), RawRowDecoder.epochDay(2024, 2, 29));
+  }
+
+  @Test
+  public void parseNaiveDatetime() {
+    for (String value : Arrays.asList("1970-01-01 00:00:00", "2023-12-31 23:59:59",
+        "1000-01-01 00:00:00.000001", "9999-12-31 23:59:59.999999", "1969-07-20 20:17:40.5",
+        "2024-02-29 12:00:00.123456789", "1582-10-10 10:10:10")) {
+      LocalDateTime expected = LocalDateTime.parse(value.replace(' ', 'T'));
+      Timestamp actual = RawRowDecoder.parseNaiveDatetime(value);
+      assertEquals(expected.toEpochSecond(ZoneOffset.UTC), actual.getSeconds());
+      assertEquals(expected.getNano(), actual.getNanos());
+    }
+
+    Timestamp date = RawRowDecoder.parseNaiveDatetime("2000-10-10");
+    assertEquals(LocalDate.of(2000, 10, 10).toEpochDay() * 86_400, date.getSeconds());
+    assertEquals(0, date.getNanos());
+  }
+
+  @Test
+  public void parseOtherForms() {
+    // Read by the JDBC path
+    for (String value : Arrays.asList("0000-00-00", "0000-00-00 00:00:00", "1989", "22:59:59",
+        "22:59:59.111111", "2023-12-31T23:59:59", "2023-12-31 23:59:59.", "2023-12-31 24:00:00",
+        "2023-13-01", "20231231", "")) {
+      assertNull(RawRowDecoder.parseNaiveDatetime(value), value);
+    }
+  }
+}
@@ -0,0 +1,167 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.protobuf.ByteString;
+import fivetran_sdk.v2.Checkpoint;
+import fivetran_sdk.v2.Record;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.SourceConnectorGrpc;
+import fivetran_sdk.v2.UpdateResponse;
+import fivetran_sdk.v2.ValueType;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerMethodDefinition;
+import io.grpc.ServerServiceDefinition;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class RecordEncoderTest {
+
+  private static byte[] expected(String schema, String table, RecordType type,
+      Map<String, ValueType> row) {
+    return UpdateResponse.newBuilder()
+        .setRecord(
+            Record.newBuilder()
+                .setSchemaName(schema)
+                .setTableName(table)
+                .setType(type)
+                .putAllData(row)
+                .build())
+        .build()
+        .toByteArray();
+  }
+
+  private static Map<String, ValueType> row() {
+    Map<String, ValueType> row = new HashMap<>();
+    row.put("a", ValueType.newBuilder().setInt(1).build());
+    row.put("b", ValueType.newBuilder().setString("text").build());
+    row.put("c", ValueType.newBuilder().setNull(true).build());
+    row.put("d", ValueType.newBuilder().setDouble(-1.5).build());
+    row.put("e", ValueType.newBuilder().setBinary(ByteString.copyFrom(new byte[] {0, 1, 2}))
+        .build());
+    row.put("f", ValueType.newBuilder().setLong(Long.MIN_VALUE).build());
+    return row;
+  }
+
+  @Test
+  public void identicalToProtobuf() {
+    RecordEncoder encoder = new RecordEncoder("db", "t");
+    for (RecordType type : Arrays.asList(RecordType.UPSERT, RecordType.UPDATE,
+        RecordType.DELETE)) {
+      assertArrayEquals(expected("db", "t", type, row()),
+          encoder.encode(type, row()).bytes());
+    }
+  }
+
+  @Test
+  public void emptyValues() {
+    Map<String, ValueType> row = new LinkedHashMap<>();
+    row.put("", ValueType.newBuilder().setString("").build());
+    row.put("empty", ValueType.getDefaultInstance());
+    assertArrayEquals(expected("db", "t", RecordType.UPSERT, row),
+        new RecordEncoder("db", "t").encode(RecordType.UPSERT, row).bytes());
+    assertArrayEquals(expected("db", "t", RecordType.UPSERT, Collections.emptyMap()),
+        new RecordEncoder("db", "t").encode(RecordType.UPSERT, Collections.emptyMap()).bytes());
+  }
+
+  @Test
+  public void emptyTable() {
+    assertArrayEquals(expected("db", "", RecordType.UPDATE, row()),
+        new RecordEncoder("db", "").encode(RecordType.UPDATE, row()).bytes());
+  }
+
+  @Test
+  public void unicodeNames() {
+    // Names with 2, 3 and 4 byte UTF-8 characters
+    String schema = "\u0431\u0430\u0437\u0430";
+    String table = "\u8868";
+    Map<String, ValueType> row = new LinkedHashMap<>();
+    row.put("\u0441\u0442\u043e\u043b", ValueType.newBuilder().setString("\u2713").build());
+    row.put("\ud83d\ude00", ValueType.newBuilder().setInt(7).build());
+    assertArrayEquals(expected(schema, table, RecordType.UPSERT, row),
+        new RecordEncoder(schema, table).encode(RecordType.UPSERT, row).bytes());
+  }
+
+  @Test
+  public void largeValues() {
+    // Lengths of 2 and 3 bytes
+    for (int size : Arrays.asList(200, 20_000, 3_000_000)) {
+      char[] chars = new char[size];
+      Arrays.fill(chars, 'x');
+      Map<String, ValueType> row = new LinkedHashMap<>();
+      row.put("a", ValueType.newBuilder().setString(new String(chars)).build());
+      row.put("b", ValueType.newBuilder().setInt(size).build());
+      assertArrayEquals(expected("db", "t", RecordType.UPSERT, row),
+          new RecordEncoder("db", "t").encode(RecordType.UPSERT, row).bytes());
+    }
+  }
+
+  @Test
+  public void columnNamesAreReused() {
+    RecordEncoder encoder = new RecordEncoder("db", "t");
+    for (int i = 0; i < 10; i++) {
+      Map<String, ValueType> row = new LinkedHashMap<>();
+      row.put("a", ValueType.newBuilder().setInt(i).build());
+      assertArrayEquals(expected("db", "t", RecordType.UPSERT, row),
+          encoder.encode(RecordType.UPSERT, row).bytes());
+    }
+  }
+
+  private static byte[] readAll(InputStream stream) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    for (int n = stream.read(buffer); n >= 0; n = stream.read(buffer)) {
+      out.write(buffer, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void marshaller() throws IOException {
+    UpdateResponseMarshaller marshaller = new UpdateResponseMarshaller(
+        SourceConnectorGrpc.getUpdateMethod().getResponseMarshaller());
+
+    RecordEncoder.Encoded encoded = new RecordEncoder("db", "t").encode(RecordType.UPDATE, row());
+    InputStream stream = marshaller.stream(encoded);
+    assertEquals(encoded.size(), stream.available());
+    byte[] bytes = readAll(stream);
+    assertArrayEquals(expected("db", "t", RecordType.UPDATE, row()), bytes);
+    assertEquals(UpdateResponse.parseFrom(bytes), marshaller.parse(marshaller.stream(encoded)));
+
+    UpdateResponse checkpoint = UpdateResponse.newBuilder()
+        .setCheckpoint(Checkpoint.newBuilder().setStateJson("{}").build())
+        .build();
+    assertArrayEquals(checkpoint.toByteArray(), readAll(marshaller.stream(checkpoint)));
+  }
+
+  @Test
+  public void bind() {
+    ServerServiceDefinition definition = new SingleStoreSourceConnectorServiceImpl()
+        .bindService();
+    String updateMethodName = SourceConnectorGrpc.getUpdateMethod().getFullMethodName();
+    ServerMethodDefinition<?, ?> update = null;
+    for (ServerMethodDefinition<?, ?> method : definition.getMethods()) {
+      MethodDescriptor<?, ?> descriptor = method.getMethodDescriptor();
+      if (descriptor.getFullMethodName().equals(updateMethodName)) {
+        update = method;
+      } else {
+        assertTrue(!(descriptor.getResponseMarshaller() instanceof UpdateResponseMarshaller));
+      }
+    }
+    assertNotNull(update);
+    assertTrue(update.getMethodDescriptor().getResponseMarshaller()
+        instanceof UpdateResponseMarshaller);
+    assertTrue(definition.getServiceDescriptor().getMethods().contains(
+        update.getMethodDescriptor()));
+  }
+}
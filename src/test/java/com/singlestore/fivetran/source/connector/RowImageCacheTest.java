@@ -0,0 +1,76 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import com.google.common.collect.ImmutableMap;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.Collections;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class RowImageCacheTest {
+
+  private static Map<String, ValueType> row(int a, int b, String c) {
+    return ImmutableMap.of("a", ValueType.newBuilder().setInt(a).build(),
+        "b", ValueType.newBuilder().setInt(b).build(),
+        "c", ValueType.newBuilder().setString(c).build());
+  }
+
+  private static Map<String, ValueType> key(int a) {
+    return ImmutableMap.of("a", ValueType.newBuilder().setInt(a).build());
+  }
+
+  @Test
+  public void sendsChangedColumns() {
+    RowImageCache cache = new RowImageCache(Collections.singletonList("a"), 100);
+    assertEquals(row(1, 1, "x"), cache.apply(RecordType.UPSERT, row(1, 1, "x")));
+
+    assertEquals(ImmutableMap.of("a", ValueType.newBuilder().setInt(1).build(),
+            "b", ValueType.newBuilder().setInt(2).build()),
+        cache.apply(RecordType.UPDATE, row(1, 2, "x")));
+    assertEquals(ImmutableMap.of("a", ValueType.newBuilder().setInt(1).build(),
+            "c", ValueType.newBuilder().setString("y").build()),
+        cache.apply(RecordType.UPDATE, row(1, 2, "y")));
+    // An update that changes nothing carries only the key
+    assertEquals(key(1), cache.apply(RecordType.UPDATE, row(1, 2, "y")));
+    assertEquals(3, cache.hits());
+    assertEquals(0, cache.misses());
+  }
+
+  @Test
+  public void fullRowOnMiss() {
+    RowImageCache cache = new RowImageCache(Collections.singletonList("a"), 100);
+    assertEquals(row(1, 2, "x"), cache.apply(RecordType.UPDATE, row(1, 2, "x")));
+    assertEquals(1, cache.misses());
+
+    cache.apply(RecordType.DELETE, key(1));
+    assertEquals(0, cache.size());
+    assertEquals(row(1, 3, "x"), cache.apply(RecordType.UPDATE, row(1, 3, "x")));
+    assertEquals(2, cache.misses());
+  }
+
+  @Test
+  public void evictsLeastRecentlyUsed() {
+    RowImageCache cache = new RowImageCache(Collections.singletonList("a"), 2);
+    cache.apply(RecordType.UPSERT, row(1, 1, "x"));
+    cache.apply(RecordType.UPSERT, row(2, 1, "x"));
+    cache.apply(RecordType.UPDATE, row(1, 2, "x"));
+    cache.apply(RecordType.UPSERT, row(3, 1, "x"));
+    assertEquals(2, cache.size());
+
+    assertEquals(row(2, 2, "x"), cache.apply(RecordType.UPDATE, row(2, 2, "x")));
+    assertEquals(ImmutableMap.of("a", ValueType.newBuilder().setInt(3).build(),
+            "b", ValueType.newBuilder().setInt(2).build()),
+        cache.apply(RecordType.UPDATE, row(3, 2, "x")));
+  }
+
+  @Test
+  public void hashDistinguishesTypes() {
+    assertNotEquals(RowImageCache.hash(ValueType.newBuilder().setInt(1).build()),
+        RowImageCache.hash(ValueType.newBuilder().setLong(1).build()));
+    assertEquals(RowImageCache.hash(ValueType.newBuilder().setString("abc").build()),
+        RowImageCache.hash(ValueType.newBuilder().setString("abc").build()));
+  }
+}
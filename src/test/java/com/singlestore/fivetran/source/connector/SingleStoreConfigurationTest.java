@@ -4,6 +4,7 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 
 import com.google.common.collect.ImmutableMap;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
 
 public class SingleStoreConfigurationTest extends IntegrationTestBase {
@@ -23,6 +24,26 @@ public class SingleStoreConfigurationTest extends IntegrationTestBase {
     assertNull(conf.driverParameters());
     assertEquals("disable", conf.sslMode());
     assertNull(conf.sslServerCert());
+    assertEquals(0, conf.compactionBufferSize());
+    assertEquals(0, conf.updateCacheSize());
+    assertEquals(0, conf.warmCursorSpoolSize());
+    assertEquals(64 * 1024 * 1024, conf.warmCursorSpoolBytes());
+    assertEquals(0, conf.rateLimitRowsPerSecond());
+    assertEquals(0, conf.rateLimitBytesPerSecond());
+    assertEquals(0, conf.snapshotChunkSize());
+  }
+
+  @Test
+  public void endpoints() throws Exception {
+    SingleStoreConfiguration conf = new SingleStoreConfiguration(ImmutableMap.of("host",
+        "agg1, agg2:3307,[::1]:3308,::1,[fe80::1]", "port", port, "user", user, "database",
+        database, "table", "endpoints"));
+    assertEquals(Arrays.asList(
+        new AggregatorBalancer.Endpoint("agg1", Integer.parseInt(port)),
+        new AggregatorBalancer.Endpoint("agg2", 3307),
+        new AggregatorBalancer.Endpoint("::1", 3308),
+        new AggregatorBalancer.Endpoint("::1", Integer.parseInt(port)),
+        new AggregatorBalancer.Endpoint("fe80::1", Integer.parseInt(port))), conf.endpoints());
   }
 
   @Test
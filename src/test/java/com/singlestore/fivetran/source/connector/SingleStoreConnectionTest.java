@@ -15,15 +15,28 @@ import fivetran_sdk.v2.Schema;
 import fivetran_sdk.v2.SchemaList;
 import fivetran_sdk.v2.Table;
 import fivetran_sdk.v2.ValueType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -58,6 +71,33 @@ public class SingleStoreConnectionTest extends IntegrationTestBase {
     Assertions.assertThrows(SQLException.class, conn::checkConnection);
   }
 
+  @Test
+  public void checkConnectionFailover() throws Exception {
+    // Nothing listens on port 1, so the connection is opened to the second aggregator
+    SingleStoreConfiguration conf = new SingleStoreConfiguration(ImmutableMap.of("host",
+        String.format("%s:1, %s:%s", host, host, port), "port", port, "user", user, "password",
+        password, "database", database, "table", "checkConnectionFailover"));
+    try (SingleStoreConnection conn = new SingleStoreConnection(conf)) {
+      conn.checkConnection();
+      assertTrue(AggregatorBalancer.shared().isDown(conf.endpoints().get(0)));
+      assertEquals(1, AggregatorBalancer.shared().openConnections(conf.endpoints().get(1)));
+    }
+    assertEquals(0, AggregatorBalancer.shared().openConnections(conf.endpoints().get(1)));
+  }
+
+  @Test
+  public void closedConnectionIsNotFailure() throws Exception {
+    SingleStoreConfiguration conf = getConfig("closedConnectionIsNotFailure");
+    AggregatorBalancer.Endpoint endpoint = conf.endpoints().get(0);
+    try (SingleStoreConnection conn = new SingleStoreConnection(conf)) {
+      int openConnections = AggregatorBalancer.shared().openConnections(endpoint);
+      conn.getConnection().close();
+      conn.checkConnection();
+      assertFalse(AggregatorBalancer.shared().isDown(endpoint));
+      assertEquals(openConnections, AggregatorBalancer.shared().openConnections(endpoint));
+    }
+  }
+
   @Test
   public void checkTableExistenceTrue() throws Exception {
     SingleStoreConfiguration conf = getConfig("checkTableExistenceTrue");
@@ -426,6 +466,82 @@ public class SingleStoreConnectionTest extends IntegrationTestBase {
     assertTrue(columns.get(3).getPrimaryKey());
   }
 
+  @Test
+  public void getDatabaseSchema() throws Exception {
+    String db = "getDatabaseSchema";
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("getDatabaseSchema"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute(String.format("DROP DATABASE IF EXISTS %s", db));
+      stmt.execute(String.format("CREATE DATABASE %s", db));
+      stmt.execute(String.format("CREATE TABLE %s.t1 (a INT, b DECIMAL(10, 2), PRIMARY KEY(a))",
+          db));
+      stmt.execute(String.format("CREATE TABLE %s.t2 (c VARCHAR(10), d BIGINT)",
+          db));
+    }
+
+    SingleStoreConnection dbConn = new SingleStoreConnection(new SingleStoreConfiguration(
+        ImmutableMap.of("host", host, "port", port, "user", user, "password", password,
+            "database", db)));
+    SchemaList schemaList = dbConn.getDatabaseSchema();
+    assertEquals(1, schemaList.getSchemasCount());
+    Schema schema = schemaList.getSchemas(0);
+    assertEquals(db, schema.getName());
+    assertEquals(2, schema.getTablesCount());
+
+    Table t1 = schema.getTables(0);
+    assertEquals("t1", t1.getName());
+    assertEquals(2, t1.getColumnsCount());
+    assertEquals("a", t1.getColumns(0).getName());
+    assertEquals(DataType.INT, t1.getColumns(0).getType());
+    assertTrue(t1.getColumns(0).getPrimaryKey());
+    assertEquals(DataType.DECIMAL, t1.getColumns(1).getType());
+    assertEquals(10, t1.getColumns(1).getParams().getDecimal().getPrecision());
+    assertEquals(2, t1.getColumns(1).getParams().getDecimal().getScale());
+
+    Table t2 = schema.getTables(1);
+    assertEquals("t2", t2.getName());
+    assertEquals(3, t2.getColumnsCount());
+    assertEquals(DataType.STRING, t2.getColumns(0).getType());
+    assertEquals(40, t2.getColumns(0).getParams().getStringByteLength());
+    assertEquals(DataType.LONG, t2.getColumns(1).getType());
+    assertEquals("InternalId", t2.getColumns(2).getName());
+    assertTrue(t2.getColumns(2).getPrimaryKey());
+
+    // Schema of a single table is read in the same way
+    Map<String, String> tableConf = new HashMap<>(getConfigMap("t2"));
+    tableConf.put("database", db);
+    assertEquals(SchemaList.newBuilder()
+            .addSchemas(Schema.newBuilder().setName(db).addTables(t2))
+            .build(),
+        new SingleStoreConnection(new SingleStoreConfiguration(tableConf)).getSchema());
+  }
+
+  @Test
+  public void getTypeName() {
+    assertEquals("INT", SingleStoreConnection.getTypeName("int(11)"));
+    assertEquals("BIGINT UNSIGNED", SingleStoreConnection.getTypeName("bigint(20) unsigned"));
+    assertEquals("ENUM", SingleStoreConnection.getTypeName("enum('a','b)')"));
+    assertEquals("DECIMAL", SingleStoreConnection.getTypeName("decimal(65,30)"));
+    assertEquals("LONGTEXT", SingleStoreConnection.getTypeName("longtext"));
+    assertEquals("VECTOR", SingleStoreConnection.getTypeName("vector(2, I32)"));
+  }
+
+  @Test
+  public void getRowEstimates() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("getRowEstimates"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS getRowEstimates");
+      stmt.execute("CREATE ROWSTORE TABLE getRowEstimates (a INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format("INSERT INTO getRowEstimates VALUES(%d)", i));
+      }
+    }
+
+    Map<Integer, Long> estimates = conn.getRowEstimates();
+    assertEquals(conn.getNumPartitions(), estimates.size());
+    assertEquals(100, estimates.values().stream().mapToLong(Long::longValue).sum());
+  }
+
   @Test
   public void getNumPartitions() throws Exception {
     SingleStoreConfiguration conf = getConfig("getNumPartitions");
@@ -445,6 +561,97 @@ public class SingleStoreConnectionTest extends IntegrationTestBase {
     }
   }
 
+  @Test
+  public void observeReconnect() throws Exception {
+    SingleStoreConfiguration conf = getConfig("observeReconnect");
+    SingleStoreConnection conn = new SingleStoreConnection(conf);
+    conn.reconnectInitialBackoffMillis = 10;
+
+    long connectionId;
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeReconnect");
+      stmt.execute("CREATE TABLE observeReconnect (a INT, PRIMARY KEY(a));");
+      for (int i = 0; i < 10; i++) {
+        stmt.execute(String.format("INSERT INTO observeReconnect VALUES(%d)", i));
+      }
+
+      ResultSet rs = stmt.executeQuery("SELECT CONNECTION_ID()");
+      rs.next();
+      connectionId = rs.getLong(1);
+    }
+
+    Set<Integer> values = new HashSet<>();
+    State state = new State(8);
+    try (SingleStoreConnection other = new SingleStoreConnection(conf)) {
+      conn.observe(state, null, (operation, partition, offset, row) -> {
+        if (!operation.equals("Insert")) {
+          return;
+        }
+        values.add(row.get("a").getInt());
+        state.setOffset(partition, offset);
+
+        if (values.size() == 1) {
+          // Rows inserted after the connection is killed are received only if OBSERVE resumes
+          try (Statement stmt = other.getConnection().createStatement()) {
+            stmt.execute(String.format("KILL CONNECTION %d", connectionId));
+            for (int i = 10; i < 20; i++) {
+              stmt.execute(String.format("INSERT INTO observeReconnect VALUES(%d)", i));
+            }
+          }
+        }
+      });
+    }
+
+    for (int i = 0; i < 20; i++) {
+      assertTrue(values.contains(i));
+    }
+  }
+
+  @Test
+  public void observeCancel() throws Exception {
+    SingleStoreConfiguration conf = getConfig("observeCancel");
+    SingleStoreConnection conn = new SingleStoreConnection(conf);
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeCancel");
+      stmt.execute("CREATE TABLE observeCancel (a INT, PRIMARY KEY(a));");
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    AtomicBoolean inserting = new AtomicBoolean(true);
+    try (SingleStoreConnection other = new SingleStoreConnection(conf)) {
+      // Continuous inserts keep OBSERVE from reaching its idle timeout
+      Future<?> inserter = executor.submit(() -> {
+        try (Statement stmt = other.getConnection().createStatement()) {
+          for (int i = 0; inserting.get(); i++) {
+            stmt.execute(String.format("INSERT INTO observeCancel VALUES(%d)", i));
+            Thread.sleep(100);
+          }
+        }
+        return null;
+      });
+      AtomicInteger received = new AtomicInteger();
+      Future<?> observe = executor.submit(() -> {
+        conn.observe(new State(8), null,
+            (operation, partition, offset, row) -> received.incrementAndGet());
+        return null;
+      });
+
+      Thread.sleep(3000);
+      long start = System.nanoTime();
+      conn.cancel();
+      observe.get(1, TimeUnit.MINUTES);
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+      assertTrue(conn.isCancelled());
+      assertTrue(received.get() > 0);
+
+      inserting.set(false);
+      inserter.get(1, TimeUnit.MINUTES);
+    } finally {
+      executor.shutdownNow();
+      conn.close();
+    }
+  }
+
   @Test
   public void observe() throws Exception {
     SingleStoreConfiguration conf = getConfig("observe");
@@ -970,4 +1177,506 @@ public class SingleStoreConnectionTest extends IntegrationTestBase {
     assertEquals(1, records.get(0).row.get("a").getInt());
     assertNull(records.get(0).row.get("b"));
   }
+
+  @Test
+  public void getStalePartitions() throws Exception {
+    SingleStoreConfiguration conf = getConfig("getStalePartitions");
+    SingleStoreConnection conn = new SingleStoreConnection(conf);
+
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS getStalePartitions");
+      stmt.execute(
+          "CREATE TABLE getStalePartitions (a INT, b INT, PRIMARY KEY(a));");
+      for (int i = 0; i < 10; i++) {
+        stmt.execute(String.format("INSERT INTO getStalePartitions VALUES(%d, 1)", i));
+      }
+    }
+
+    State state = new State(8);
+    assertTrue(conn.getStalePartitions(state).isEmpty());
+
+    conn.observe(state, null, (operation, partition, offset, row) -> {
+      if (operation.equals("Insert")) {
+        state.setOffset(partition, offset);
+      }
+    });
+    assertTrue(conn.getStalePartitions(state).isEmpty());
+
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      makeOffsetsStale(stmt, "getStalePartitions");
+    }
+    List<Integer> stalePartitions = conn.getStalePartitions(state);
+    assertFalse(stalePartitions.isEmpty());
+
+    // Offsets taken after the logs are removed can be resumed from, so only the partition that
+    // keeps its old offset is stale
+    State fresh = new State(8);
+    conn.observe(fresh, null,
+        (operation, partition, offset, row) -> fresh.setOffset(partition, offset));
+    assertTrue(conn.getStalePartitions(fresh).isEmpty());
+    int stalePartition = stalePartitions.get(0);
+    fresh.setOffset(stalePartition, state.getOffset(stalePartition));
+    assertEquals(Collections.singletonList(stalePartition), conn.getStalePartitions(fresh));
+  }
+
+  @Test
+  public void observeSchemaChange() throws Exception {
+    SingleStoreConfiguration conf = getConfig("observeSchemaChange");
+    SingleStoreConnection conn = new SingleStoreConnection(conf);
+    // OBSERVE keeps streaming while the table is altered
+    conn.observeIdleTimeoutMillis = 5_000;
+
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeSchemaChange");
+      stmt.execute(
+          "CREATE TABLE observeSchemaChange (a INT, b INT, PRIMARY KEY(a));");
+      stmt.execute("INSERT INTO observeSchemaChange VALUES(1, 1)");
+    }
+
+    List<Record> records = new ArrayList<>();
+    State state = new State(8);
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    List<Future<?>> alter = new ArrayList<>();
+    try {
+      conn.observe(state, null, (operation, partition, offset, row) -> {
+        state.setOffset(partition, offset);
+        if (!operation.equals("Delete") && !operation.equals("Update")
+            && !operation.equals("Insert")) {
+          return;
+        }
+
+        records.add(new Record(operation, row));
+        if (alter.isEmpty()) {
+          // The connection of OBSERVE is busy, so the table is altered through another one
+          alter.add(executor.submit(() -> {
+            try (SingleStoreConnection ddlConn = new SingleStoreConnection(conf);
+                Statement stmt = ddlConn.getConnection().createStatement()) {
+              stmt.execute("ALTER TABLE observeSchemaChange ADD COLUMN c TEXT");
+              stmt.execute("INSERT INTO observeSchemaChange VALUES(2, 2, 'abc')");
+            }
+            return null;
+          }));
+        }
+      });
+      alter.get(0).get(1, TimeUnit.MINUTES);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    // Rows read before the change have the old columns, rows read after it have the new ones
+    assertEquals("Insert", records.get(0).operation);
+    assertEquals(1, records.get(0).row.get("a").getInt());
+    assertFalse(records.get(0).row.containsKey("c"));
+    List<Record> inserted = new ArrayList<>();
+    for (Record record : records) {
+      if (record.row.get("a").getInt() == 2) {
+        inserted.add(record);
+      }
+    }
+    assertFalse(inserted.isEmpty());
+    for (Record record : inserted) {
+      assertEquals("Insert", record.operation);
+      assertEquals("abc", record.row.get("c").getString());
+    }
+  }
+
+  private static LocalDateTime parseTimestamp(String value) {
+    return SingleStoreConnection.parseTimestamp(value).toLocalDateTime();
+  }
+
+  @Test
+  public void parseTimestamp() {
+    assertEquals(LocalDateTime.of(2024, 5, 6, 0, 0), parseTimestamp("2024-05-06"));
+    assertEquals(LocalDateTime.of(2024, 1, 1, 0, 0), parseTimestamp("2024"));
+    assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123456000),
+        parseTimestamp("2024-01-02 03:04:05.123456"));
+
+    // TIME values are offsets from 1970-01-01
+    assertEquals(LocalDateTime.of(1970, 1, 1, 22, 59, 59, 111111000),
+        parseTimestamp("22:59:59.111111"));
+    assertEquals(LocalDateTime.of(1970, 1, 2, 0, 0), parseTimestamp("24:00:00"));
+    assertEquals(LocalDateTime.of(1970, 2, 4, 22, 59, 59), parseTimestamp("838:59:59"));
+    assertEquals(LocalDateTime.of(1969, 12, 31, 22, 58, 57), parseTimestamp("-01:01:03"));
+    assertEquals(LocalDateTime.of(1969, 12, 31, 23, 59, 59, 500000000),
+        parseTimestamp("-00:00:00.5"));
+    assertEquals(LocalDateTime.of(1969, 11, 27, 1, 0, 1), parseTimestamp("-838:59:59"));
+
+    assertNull(SingleStoreConnection.parseTimestamp("0000-00-00"));
+    assertNull(SingleStoreConnection.parseTimestamp("0000-00-00 00:00:00"));
+    assertNull(SingleStoreConnection.parseTimestamp("0000-00-00 00:00:00.000000"));
+  }
+
+  @Test
+  public void decodeRawZeroDate() {
+    for (DataType type : Arrays.asList(DataType.NAIVE_DATE, DataType.NAIVE_DATETIME)) {
+      Column column = Column.newBuilder()
+          .setName("a")
+          .setType(type)
+          .build();
+      assertEquals(ValueType.newBuilder().setNull(true).build(),
+          SingleStoreConnection.decodeRawValue(column, "0000-00-00"));
+    }
+  }
+
+  @Test
+  public void isSchemaChangeError() {
+    assertTrue(SingleStoreConnection.isSchemaChangeError(
+        new SQLException("Table definition has changed, please retry transaction", "HY000",
+            1412)));
+    assertTrue(SingleStoreConnection.isSchemaChangeError(
+        new Exception(new SQLException("No such column: 'c'"))));
+    assertFalse(SingleStoreConnection.isSchemaChangeError(
+        new SQLException("Lost connection to server", "08S01", 2013)));
+    assertFalse(SingleStoreConnection.isSchemaChangeError(
+        new SQLException("The requested Offset is too stale")));
+  }
+
+  @Test
+  public void observeReplay() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("observeReplay"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeReplay");
+      stmt.execute("CREATE TABLE observeReplay (a INT, b TEXT, c DATETIME(6), d BLOB, "
+          + "e DECIMAL(10, 3), f DATE, g YEAR, PRIMARY KEY(a))");
+      stmt.execute("INSERT INTO observeReplay VALUES(1, 'abc', '2024-01-02 03:04:05.123456', "
+          + "'\\x00\\x01', 12.345, '2024-05-06', 2024)");
+      stmt.execute("INSERT INTO observeReplay VALUES(2, NULL, NULL, NULL, NULL, NULL, NULL)");
+      stmt.execute("UPDATE observeReplay SET b = 'def' WHERE a = 1");
+      stmt.execute("DELETE FROM observeReplay WHERE a = 2");
+    }
+
+    Path file = Files.createTempFile("observeReplay", ".gz");
+    try {
+      Map<String, String> captureConf = new HashMap<>(getConfigMap("observeReplay"));
+      captureConf.put("observe.capture.file", file.toString());
+      SingleStoreConnection captureConn = new SingleStoreConnection(
+          new SingleStoreConfiguration(captureConf));
+      List<Record> captured = new ArrayList<>();
+      List<State> capturedStates = new ArrayList<>();
+      State capturedState = new State(captureConn.getNumPartitions());
+      captureConn.observe(capturedState, null, (operation, partition, offset, row) -> {
+        captured.add(new Record(operation, row));
+        capturedState.setOffset(partition, offset);
+        capturedStates.add(capturedState.copy());
+      });
+      captureConn.close();
+
+      Map<String, String> replayConf = new HashMap<>(getConfigMap("observeReplay"));
+      replayConf.put("observe.replay.file", file.toString());
+      SingleStoreConnection replayConn = new SingleStoreConnection(
+          new SingleStoreConfiguration(replayConf));
+      assertEquals(conn.getSchema(), replayConn.getSchema());
+      assertEquals(conn.getNumPartitions(), replayConn.getNumPartitions());
+
+      List<Record> replayed = new ArrayList<>();
+      State replayedState = new State(replayConn.getNumPartitions());
+      replayConn.observe(replayedState, null, (operation, partition, offset, row) -> {
+        replayed.add(new Record(operation, row));
+        replayedState.setOffset(partition, offset);
+      });
+
+      assertEquals(captured.size(), replayed.size());
+      for (int i = 0; i < captured.size(); i++) {
+        assertEquals(captured.get(i).operation, replayed.get(i).operation);
+        assertEquals(captured.get(i).row, replayed.get(i).row);
+      }
+      assertEquals(capturedState.toJson(), replayedState.toJson());
+
+      // Replay resumes from the offsets of the state, like OBSERVE
+      for (int resumeAt = 0; resumeAt < captured.size(); resumeAt++) {
+        State resumedState = capturedStates.get(resumeAt).copy();
+        List<Record> resumed = new ArrayList<>();
+        replayConn.observe(resumedState, null, (operation, partition, offset, row) -> {
+          resumed.add(new Record(operation, row));
+          resumedState.setOffset(partition, offset);
+        });
+
+        List<Record> expected = captured.subList(resumeAt + 1, captured.size());
+        assertEquals(expected.size(), resumed.size());
+        for (int i = 0; i < expected.size(); i++) {
+          assertEquals(expected.get(i).operation, resumed.get(i).operation);
+          assertEquals(expected.get(i).row, resumed.get(i).row);
+        }
+        assertEquals(capturedState.toJson(), resumedState.toJson());
+      }
+
+      State unknownOffset = new State(replayConn.getNumPartitions());
+      unknownOffset.setOffset(0, "00");
+      Exception e = Assertions.assertThrows(Exception.class,
+          () -> replayConn.observe(unknownOffset, null, (operation, partition, offset, row) -> {
+          }));
+      assertTrue(e.getCause() instanceof SQLException);
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  /**
+   * Runs OBSERVE with the given configuration until it ends and returns the received events.
+   */
+  private static List<Record> observeAll(Map<String, String> configuration) throws Exception {
+    List<Record> records = new ArrayList<>();
+    try (SingleStoreConnection conn = new SingleStoreConnection(
+        new SingleStoreConfiguration(configuration))) {
+      State state = new State(conn.getNumPartitions());
+      conn.observe(state, null, (operation, partition, offset, row) -> {
+        records.add(new Record(operation, row));
+        state.setOffset(partition, offset);
+      });
+    }
+
+    return records;
+  }
+
+  private static void assertSameRecords(List<Record> expected, List<Record> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertEquals(expected.get(i).operation, actual.get(i).operation);
+      assertEquals(expected.get(i).row, actual.get(i).row);
+    }
+  }
+
+  @Test
+  public void observeReplayMetadata() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("observeReplayMetadata"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeReplayMetadata");
+      stmt.execute("CREATE TABLE observeReplayMetadata (a INT, b TEXT, c DATETIME(6), d BLOB, "
+          + "e DECIMAL(10, 3), PRIMARY KEY(a))");
+      stmt.execute("INSERT INTO observeReplayMetadata VALUES(1, 'abc', "
+          + "'2024-01-02 03:04:05.123456', '\\x00\\x01', 12.345)");
+      stmt.execute("INSERT INTO observeReplayMetadata VALUES(2, NULL, NULL, NULL, NULL)");
+      stmt.execute("DELETE FROM observeReplayMetadata WHERE a = 2");
+    }
+
+    Path file = Files.createTempFile("observeReplayMetadata", ".gz");
+    Path recapture = Files.createTempFile("observeReplayMetadata", ".gz");
+    try {
+      Map<String, String> captureConf = new HashMap<>(getConfigMap("observeReplayMetadata"));
+      captureConf.put("observe.capture.file", file.toString());
+      List<Record> captured = observeAll(captureConf);
+
+      // The raw row decoder reads the types of columns from the metadata of the replay
+      Map<String, String> replayConf = new HashMap<>(getConfigMap("observeReplayMetadata"));
+      replayConf.put("observe.replay.file", file.toString());
+      replayConf.put("raw.decoder", "true");
+      assertSameRecords(captured, observeAll(replayConf));
+
+      // A replay can be recorded again
+      replayConf.put("observe.capture.file", recapture.toString());
+      assertSameRecords(captured, observeAll(replayConf));
+      Map<String, String> recapturedConf = new HashMap<>(getConfigMap("observeReplayMetadata"));
+      recapturedConf.put("observe.replay.file", recapture.toString());
+      assertSameRecords(captured, observeAll(recapturedConf));
+    } finally {
+      Files.deleteIfExists(file);
+      Files.deleteIfExists(recapture);
+    }
+  }
+
+  @Test
+  public void observeCaptureReconnect() throws Exception {
+    SingleStoreConfiguration conf = getConfig("observeCaptureReconnect");
+    long connectionId;
+    try (SingleStoreConnection conn = new SingleStoreConnection(conf);
+        Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeCaptureReconnect");
+      stmt.execute("CREATE TABLE observeCaptureReconnect (a INT, PRIMARY KEY(a));");
+      for (int i = 0; i < 10; i++) {
+        stmt.execute(String.format("INSERT INTO observeCaptureReconnect VALUES(%d)", i));
+      }
+    }
+
+    Path file = Files.createTempFile("observeCaptureReconnect", ".gz");
+    try {
+      Map<String, String> captureConf = new HashMap<>(getConfigMap("observeCaptureReconnect"));
+      captureConf.put("observe.capture.file", file.toString());
+      SingleStoreConnection captureConn = new SingleStoreConnection(
+          new SingleStoreConfiguration(captureConf));
+      captureConn.reconnectInitialBackoffMillis = 10;
+      try (Statement stmt = captureConn.getConnection().createStatement()) {
+        ResultSet rs = stmt.executeQuery("SELECT CONNECTION_ID()");
+        rs.next();
+        connectionId = rs.getLong(1);
+      }
+
+      List<Record> captured = new ArrayList<>();
+      State state = new State(captureConn.getNumPartitions());
+      try (SingleStoreConnection other = new SingleStoreConnection(conf)) {
+        captureConn.observe(state, null, (operation, partition, offset, row) -> {
+          captured.add(new Record(operation, row));
+          state.setOffset(partition, offset);
+          if (operation.equals("Insert") && captured.stream()
+              .filter(record -> record.operation.equals("Insert")).count() == 1) {
+            // Rows inserted after the connection is killed are received by the restarted OBSERVE
+            try (Statement stmt = other.getConnection().createStatement()) {
+              stmt.execute(String.format("KILL CONNECTION %d", connectionId));
+              for (int i = 10; i < 20; i++) {
+                stmt.execute(String.format("INSERT INTO observeCaptureReconnect VALUES(%d)", i));
+              }
+            }
+          }
+        });
+      }
+      captureConn.close();
+
+      // The recording has events received before and after the reconnect
+      Map<String, String> replayConf = new HashMap<>(getConfigMap("observeCaptureReconnect"));
+      replayConf.put("observe.replay.file", file.toString());
+      List<Record> replayed = observeAll(replayConf);
+      assertSameRecords(captured, replayed);
+      Set<Integer> values = replayed.stream()
+          .filter(record -> record.operation.equals("Insert"))
+          .map(record -> record.row.get("a").getInt())
+          .collect(Collectors.toSet());
+      for (int i = 0; i < 20; i++) {
+        assertTrue(values.contains(i));
+      }
+    } finally {
+      Files.deleteIfExists(file);
+    }
+  }
+
+  @Test
+  public void observeParallelDecode() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("observeParallelDecode"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeParallelDecode");
+      stmt.execute("CREATE TABLE observeParallelDecode (a INT, b BOOL, c BIGINT, d DOUBLE, "
+          + "e FLOAT, f DECIMAL(20, 5), g DATE, h YEAR, i TIME(6), j DATETIME(6), k TIMESTAMP, "
+          + "l TEXT, m BLOB, n JSON, o BIT(8), PRIMARY KEY(a))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format("INSERT INTO observeParallelDecode VALUES(%d, %d, %d, %d.5, "
+                + "%d.25, '%d.12345', '2024-01-%02d', %d, '12:34:%02d.123456', "
+                + "'2024-02-03 04:05:%02d.654321', '2024-03-04 05:06:%02d', 'text%d', 'blob%d', "
+                + "'{\"a\":%d}', %d)",
+            i, i % 2, (long) i << 40, i, i, i, i % 28 + 1, 1990 + i, i % 60, i % 60, i % 60, i,
+            i, i, i % 256));
+      }
+      stmt.execute("INSERT INTO observeParallelDecode (a) VALUES(1000)");
+      stmt.execute("DELETE FROM observeParallelDecode WHERE a < 10");
+    }
+
+    Map<String, List<Record>> serial = new HashMap<>();
+    conn.observe(new State(8), null, (operation, partition, offset, row) ->
+        serial.computeIfAbsent(operation, o -> new ArrayList<>()).add(new Record(operation, row)));
+
+    SyncScheduler scheduler = new SyncScheduler(SyncScheduler.UNLIMITED,
+        SyncScheduler.UNLIMITED, SyncScheduler.UNLIMITED, 4);
+    Map<String, List<Record>> parallel = new HashMap<>();
+    Map<Integer, List<String>> parallelOffsets = new HashMap<>();
+    try (SyncScheduler.Permit permit = scheduler.acquireSync(getConfig("observeParallelDecode"));
+        SingleStoreConnection parallelConn = new SingleStoreConnection(
+            getConfig("observeParallelDecode"), permit)) {
+      parallelConn.observe(new State(8), null, (operation, partition, offset, row) -> {
+        parallel.computeIfAbsent(operation, o -> new ArrayList<>())
+            .add(new Record(operation, row));
+        parallelOffsets.computeIfAbsent(partition, p -> new ArrayList<>()).add(offset);
+      });
+    }
+
+    Comparator<Record> byKey = Comparator.comparing(r -> r.row.get("a").getInt());
+    for (String operation : Arrays.asList("Insert", "Delete")) {
+      List<Record> expected = serial.get(operation);
+      List<Record> actual = parallel.get(operation);
+      expected.sort(byKey);
+      actual.sort(byKey);
+      assertEquals(expected.size(), actual.size());
+      for (int i = 0; i < expected.size(); i++) {
+        assertEquals(expected.get(i).row, actual.get(i).row);
+      }
+    }
+    assertEquals(101, parallel.get("Insert").size());
+    assertEquals(10, parallel.get("Delete").size());
+
+    // Offsets of every partition are received in increasing order
+    for (List<String> offsets : parallelOffsets.values()) {
+      for (int i = 1; i < offsets.size(); i++) {
+        assertTrue(offsets.get(i - 1).compareTo(offsets.get(i)) <= 0);
+      }
+    }
+  }
+
+  @Test
+  public void observeRawDecoder() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("observeRawDecoder"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS observeRawDecoder");
+      stmt.execute("CREATE TABLE observeRawDecoder (a INT, b BOOL, c BIGINT, d DOUBLE, "
+          + "e FLOAT, f DECIMAL(20, 5), g DATE, h YEAR, i TIME(6), j DATETIME(6), k TIMESTAMP, "
+          + "l TEXT, m BLOB, n JSON, o BIT(8), p VARCHAR(20), q ENUM('x', 'y'), r SMALLINT, "
+          + "PRIMARY KEY(a))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format("INSERT INTO observeRawDecoder VALUES(%d, %d, %d, %d.5, "
+                + "%d.25, '%d.12345', '%04d-01-%02d', %d, '12:34:%02d.123456', "
+                + "'2024-02-03 04:05:%02d.654321', '2024-03-04 05:06:%02d', 'text%d', 'blob%d', "
+                + "'{\"a\":%d}', %d, '\u0442\u0435\u043a\u0441\u0442%d', 'y', %d)",
+            i, i % 2, (long) i << 40, i, i, i, 1000 + i * 90, i % 28 + 1, 1990 + i, i % 60,
+            i % 60, i % 60, i, i, i, i % 256, i, -i));
+      }
+      stmt.execute("INSERT INTO observeRawDecoder (a) VALUES(1000)");
+      stmt.execute("DELETE FROM observeRawDecoder WHERE a < 10");
+    }
+
+    Map<String, String> configuration = new HashMap<>(getConfigMap("observeRawDecoder"));
+    configuration.put("raw.decoder", "true");
+    try (SingleStoreConnection rawConn = new SingleStoreConnection(
+        new SingleStoreConfiguration(configuration))) {
+      State state = new State(8);
+      assertSameRows(conn, rawConn, state);
+
+      // Changes after the snapshot carry full rows for updates and primary keys for deletes
+      try (Statement stmt = conn.getConnection().createStatement()) {
+        stmt.execute("UPDATE observeRawDecoder SET l = 'updated', j = '2000-01-01 00:00:00', "
+            + "p = NULL WHERE a < 50");
+        stmt.execute("DELETE FROM observeRawDecoder WHERE a >= 90");
+      }
+      Set<String> operations = assertSameRows(conn, rawConn, state);
+      assertTrue(operations.contains("Update"));
+      assertTrue(operations.contains("Delete"));
+    }
+  }
+
+  /**
+   * Observes the table from the state with the JDBC and the raw decoder, asserts that both
+   * receive the same rows and advances the state past them.
+   *
+   * @return operations of the received rows
+   */
+  private static Set<String> assertSameRows(SingleStoreConnection conn,
+      SingleStoreConnection rawConn, State state) throws Exception {
+    List<Record> jdbc = new ArrayList<>();
+    State next = state.copy();
+    conn.observe(state, null, (operation, partition, offset, row) -> {
+      if (operation.equals("Insert") || operation.equals("Update")
+          || operation.equals("Delete")) {
+        jdbc.add(new Record(operation, row));
+        next.setOffset(partition, offset);
+      }
+    });
+
+    List<Record> raw = new ArrayList<>();
+    rawConn.observe(state, null, (operation, partition, offset, row) -> {
+      if (operation.equals("Insert") || operation.equals("Update")
+          || operation.equals("Delete")) {
+        raw.add(new Record(operation, row));
+      }
+    });
+
+    // Both connections receive events of every partition in the same order
+    assertEquals(jdbc.size(), raw.size());
+    Comparator<Record> byKey = Comparator.comparing((Record r) -> r.operation)
+        .thenComparing(r -> r.row.get("a").getInt());
+    jdbc.sort(byKey);
+    raw.sort(byKey);
+    for (int i = 0; i < jdbc.size(); i++) {
+      assertEquals(jdbc.get(i).operation, raw.get(i).operation);
+      assertEquals(jdbc.get(i).row, raw.get(i).row);
+    }
+
+    for (int partition = 0; partition < next.numPartitions(); partition++) {
+      state.setOffset(partition, next.getOffset(partition));
+    }
+    return jdbc.stream().map(r -> r.operation).collect(Collectors.toSet());
+  }
 }
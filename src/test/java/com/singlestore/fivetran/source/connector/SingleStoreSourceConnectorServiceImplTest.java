@@ -0,0 +1,701 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import fivetran_sdk.v2.Record;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.UpdateRequest;
+import fivetran_sdk.v2.UpdateResponse;
+import fivetran_sdk.v2.ValueType;
+import io.grpc.stub.StreamObserver;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+public class SingleStoreSourceConnectorServiceImplTest extends IntegrationTestBase {
+
+  static class CollectingObserver implements StreamObserver<UpdateResponse> {
+
+    List<UpdateResponse> responses = new ArrayList<>();
+    Throwable error;
+    boolean completed;
+
+    @Override
+    public void onNext(UpdateResponse value) {
+      responses.add(value);
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      error = t;
+    }
+
+    @Override
+    public void onCompleted() {
+      completed = true;
+    }
+
+    long records() {
+      return responses.stream().filter(UpdateResponse::hasRecord).count();
+    }
+
+    long checkpoints() {
+      return responses.stream().filter(UpdateResponse::hasCheckpoint).count();
+    }
+  }
+
+  @Test
+  public void concurrentSyncs() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("concurrentSyncs"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS concurrentSyncs");
+      stmt.execute("CREATE TABLE concurrentSyncs (a INT, b INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format("INSERT INTO concurrentSyncs VALUES(%d, %d)", i, i));
+      }
+    }
+
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl(
+        new SyncScheduler(4, 3, 2), new MemoryBudget(1024 * 1024));
+    UpdateRequest request = UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("concurrentSyncs"))
+        .build();
+
+    int syncs = 32;
+    ExecutorService executor = Executors.newFixedThreadPool(syncs);
+    try {
+      List<Future<CollectingObserver>> futures = new ArrayList<>();
+      for (int i = 0; i < syncs; i++) {
+        futures.add(executor.submit(() -> {
+          CollectingObserver observer = new CollectingObserver();
+          service.update(request, observer);
+          return observer;
+        }));
+      }
+
+      for (Future<CollectingObserver> future : futures) {
+        CollectingObserver observer = future.get(5, TimeUnit.MINUTES);
+        assertNull(observer.error);
+        assertTrue(observer.completed);
+        assertEquals(100, observer.records());
+        assertEquals(1, observer.checkpoints());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void snapshotBulkMode() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("snapshotBulkMode"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS snapshotBulkMode");
+      stmt.execute("CREATE TABLE snapshotBulkMode (a INT, b INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 250; i++) {
+        stmt.execute(String.format("INSERT INTO snapshotBulkMode VALUES(%d, %d)", i, i));
+      }
+    }
+
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    service.CHECKPOINT_BATCH_SIZE = 10;
+    service.SNAPSHOT_CHECKPOINT_BATCH_SIZE = 100;
+
+    // The initial sync receives a snapshot, which is checkpointed every 100 records
+    CollectingObserver observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("snapshotBulkMode"))
+        .build(), observer);
+    assertNull(observer.error);
+    assertEquals(250, observer.records());
+    assertEquals(3, observer.checkpoints());
+
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      for (int i = 250; i < 275; i++) {
+        stmt.execute(String.format("INSERT INTO snapshotBulkMode VALUES(%d, %d)", i, i));
+      }
+    }
+
+    // Incremental changes are checkpointed every 10 records
+    String state = observer.responses.get(observer.responses.size() - 1)
+        .getCheckpoint().getStateJson();
+    observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("snapshotBulkMode"))
+        .setStateJson(state)
+        .build(), observer);
+    assertNull(observer.error);
+    assertTrue(observer.records() >= 25);
+    assertTrue(observer.checkpoints() >= 3);
+  }
+
+  @Test
+  public void largeTransaction() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("largeTransaction"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS largeTransaction");
+      // Rows with the same b are in the same partition
+      stmt.execute("CREATE TABLE largeTransaction (a INT, b INT, PRIMARY KEY(a, b), "
+          + "SHARD KEY(b))");
+      stmt.execute("INSERT INTO largeTransaction VALUES(0, 0)");
+    }
+
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    service.CHECKPOINT_BATCH_SIZE = 10;
+    CollectingObserver observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("largeTransaction"))
+        .build(), observer);
+    assertNull(observer.error);
+    String state = observer.responses.get(observer.responses.size() - 1)
+        .getCheckpoint().getStateJson();
+
+    // One transaction of 100 rows in one partition, surrounded by transactions of other
+    // partitions
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      for (int i = 1; i <= 20; i++) {
+        stmt.execute(String.format("INSERT INTO largeTransaction VALUES(%d, %d)", i, i));
+      }
+      stmt.execute("INSERT INTO largeTransaction VALUES" + IntStream.rangeClosed(1, 100)
+          .mapToObj(i -> String.format("(%d, 0)", i))
+          .collect(Collectors.joining(", ")));
+      for (int i = 21; i <= 40; i++) {
+        stmt.execute(String.format("INSERT INTO largeTransaction VALUES(%d, %d)", i, i));
+      }
+    }
+
+    observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("largeTransaction"))
+        .setStateJson(state)
+        .build(), observer);
+    assertNull(observer.error);
+    assertEquals(140, observer.records());
+
+    // Records of the transaction are sent together, with no checkpoint between them
+    List<Integer> positions = new ArrayList<>();
+    for (int i = 0; i < observer.responses.size(); i++) {
+      UpdateResponse response = observer.responses.get(i);
+      if (response.hasRecord() && response.getRecord().getDataMap().get("b").getInt() == 0) {
+        positions.add(i);
+      }
+    }
+    assertEquals(100, positions.size());
+    assertEquals(99, positions.get(99) - positions.get(0));
+  }
+
+  @Test
+  public void staleOffsetResync() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("staleOffsetResync"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS staleOffsetResync");
+      stmt.execute("CREATE TABLE staleOffsetResync (a INT, b INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format("INSERT INTO staleOffsetResync VALUES(%d, %d)", i, i));
+      }
+    }
+
+    State old = new State(conn.getNumPartitions());
+    conn.observe(old, null,
+        (operation, partition, offset, row) -> old.setOffset(partition, offset));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      makeOffsetsStale(stmt, "staleOffsetResync");
+    }
+    List<Integer> stalePartitions = conn.getStalePartitions(old);
+    assertFalse(stalePartitions.isEmpty());
+
+    // Every partition but one resumes from a fresh offset
+    State state = new State(conn.getNumPartitions());
+    Map<Integer, Integer> partitionRows = new HashMap<>();
+    conn.observe(state, null, (operation, partition, offset, row) -> {
+      state.setOffset(partition, offset);
+      if (operation.equals("Insert")) {
+        partitionRows.merge(partition, 1, Integer::sum);
+      }
+    });
+    int stalePartition = stalePartitions.get(0);
+    state.setOffset(stalePartition, old.getOffset(stalePartition));
+
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    CollectingObserver observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("staleOffsetResync"))
+        .setStateJson(state.toJson())
+        .build(), observer);
+    assertNull(observer.error);
+    // Only rows of the stale partition are sent again
+    assertEquals((long) partitionRows.get(stalePartition), observer.records());
+    State result = State.fromJson(observer.responses.get(observer.responses.size() - 1)
+        .getCheckpoint().getStateJson());
+    assertFalse(result.hasMissingOffsets());
+    for (int partition = 0; partition < state.numPartitions(); partition++) {
+      if (partition != stalePartition) {
+        assertEquals(state.getOffset(partition), result.getOffset(partition));
+      }
+    }
+  }
+
+  @Test
+  public void stopSyncs() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("stopSyncs"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS stopSyncs");
+      stmt.execute("CREATE TABLE stopSyncs (a INT, PRIMARY KEY(a))");
+    }
+
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    CollectingObserver observer = new CollectingObserver();
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    AtomicBoolean inserting = new AtomicBoolean(true);
+    try {
+      // Continuous inserts keep OBSERVE from reaching its idle timeout
+      Future<?> inserter = executor.submit(() -> {
+        try (Statement stmt = conn.getConnection().createStatement()) {
+          for (int i = 0; inserting.get(); i++) {
+            stmt.execute(String.format("INSERT INTO stopSyncs VALUES(%d)", i));
+            Thread.sleep(100);
+          }
+        }
+        return null;
+      });
+      Future<?> sync = executor.submit(() -> service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(getConfigMap("stopSyncs"))
+          .build(), observer));
+
+      Thread.sleep(3000);
+      service.stopSyncs();
+      assertTrue(service.awaitSyncs(10_000));
+      sync.get(1, TimeUnit.MINUTES);
+      inserting.set(false);
+      inserter.get(1, TimeUnit.MINUTES);
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertNull(observer.error);
+    assertTrue(observer.completed);
+    assertTrue(observer.records() > 0);
+    assertTrue(observer.responses.get(observer.responses.size() - 1).hasCheckpoint());
+
+    // Syncs started after the shutdown stop right away
+    CollectingObserver late = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("stopSyncs"))
+        .build(), late);
+    assertNull(late.error);
+    assertEquals(0, late.records());
+    assertEquals(1, late.checkpoints());
+  }
+
+  @Test
+  public void warmCursor() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("warmCursor"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS warmCursor");
+      stmt.execute("CREATE TABLE warmCursor (a INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 10; i++) {
+        stmt.execute(String.format("INSERT INTO warmCursor VALUES(%d)", i));
+      }
+    }
+
+    Map<String, String> configuration = new HashMap<>(getConfigMap("warmCursor"));
+    configuration.put("warm.cursor.spool.size", "1000");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    try {
+      // The initial sync starts a warm cursor when it is done
+      CollectingObserver observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(10, observer.records());
+      assertEquals(1, service.getWarmCursors().size());
+      String initialState = observer.responses.get(observer.responses.size() - 1)
+          .getCheckpoint().getStateJson();
+
+      try (Statement stmt = conn.getConnection().createStatement()) {
+        for (int i = 10; i < 20; i++) {
+          stmt.execute(String.format("INSERT INTO warmCursor VALUES(%d)", i));
+        }
+      }
+
+      // The next sync drains changes spooled by the cursor
+      observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .setStateJson(initialState)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(10, observer.records());
+      assertEquals(1, service.getWarmCursors().hits());
+
+      // A state that doesn't match the cursor starts a new OBSERVE
+      observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .setStateJson(initialState)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(10, observer.records());
+      assertEquals(1, service.getWarmCursors().hits());
+    } finally {
+      service.stopSyncs();
+    }
+  }
+
+  @Test
+  public void warmCursorRateLimited() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("warmCursorRateLimited"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS warmCursorRateLimited");
+      stmt.execute("CREATE TABLE warmCursorRateLimited (a INT, PRIMARY KEY(a))");
+      for (int i = 0; i < 10; i++) {
+        stmt.execute(String.format("INSERT INTO warmCursorRateLimited VALUES(%d)", i));
+      }
+    }
+
+    Map<String, String> configuration = new HashMap<>(getConfigMap("warmCursorRateLimited"));
+    configuration.put("warm.cursor.spool.size", "1000");
+    configuration.put("rate.limit.rows.per.second", "100000");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+    try {
+      // A rate limited sync doesn't start a warm cursor, which would read outside of the limit
+      CollectingObserver observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(10, observer.records());
+      assertEquals(0, service.getWarmCursors().size());
+      String initialState = observer.responses.get(observer.responses.size() - 1)
+          .getCheckpoint().getStateJson();
+
+      try (Statement stmt = conn.getConnection().createStatement()) {
+        for (int i = 10; i < 20; i++) {
+          stmt.execute(String.format("INSERT INTO warmCursorRateLimited VALUES(%d)", i));
+        }
+      }
+
+      observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .setStateJson(initialState)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(10, observer.records());
+      assertEquals(0, service.getWarmCursors().hits());
+      assertEquals(0, service.getWarmCursors().size());
+    } finally {
+      service.stopSyncs();
+    }
+  }
+
+  @Test
+  public void warmCursorSpoolBytes() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("warmCursorSpoolBytes"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS warmCursorSpoolBytes");
+      stmt.execute("CREATE TABLE warmCursorSpoolBytes (a INT, b TEXT, PRIMARY KEY(a))");
+    }
+
+    Map<String, String> configuration = new HashMap<>(getConfigMap("warmCursorSpoolBytes"));
+    configuration.put("warm.cursor.spool.size", "1000");
+    configuration.put("warm.cursor.spool.bytes", "1000");
+    MemoryBudget budget = new MemoryBudget(1024 * 1024);
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl(
+        SyncScheduler.unlimited(), budget);
+    try {
+      CollectingObserver observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(1, service.getWarmCursors().size());
+      String initialState = observer.responses.get(observer.responses.size() - 1)
+          .getCheckpoint().getStateJson();
+
+      try (Statement stmt = conn.getConnection().createStatement()) {
+        for (int i = 0; i < 100; i++) {
+          stmt.execute(String.format(
+              "INSERT INTO warmCursorSpoolBytes VALUES(%d, REPEAT('x', 100))", i));
+        }
+      }
+
+      // The spool holds no more than its byte limit, charged to the budget, and overflows
+      Thread.sleep(2000);
+      assertTrue(budget.used() > 0);
+      assertTrue(budget.used() <= 1000);
+
+      // The overflowed cursor is not drained, the sync starts a new OBSERVE
+      observer = new CollectingObserver();
+      service.update(UpdateRequest.newBuilder()
+          .putAllConfiguration(configuration)
+          .setStateJson(initialState)
+          .build(), observer);
+      assertNull(observer.error);
+      assertEquals(100, observer.records());
+      assertEquals(0, service.getWarmCursors().hits());
+    } finally {
+      service.stopSyncs();
+    }
+    assertEquals(0, budget.used());
+  }
+
+  @Test
+  public void diskSpool() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("diskSpool"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS diskSpool");
+      stmt.execute("CREATE TABLE diskSpool (a INT, b TEXT, PRIMARY KEY(a))");
+      for (int i = 0; i < 1000; i++) {
+        stmt.execute(String.format("INSERT INTO diskSpool VALUES(%d, REPEAT('x', 100))", i));
+      }
+    }
+
+    // Small segments and limit make OBSERVE wait for the sync and rotate segments
+    Path directory = Files.createTempDirectory("spool");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl(
+        SyncScheduler.unlimited(), MemoryBudget.unlimited(),
+        new DiskSpool.Settings(directory, 4096, 16 * 1024));
+    service.CHECKPOINT_BATCH_SIZE = 100;
+    service.SNAPSHOT_CHECKPOINT_BATCH_SIZE = 100;
+    long[] maxFiles = {0};
+    CollectingObserver observer = new CollectingObserver() {
+      @Override
+      public void onNext(UpdateResponse value) {
+        super.onNext(value);
+        if (value.hasCheckpoint()) {
+          try (Stream<Path> files = Files.walk(directory)) {
+            maxFiles[0] = Math.max(maxFiles[0], files.filter(Files::isRegularFile).count());
+          } catch (IOException e) {
+            throw new UncheckedIOException(e);
+          }
+        }
+      }
+    };
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(getConfigMap("diskSpool"))
+        .build(), observer);
+    assertNull(observer.error);
+    assertEquals(1000, observer.records());
+    assertTrue(observer.responses.get(observer.responses.size() - 1).hasCheckpoint());
+    assertTrue(observer.checkpoints() > 1);
+
+    // More than 30 segments are written, but segments covered by a checkpoint are deleted during
+    // the sync
+    assertTrue(maxFiles[0] <= 10, "segment files: " + maxFiles[0]);
+
+    // Segments are deleted when the sync is done
+    try (Stream<Path> files = Files.list(directory)) {
+      assertEquals(0, files.count());
+    }
+  }
+
+  @Test
+  public void chunkedSnapshot() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("chunkedSnapshot"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS chunkedSnapshot");
+      stmt.execute("CREATE TABLE chunkedSnapshot (a INT, b VARCHAR(10), c INT, "
+          + "PRIMARY KEY(a, b))");
+      for (int i = 0; i < 250; i++) {
+        stmt.execute(String.format("INSERT INTO chunkedSnapshot VALUES(%d, 'k%d', %d)",
+            i / 10, i % 10, i));
+      }
+    }
+
+    Map<String, String> config = new HashMap<>(getConfigMap("chunkedSnapshot"));
+    config.put("snapshot.chunk.size", "100");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+
+    // Offsets are checkpointed when the snapshot starts, then after every chunk and at the end of
+    // the sync
+    CollectingObserver observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(config)
+        .build(), observer);
+    assertNull(observer.error);
+    assertEquals(250, observer.records());
+    assertTrue(observer.checkpoints() >= 5);
+
+    List<State> states = new ArrayList<>();
+    for (UpdateResponse response : observer.responses) {
+      if (response.hasCheckpoint()) {
+        states.add(State.fromJson(response.getCheckpoint().getStateJson()));
+      }
+    }
+    assertNull(states.get(0).getSnapshot().lastKey());
+    assertEquals(Arrays.asList("9", "k9"), states.get(1).getSnapshot().lastKey());
+    assertFalse(states.get(states.size() - 1).hasMissingOffsets());
+    assertNull(states.get(states.size() - 1).getSnapshot());
+
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      for (int i = 250; i < 260; i++) {
+        stmt.execute(String.format("INSERT INTO chunkedSnapshot VALUES(%d, 'k%d', %d)",
+            i / 10, i % 10, i));
+      }
+    }
+
+    // A sync that failed after the first chunk resumes from the next one, and receives rows
+    // inserted since the snapshot started from both the chunks and OBSERVE
+    observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(config)
+        .setStateJson(states.get(1).toJson())
+        .build(), observer);
+    assertNull(observer.error);
+    Set<Integer> values = observer.responses
+        .stream()
+        .filter(UpdateResponse::hasRecord)
+        .map(response -> response.getRecord().getDataMap().get("c").getInt())
+        .collect(Collectors.toSet());
+    assertEquals(IntStream.range(100, 260).boxed().collect(Collectors.toCollection(HashSet::new)),
+        values);
+    assertNull(State.fromJson(observer.responses.get(observer.responses.size() - 1)
+        .getCheckpoint().getStateJson()).getSnapshot());
+  }
+
+  @Test
+  public void chunkedSnapshotLargeKeys() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("chunkedSnapshotLargeKeys"));
+    // Keys above 2^53 are equal when compared as DOUBLE
+    long base = (1L << 53) + 1;
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS chunkedSnapshotLargeKeys");
+      stmt.execute("CREATE TABLE chunkedSnapshotLargeKeys (a BIGINT, b DECIMAL(30, 0), "
+          + "c INT, PRIMARY KEY(a, b))");
+      for (int i = 0; i < 100; i++) {
+        stmt.execute(String.format(
+            "INSERT INTO chunkedSnapshotLargeKeys VALUES(%d, 100000000000000000000%d, %d)",
+            base + i / 10, i % 10, i));
+      }
+    }
+
+    Map<String, String> config = new HashMap<>(getConfigMap("chunkedSnapshotLargeKeys"));
+    config.put("snapshot.chunk.size", "7");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+
+    CollectingObserver observer = new CollectingObserver();
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(config)
+        .build(), observer);
+    assertNull(observer.error);
+    List<Integer> values = observer.responses
+        .stream()
+        .filter(UpdateResponse::hasRecord)
+        .map(response -> response.getRecord().getDataMap().get("c").getInt())
+        .collect(Collectors.toList());
+    assertEquals(IntStream.range(0, 100).boxed().collect(Collectors.toList()), values);
+
+    List<State> states = new ArrayList<>();
+    for (UpdateResponse response : observer.responses) {
+      if (response.hasCheckpoint()) {
+        states.add(State.fromJson(response.getCheckpoint().getStateJson()));
+      }
+    }
+    assertEquals(Arrays.asList(String.valueOf(base), "1000000000000000000006"),
+        states.get(1).getSnapshot().lastKey());
+  }
+
+  /**
+   * Describes a record by its type, key and the value of {@code c}, which deletes don't have.
+   */
+  private static String describeRecord(Record record) {
+    Map<String, ValueType> data = record.getDataMap();
+    String res = String.format("%s %d,%s", record.getType(), data.get("a").getInt(),
+        data.get("b").getString());
+    return data.containsKey("c") ? res + "," + data.get("c").getInt() : res;
+  }
+
+  private static void addRecord(Map<String, Long> records, RecordType type, int i, Integer c) {
+    String record = String.format("%s %d,k%d", type, i / 10, i % 10);
+    records.merge(c == null ? record : record + "," + c, 1L, Long::sum);
+  }
+
+  @Test
+  public void chunkedSnapshotWithChanges() throws Exception {
+    SingleStoreConnection conn = new SingleStoreConnection(getConfig("chunkedSnapshotWithChanges"));
+    try (Statement stmt = conn.getConnection().createStatement()) {
+      stmt.execute("DROP TABLE IF EXISTS chunkedSnapshotWithChanges");
+      stmt.execute("CREATE TABLE chunkedSnapshotWithChanges (a INT, b VARCHAR(10), c INT, "
+          + "PRIMARY KEY(a, b))");
+      for (int i = 0; i < 250; i++) {
+        stmt.execute(String.format("INSERT INTO chunkedSnapshotWithChanges VALUES(%d, 'k%d', %d)",
+            i / 10, i % 10, i));
+      }
+    }
+
+    Map<String, String> config = new HashMap<>(getConfigMap("chunkedSnapshotWithChanges"));
+    config.put("snapshot.chunk.size", "100");
+    SingleStoreSourceConnectorServiceImpl service = new SingleStoreSourceConnectorServiceImpl();
+
+    // Rows of the first chunk and rows of later chunks are updated and deleted after the first
+    // chunk is sent
+    CollectingObserver observer = new CollectingObserver() {
+      @Override
+      public void onNext(UpdateResponse value) {
+        super.onNext(value);
+        if (!value.hasCheckpoint() || checkpoints() != 2) {
+          return;
+        }
+        try (Statement stmt = conn.getConnection().createStatement()) {
+          stmt.execute("UPDATE chunkedSnapshotWithChanges SET c = c + 1000 WHERE a IN (5, 15)");
+          stmt.execute("DELETE FROM chunkedSnapshotWithChanges WHERE a IN (6, 16)");
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+    service.update(UpdateRequest.newBuilder()
+        .putAllConfiguration(config)
+        .build(), observer);
+    assertNull(observer.error);
+
+    // Chunks read after the changes send the changed rows, and OBSERVE sends every change once
+    Map<String, Long> expected = new HashMap<>();
+    for (int i = 0; i < 250; i++) {
+      if (i < 100) {
+        addRecord(expected, RecordType.UPSERT, i, i);
+      } else if (i / 10 == 15) {
+        addRecord(expected, RecordType.UPSERT, i, i + 1000);
+      } else if (i / 10 != 16) {
+        addRecord(expected, RecordType.UPSERT, i, i);
+      }
+      if (i / 10 == 5 || i / 10 == 15) {
+        addRecord(expected, RecordType.UPDATE, i, i + 1000);
+      }
+      if (i / 10 == 6 || i / 10 == 16) {
+        addRecord(expected, RecordType.DELETE, i, null);
+      }
+    }
+    Map<String, Long> records = observer.responses
+        .stream()
+        .filter(UpdateResponse::hasRecord)
+        .map(response -> describeRecord(response.getRecord()))
+        .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()));
+    assertEquals(expected, records);
+    assertNull(State.fromJson(observer.responses.get(observer.responses.size() - 1)
+        .getCheckpoint().getStateJson()).getSnapshot());
+  }
+}
@@ -0,0 +1,97 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.Test;
+
+public class SnapshotProgressTest {
+
+  @Test
+  public void tracksProgress() throws Exception {
+    try (SnapshotProgress progress = new SnapshotProgress(0)) {
+      progress.setEstimates(ImmutableMap.of(0, 4_000L, 1, 6_000L));
+      assertFalse(progress.isInProgress());
+      assertEquals(-1, progress.getPercent());
+
+      progress.begin(0);
+      progress.begin(1);
+      assertTrue(progress.isInProgress());
+      assertEquals(10_000, progress.getEstimatedRows());
+
+      for (int i = 0; i < 2_500; i++) {
+        progress.row(i % 2);
+        if (i == 0) {
+          // Makes sure the clock moves, so the rate can be computed
+          Thread.sleep(10);
+        }
+      }
+      assertEquals(2_500, progress.getRowsRead());
+      assertEquals(1_250, progress.getPartitionRowsRead(0));
+      assertEquals(25.0, progress.getPercent(), 0.001);
+      assertTrue(progress.getRowsPerSecond() > 0);
+      assertTrue(progress.getEtaSeconds() >= 0);
+      assertTrue(progress.status().contains("2500 rows of ~10000 (25.0%)"), progress.status());
+
+      progress.commit(0);
+      assertTrue(progress.isInProgress());
+      progress.commit(1);
+      assertFalse(progress.isInProgress());
+      assertEquals(0, progress.getEtaSeconds());
+    }
+  }
+
+  @Test
+  public void rowsOfChunks() {
+    try (SnapshotProgress progress = new SnapshotProgress(0)) {
+      progress.setEstimates(ImmutableMap.of(0, 40L, 1, 60L));
+      progress.begin(0);
+      progress.begin(1);
+      // Rows of chunks count towards the whole table
+      for (int i = 0; i < 50; i++) {
+        progress.row();
+      }
+
+      assertEquals(50, progress.getRowsRead());
+      assertEquals(0, progress.getPartitionRowsRead(0));
+      assertEquals(50.0, progress.getPercent(), 0.001);
+    }
+  }
+
+  @Test
+  public void unknownEstimates() {
+    try (SnapshotProgress progress = new SnapshotProgress(0)) {
+      progress.begin(3);
+      for (int i = 0; i < 10; i++) {
+        progress.row(3);
+      }
+
+      assertEquals(0, progress.getEstimatedRows());
+      assertEquals(-1, progress.getPercent());
+      assertEquals(-1, progress.getEtaSeconds());
+      assertTrue(progress.status().startsWith("10 rows, "), progress.status());
+    }
+  }
+
+  @Test
+  public void registersBean() throws Exception {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName pattern = new ObjectName(
+        "com.singlestore.fivetran.source.connector:type=SnapshotProgress,"
+            + "database=\"db\",table=\"registersBean\",*");
+
+    SnapshotProgress progress = new SnapshotProgress(0);
+    progress.register("db", "registersBean");
+    assertEquals(1, server.queryNames(pattern, null).size());
+    ObjectName name = server.queryNames(pattern, null).iterator().next();
+    assertEquals(0L, server.getAttribute(name, "RowsRead"));
+
+    progress.close();
+    assertEquals(0, server.queryNames(pattern, null).size());
+  }
+}
@@ -1,8 +1,12 @@
 package com.singlestore.fivetran.source.connector;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import java.util.Arrays;
 import org.junit.jupiter.api.Test;
 
 public class StateTest {
@@ -43,4 +47,65 @@ public class StateTest {
     s.setOffset(0, "w");
     assertEquals("'w', 'b', 'cd'", s.offsetsAsSQL());
   }
+
+  @Test
+  public void getOffset() {
+    State s = new State(3);
+    assertEquals(3, s.numPartitions());
+    assertNull(s.getOffset(1));
+
+    s.setOffset(1, "a");
+    assertEquals("a", s.getOffset(1));
+    assertNull(s.getOffset(0));
+  }
+
+  @Test
+  public void hasMissingOffsets() throws JsonProcessingException {
+    State s = new State(2);
+    assertTrue(s.hasMissingOffsets());
+
+    s.setOffset(0, "a");
+    assertTrue(s.hasMissingOffsets());
+
+    s.setOffset(1, "b");
+    assertFalse(s.hasMissingOffsets());
+    assertEquals("{\"offsets\":[\"a\",\"b\"]}", s.toJson());
+  }
+
+  @Test
+  public void copy() {
+    State s = new State(2);
+    s.setOffset(0, "a");
+    State copy = s.copy();
+    assertEquals(s, copy);
+
+    copy.setOffset(1, "b");
+    assertNull(s.getOffset(1));
+    assertFalse(s.equals(copy));
+  }
+
+  @Test
+  public void chunkedSnapshot() throws Exception {
+    String json = "{\"offsets\":[\"a\",\"b\"],\"snapshot\":{\"lastKey\":[\"1\",\"x\"]}}";
+    State s = State.fromJson(json);
+    assertEquals(Arrays.asList("1", "x"), s.getSnapshot().lastKey());
+    assertEquals(json, s.toJson());
+    assertEquals(s, s.copy());
+
+    s.setSnapshot(new State.ChunkedSnapshot(null));
+    assertEquals("{\"offsets\":[\"a\",\"b\"],\"snapshot\":{\"lastKey\":null}}", s.toJson());
+    assertNull(State.fromJson(s.toJson()).getSnapshot().lastKey());
+
+    s.setSnapshot(null);
+    assertEquals("{\"offsets\":[\"a\",\"b\"]}", s.toJson());
+  }
+
+  @Test
+  public void hasNoOffsets() {
+    State s = new State(2);
+    assertTrue(s.hasNoOffsets());
+
+    s.setOffset(1, "a");
+    assertFalse(s.hasNoOffsets());
+  }
 }
@@ -0,0 +1,55 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class SyncMetricsTest {
+
+  @Test
+  public void recordsStages() {
+    SyncMetrics metrics = new SyncMetrics();
+    metrics.recordNanos(SyncMetrics.Stage.WAIT, 1_000_000);
+    metrics.recordNanos(SyncMetrics.Stage.WAIT, 3_000_000);
+    metrics.recordNanos(SyncMetrics.Stage.DECODE, 5_000);
+    // Negative durations are clamped
+    metrics.recordNanos(SyncMetrics.Stage.SEND, -1);
+
+    assertEquals(2, metrics.count(SyncMetrics.Stage.WAIT));
+    assertEquals(4_000_000, metrics.totalNanos(SyncMetrics.Stage.WAIT));
+    assertEquals(1, metrics.count(SyncMetrics.Stage.DECODE));
+    assertEquals(0, metrics.totalNanos(SyncMetrics.Stage.SEND));
+    assertEquals(0, metrics.count(SyncMetrics.Stage.CHECKPOINT));
+  }
+
+  @Test
+  public void recordReturnsCurrentTime() {
+    SyncMetrics metrics = new SyncMetrics();
+    long start = System.nanoTime();
+    long end = metrics.record(SyncMetrics.Stage.BUILD, start);
+
+    assertTrue(end >= start);
+    assertEquals(1, metrics.count(SyncMetrics.Stage.BUILD));
+    assertEquals(end - start, metrics.totalNanos(SyncMetrics.Stage.BUILD));
+  }
+
+  @Test
+  public void summary() {
+    SyncMetrics metrics = new SyncMetrics();
+    metrics.recordRecord(3, 100);
+    metrics.recordRecord(5, 300);
+    metrics.recordNanos(SyncMetrics.Stage.SETUP, 2_000_000);
+
+    assertEquals(2, metrics.records());
+    assertEquals(400, metrics.totalRecordBytes());
+
+    String summary = metrics.summary();
+    for (SyncMetrics.Stage stage : SyncMetrics.Stage.values()) {
+      assertTrue(summary.contains(stage.name()), summary);
+    }
+    assertTrue(summary.contains("SETUP      count: 1, total: 2 ms"), summary);
+    assertTrue(summary.contains("RECORDS    count: 2, total: 400 bytes"), summary);
+    assertTrue(summary.contains("max: 300 bytes"), summary);
+  }
+}
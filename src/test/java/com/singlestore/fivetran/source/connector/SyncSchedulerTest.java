@@ -0,0 +1,149 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class SyncSchedulerTest {
+
+  private static SingleStoreConfiguration getConfig(String host) {
+    return new SingleStoreConfiguration(ImmutableMap.of("host", host,
+        "port", "3306", "user", "root", "database", "db", "table", "t"));
+  }
+
+  private static void runConcurrently(int threads, Runnable task) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        futures.add(executor.submit(task));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, TimeUnit.SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static void updateMax(AtomicInteger max, int value) {
+    max.accumulateAndGet(value, Math::max);
+  }
+
+  /**
+   * Waits until the given number of threads hold a permit at the same time, which shows that the
+   * limit is reached. Threads that acquire a permit later don't wait.
+   */
+  private static void awaitAll(CountDownLatch holders) throws InterruptedException {
+    holders.countDown();
+    assertTrue(holders.await(10, TimeUnit.SECONDS), "the limit is not reached");
+  }
+
+  @Test
+  public void limitsConcurrentSyncs() throws Exception {
+    SyncScheduler scheduler = new SyncScheduler(3, SyncScheduler.UNLIMITED,
+        SyncScheduler.UNLIMITED);
+    AtomicInteger running = new AtomicInteger();
+    AtomicInteger maxRunning = new AtomicInteger();
+    CountDownLatch holders = new CountDownLatch(3);
+
+    runConcurrently(16, () -> {
+      try (SyncScheduler.Permit ignored = scheduler.acquireSync(getConfig("host"))) {
+        updateMax(maxRunning, running.incrementAndGet());
+        awaitAll(holders);
+        running.decrementAndGet();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertTrue(maxRunning.get() <= 3);
+    assertEquals(0, scheduler.runningSyncs());
+  }
+
+  @Test
+  public void limitsConnectionsPerCluster() throws Exception {
+    SyncScheduler scheduler = new SyncScheduler(SyncScheduler.UNLIMITED, 2,
+        SyncScheduler.UNLIMITED);
+    AtomicInteger connections = new AtomicInteger();
+    AtomicInteger maxConnections = new AtomicInteger();
+    CountDownLatch holders = new CountDownLatch(2);
+
+    runConcurrently(16, () -> {
+      try (SyncScheduler.Permit ignored = scheduler.acquireConnection(getConfig("host1"));
+          SyncScheduler.Permit ignored2 = scheduler.acquireSync(getConfig("host2"))) {
+        updateMax(maxConnections, connections.incrementAndGet());
+        awaitAll(holders);
+        connections.decrementAndGet();
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertTrue(maxConnections.get() <= 2);
+  }
+
+  @Test
+  public void reclaimsIdleConnections() throws Exception {
+    SyncScheduler scheduler = new SyncScheduler(SyncScheduler.UNLIMITED, 2,
+        SyncScheduler.UNLIMITED);
+    SyncScheduler.Permit sync = scheduler.acquireSync(getConfig("host"));
+    // An optional connection, such as the one of a warm cursor, takes the last permit
+    SyncScheduler.Permit idle = scheduler.tryAcquireConnection(getConfig("host"));
+    assertNotNull(idle);
+    assertNull(scheduler.tryAcquireConnection(getConfig("host")));
+
+    AtomicInteger reclaimed = new AtomicInteger();
+    scheduler.setConnectionReclaimer(cluster -> {
+      assertEquals("host:3306", cluster);
+      if (reclaimed.getAndIncrement() > 0) {
+        return false;
+      }
+      idle.close();
+      return true;
+    });
+    // The next sync gets the connection of the idle permit instead of waiting for it
+    try (SyncScheduler.Permit ignored = scheduler.acquireSync(getConfig("host"))) {
+      assertEquals(1, reclaimed.get());
+    }
+    sync.close();
+  }
+
+  @Test
+  public void limitsWorkSlots() throws Exception {
+    SyncScheduler scheduler = new SyncScheduler(SyncScheduler.UNLIMITED, SyncScheduler.UNLIMITED,
+        2);
+    AtomicInteger working = new AtomicInteger();
+    AtomicInteger maxWorking = new AtomicInteger();
+
+    runConcurrently(8, () -> {
+      try (SyncScheduler.Permit permit = scheduler.acquireSync(getConfig("host"))) {
+        for (int i = 0; i < 100; i++) {
+          permit.beginWork();
+          try {
+            updateMax(maxWorking, working.incrementAndGet());
+            working.decrementAndGet();
+          } finally {
+            permit.endWork();
+          }
+        }
+      } catch (InterruptedException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    assertTrue(maxWorking.get() <= 2);
+  }
+}
@@ -0,0 +1,62 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void burst() {
+    TokenBucket bucket = new TokenBucket(100, 0);
+    // The bucket starts full
+    assertEquals(0, bucket.reserve(100, 0));
+    assertEquals(SECOND / 100, bucket.reserve(1, 0));
+  }
+
+  @Test
+  public void refill() {
+    TokenBucket bucket = new TokenBucket(100, 0);
+    assertEquals(0, bucket.reserve(100, 0));
+    assertEquals(0, bucket.reserve(50, SECOND / 2));
+    // Tokens don't accumulate above one second of rate
+    assertEquals(0, bucket.reserve(100, 10 * SECOND));
+    assertEquals(SECOND / 10, bucket.reserve(10, 10 * SECOND));
+  }
+
+  @Test
+  public void debt() {
+    TokenBucket bucket = new TokenBucket(100, 0);
+    // A request larger than the bucket waits for the whole debt
+    assertEquals(2 * SECOND, bucket.reserve(300, 0));
+    assertEquals(2 * SECOND + SECOND / 100, bucket.reserve(1, 0));
+    assertEquals(0, bucket.reserve(0, 3 * SECOND + SECOND / 100));
+  }
+
+  @Test
+  public void scale() {
+    TokenBucket bucket = new TokenBucket(100, 0);
+    assertEquals(0, bucket.reserve(100, 0));
+    bucket.setScale(0.5);
+    assertEquals(50.0, bucket.rate());
+    assertEquals(SECOND / 50, bucket.reserve(1, 0));
+  }
+
+  @Test
+  public void acquireStopped() throws InterruptedException {
+    TokenBucket bucket = new TokenBucket(1);
+    bucket.acquire(1, () -> false);
+    // A stopped sync doesn't wait for the debt
+    long start = System.nanoTime();
+    assertEquals(100 * SECOND, bucket.acquire(100, () -> true), SECOND);
+    assertEquals(0, (System.nanoTime() - start) / SECOND);
+  }
+
+  @Test
+  public void invalidRate() {
+    assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0));
+  }
+}
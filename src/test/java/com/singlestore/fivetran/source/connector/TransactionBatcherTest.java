@@ -0,0 +1,106 @@
+package com.singlestore.fivetran.source.connector;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.google.common.collect.ImmutableMap;
+import fivetran_sdk.v2.RecordType;
+import fivetran_sdk.v2.ValueType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+public class TransactionBatcherTest {
+
+  private static Map<String, ValueType> row(int a) {
+    return ImmutableMap.of("a", ValueType.newBuilder().setInt(a).build());
+  }
+
+  @Test
+  public void emitsTransactionsOnCommit() throws Exception {
+    List<Map<String, ValueType>> emitted = new ArrayList<>();
+    TransactionBatcher batcher = new TransactionBatcher((type, row) -> emitted.add(row));
+
+    batcher.begin(0);
+    batcher.begin(1);
+    assertTrue(batcher.inTransaction(0));
+    assertFalse(batcher.inTransaction(2));
+
+    batcher.add(0, RecordType.UPSERT, row(1));
+    batcher.add(1, RecordType.UPSERT, row(2));
+    batcher.add(0, RecordType.UPDATE, row(3));
+    batcher.add(1, RecordType.DELETE, row(4));
+    assertEquals(0, emitted.size());
+    assertEquals(4, batcher.size());
+
+    // Records of a transaction are emitted together, in the order they were received
+    batcher.commit(1);
+    assertFalse(batcher.inTransaction(1));
+    assertEquals(2, batcher.size());
+    batcher.commit(0);
+    assertEquals(0, batcher.size());
+    assertEquals(0, batcher.bytes());
+
+    assertEquals(4, emitted.size());
+    assertEquals(row(2), emitted.get(0));
+    assertEquals(row(4), emitted.get(1));
+    assertEquals(row(1), emitted.get(2));
+    assertEquals(row(3), emitted.get(3));
+  }
+
+  @Test
+  public void buffersLargeTransactionsWhole() throws Exception {
+    List<Map<String, ValueType>> emitted = new ArrayList<>();
+    TransactionBatcher batcher = new TransactionBatcher((type, row) -> emitted.add(row));
+
+    batcher.begin(0);
+    long bytes = 0;
+    for (int i = 0; i < 25_000; i++) {
+      batcher.add(0, RecordType.UPSERT, row(i));
+      assertTrue(batcher.bytes() > bytes);
+      bytes = batcher.bytes();
+
+      // Transactions of other partitions are committed while the large one is open
+      if (i % 10_000 == 0) {
+        batcher.begin(1);
+        batcher.add(1, RecordType.UPSERT, row(-i));
+        batcher.commit(1);
+      }
+    }
+    assertEquals(3, emitted.size());
+    assertEquals(25_000, batcher.size());
+
+    batcher.commit(0);
+    assertEquals(0, batcher.size());
+    assertEquals(0, batcher.bytes());
+    assertEquals(25_003, emitted.size());
+    for (int i = 0; i < 25_000; i++) {
+      assertEquals(row(i), emitted.get(i + 3));
+    }
+  }
+
+  @Test
+  public void dropsRestartedAndUncommittedTransactions() throws Exception {
+    List<Map<String, ValueType>> emitted = new ArrayList<>();
+    TransactionBatcher batcher = new TransactionBatcher((type, row) -> emitted.add(row));
+
+    batcher.begin(0);
+    batcher.add(0, RecordType.UPSERT, row(1));
+    // OBSERVE was restarted and the transaction is received again
+    batcher.begin(0);
+    batcher.add(0, RecordType.UPSERT, row(1));
+    assertEquals(1, batcher.size());
+    batcher.commit(0);
+    assertEquals(1, emitted.size());
+
+    batcher.begin(1);
+    batcher.add(1, RecordType.UPSERT, row(2));
+    batcher.clear();
+    assertEquals(0, batcher.size());
+    assertEquals(0, batcher.bytes());
+    assertFalse(batcher.inTransaction(1));
+    assertEquals(1, emitted.size());
+  }
+}